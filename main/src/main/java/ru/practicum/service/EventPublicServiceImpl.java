@@ -8,9 +8,11 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
 import ru.practicum.client.StatsClient;
 import ru.practicum.dto.EndpointDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.dto.ViewStatsRequestDto;
 import ru.practicum.dto.event.EventFullDto;
 import ru.practicum.dto.rating.RatingDto;
 import ru.practicum.enums.EventSort;
@@ -26,10 +28,13 @@ import ru.practicum.service.api.EventPublicService;
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static ru.practicum.constant.EventConstant.DATE_TIME_FORMATTER;
@@ -76,6 +81,12 @@ public class EventPublicServiceImpl implements EventPublicService {
 
         List<EventFullDto> eventFullDtoAfterIterable = eventMapper.toEventFullDtoAfterIterable(eventRepository.findAll(builder, pageable));
         recordRequestStats(httpServletRequest);
+        setViews(eventFullDtoAfterIterable);
+        if (sort == EventSort.VIEWS) {
+            eventFullDtoAfterIterable.sort(Comparator.comparing(EventFullDto::getViews,
+                    Comparator.nullsLast(Comparator.reverseOrder())));
+            return eventFullDtoAfterIterable;
+        }
         List<EventFullDto> eventFullDtoList = setAverageRatings(sort, eventFullDtoAfterIterable, getEventIds(eventFullDtoAfterIterable));
         return eventFullDtoList.isEmpty() ? eventFullDtoAfterIterable : eventFullDtoList;
     }
@@ -98,7 +109,7 @@ public class EventPublicServiceImpl implements EventPublicService {
         List<ViewStatsDto> stats = statsClient.getStats(startTime, endTime, uris, true);
 
         if (!stats.isEmpty()) {
-            event.setViews(stats.get(0).getHits());
+            event.setViews(stats.get(0).getHits().intValue());
         }
         return event;
     }
@@ -114,6 +125,43 @@ public class EventPublicServiceImpl implements EventPublicService {
         }
     }
 
+    /**
+     * Fills the views of a page of events with a single stats request. The views are an extra, so when the
+     * stats server cannot be reached they are left unset rather than failing the list.
+     */
+    private void setViews(List<EventFullDto> events) {
+        LocalDateTime start = events.stream()
+                .map(EventFullDto::getPublishedOn)
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+        if (Objects.isNull(start)) {
+            return;
+        }
+        Map<String, EventFullDto> eventsByUri = events.stream()
+                .collect(Collectors.toMap(event -> "/events/" + event.getId(), Function.identity()));
+
+        List<ViewStatsDto> stats;
+        try {
+            stats = statsClient.getStats(ViewStatsRequestDto.builder()
+                    .start(start.format(DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER)))
+                    .end(LocalDateTime.now().format(DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER)))
+                    .uris(new ArrayList<>(eventsByUri.keySet()))
+                    .unique(true)
+                    .build());
+        } catch (RestClientException e) {
+            log.warn("Failed to get views of {} events, leaving them unset: {}", events.size(), e.getMessage());
+            return;
+        }
+
+        for (ViewStatsDto viewStatsDto : stats) {
+            EventFullDto event = eventsByUri.get(viewStatsDto.getUri());
+            if (Objects.nonNull(event)) {
+                event.setViews(viewStatsDto.getHits().intValue());
+            }
+        }
+    }
+
     private void checkStartTime(LocalDateTime rangeStart, LocalDateTime rangeEnd) {
 
         if (rangeStart.isAfter(rangeEnd)) {
@@ -0,0 +1,157 @@
+package ru.practicum.client;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.dto.EndpointDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Buffers hits in a bounded queue and ships them from a single background thread.
+ * <p>
+ * A batch is shipped as soon as it reaches the configured size, or when the flush interval
+ * has elapsed since its first hit was taken from the queue, whichever happens first.
+ */
+@Slf4j
+public class AsyncHitSender implements AutoCloseable {
+    private final BlockingQueue<EndpointDto> queue;
+    private final Consumer<List<EndpointDto>> sink;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final Thread worker;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public AsyncHitSender(StatsClientProperties.Async properties, Consumer<List<EndpointDto>> sink) {
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.sink = sink;
+        this.batchSize = properties.getBatchSize();
+        this.flushIntervalNanos = properties.getFlushInterval().toNanos();
+        this.overflowPolicy = properties.getOverflowPolicy();
+        this.blockTimeoutNanos = properties.getBlockTimeout().toNanos();
+        this.worker = new Thread(this::run, "stats-hit-sender");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Enqueues a hit for shipping without waiting for the stats server.
+     *
+     * @param endpointDto the hit to record
+     * @return {@code true} if the hit was queued, {@code false} if it was dropped
+     */
+    public boolean offer(EndpointDto endpointDto) {
+        boolean accepted = running && enqueue(endpointDto);
+        if (accepted) {
+            queued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+            log.debug("Stats hit dropped, queue is full: {}", endpointDto);
+        }
+        return accepted;
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting hits and waits for the hits already queued to be shipped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) * 2 + 1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Stats hit sender stopped with {} hits not shipped", queue.size());
+        }
+    }
+
+    private boolean enqueue(EndpointDto endpointDto) {
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            return queue.offer(endpointDto);
+        }
+        try {
+            return queue.offer(endpointDto, blockTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run() {
+        List<EndpointDto> batch = new ArrayList<>(batchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                EndpointDto first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                batch.add(first);
+                fillBatch(batch, deadline);
+                ship(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fillBatch(List<EndpointDto> batch, long deadline) throws InterruptedException {
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            EndpointDto next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void ship(List<EndpointDto> batch) {
+        try {
+            sink.accept(batch);
+            sent.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            log.warn("Failed to ship {} stats hits: {}", batch.size(), e.getMessage());
+        }
+    }
+}
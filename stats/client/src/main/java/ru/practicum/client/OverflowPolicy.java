@@ -0,0 +1,15 @@
+package ru.practicum.client;
+
+/**
+ * Behaviour of the asynchronous hit sender when its queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The hit is discarded immediately and counted as dropped.
+     */
+    DROP,
+    /**
+     * The caller waits up to the configured block timeout for free space, then drops the hit.
+     */
+    BLOCK
+}
@@ -0,0 +1,75 @@
+package ru.practicum.client;
+
+import ru.practicum.sketch.Hashing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping URIs to stats server URLs.
+ * <p>
+ * Every shard is placed on the ring at {@code virtualNodes} points derived from its URL, and a URI belongs to
+ * the first point at or after its own hash. Adding or removing one of N shards therefore only moves about 1/N
+ * of the URIs, and every client with the same shard list routes a URI to the same server. Rings are immutable.
+ */
+public class ShardRing {
+    private final List<String> shards;
+    private final int virtualNodes;
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    public ShardRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A shard ring needs at least one shard");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(shards)));
+        this.virtualNodes = virtualNodes;
+        for (String shard : this.shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // Colliding points go to the smaller URL, so the ring does not depend on the order of the list.
+                points.merge(Hashing.hash64(shard + '#' + i), shard,
+                        (left, right) -> left.compareTo(right) <= 0 ? left : right);
+            }
+        }
+    }
+
+    /**
+     * Returns the URL of the stats server that owns the URI.
+     */
+    public String shardOf(String uri) {
+        Map.Entry<Long, String> point = points.ceilingEntry(Hashing.hash64(uri));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns a ring with the shard added.
+     */
+    public ShardRing withShard(String shard) {
+        List<String> next = new ArrayList<>(shards);
+        next.add(shard);
+        return new ShardRing(next, virtualNodes);
+    }
+
+    /**
+     * Returns a ring without the shard.
+     */
+    public ShardRing withoutShard(String shard) {
+        List<String> next = new ArrayList<>(shards);
+        next.remove(shard);
+        return new ShardRing(next, virtualNodes);
+    }
+
+    @Override
+    public String toString() {
+        return shards.toString();
+    }
+}
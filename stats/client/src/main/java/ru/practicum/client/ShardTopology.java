@@ -0,0 +1,84 @@
+package ru.practicum.client;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The shard rings a stats client has routed hits with, each with the time it was replaced.
+ * <p>
+ * Hits stay on the server they were routed to, so after a shard is added or removed the hits of a moved URI
+ * are split between its old and its new owner. Queries therefore ask the owners under every ring that was
+ * active during the requested range, widened by a slack that covers hits whose timestamps lag behind the time
+ * they were sent. Removed servers must stay reachable for as long as their hits are queried.
+ */
+@Slf4j
+public class ShardTopology {
+    private final Duration slack;
+    private volatile List<Generation> generations;
+
+    /**
+     * @param current the ring hits are routed with
+     * @param history earlier rings with the time they were replaced, oldest first
+     * @param slack   how far hit timestamps may lag behind the time a ring was replaced
+     */
+    public ShardTopology(ShardRing current, List<Generation> history, Duration slack) {
+        List<Generation> all = new ArrayList<>(history);
+        all.add(new Generation(current, LocalDateTime.MAX));
+        this.generations = Collections.unmodifiableList(all);
+        this.slack = slack;
+    }
+
+    /**
+     * Returns the ring new hits are routed with.
+     */
+    public ShardRing current() {
+        return generations.get(generations.size() - 1).getRing();
+    }
+
+    /**
+     * Replaces the current ring, keeping it to answer queries over the hits it routed.
+     *
+     * @param next the ring to route new hits with
+     */
+    public synchronized void rebalance(ShardRing next) {
+        List<Generation> all = new ArrayList<>(generations);
+        Generation last = all.remove(all.size() - 1);
+        all.add(new Generation(last.getRing(), LocalDateTime.now()));
+        all.add(new Generation(next, LocalDateTime.MAX));
+        generations = Collections.unmodifiableList(all);
+        log.info("Stats shards changed from {} to {}", last.getRing(), next);
+    }
+
+    /**
+     * Returns the rings that routed hits with timestamps within {@code [from, to]}, oldest first.
+     */
+    public List<ShardRing> ringsBetween(LocalDateTime from, LocalDateTime to) {
+        List<ShardRing> rings = new ArrayList<>();
+        LocalDateTime since = LocalDateTime.MIN;
+        for (Generation generation : generations) {
+            LocalDateTime until = generation.getUntil();
+            boolean endsBefore = until != LocalDateTime.MAX && until.plus(slack).isBefore(from);
+            boolean startsAfter = since != LocalDateTime.MIN && since.minus(slack).isAfter(to);
+            if (!endsBefore && !startsAfter) {
+                rings.add(generation.getRing());
+            }
+            since = until;
+        }
+        return rings;
+    }
+
+    /**
+     * A ring and the time it stopped routing hits.
+     */
+    @Value
+    public static class Generation {
+        ShardRing ring;
+        LocalDateTime until;
+    }
+}
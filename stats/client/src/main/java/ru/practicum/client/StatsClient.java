@@ -1,43 +1,458 @@
 package ru.practicum.client;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
+import ru.practicum.codec.HitCodec;
 import ru.practicum.dto.EndpointDto;
+import ru.practicum.dto.HitBatchAckDto;
+import ru.practicum.dto.TimeSeriesDto;
+import ru.practicum.dto.TimeSeriesPointDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.dto.ViewStatsRequestDto;
+import ru.practicum.sketch.UniqueSketch;
 
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 public class StatsClient {
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final RestTemplateBuilder builder;
     private final RestTemplate restTemplate;
+    private final AsyncHitSender hitSender;
+    private final StatsResponseCache responseCache;
+    private final ShardTopology shardTopology;
+    private final ConcurrentMap<String, RestTemplate> shardTemplates = new ConcurrentHashMap<>();
+    private final ExecutorService shardExecutor;
+    private final int compressThreshold;
+    private volatile boolean binary;
 
 
     @Autowired
-    public StatsClient(@Value("${stat.server.url}") String serverUrl, RestTemplateBuilder builder) {
-        restTemplate = builder
-                .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
-                .requestFactory(HttpComponentsClientHttpRequestFactory::new)
-                .build();
+    public StatsClient(@Value("${stat.server.url}") String serverUrl, RestTemplateBuilder builder,
+                       StatsClientProperties properties) {
+        this.builder = builder;
+        restTemplate = newRestTemplate(serverUrl);
+        binary = properties.getWireFormat() == WireFormat.BINARY;
+        compressThreshold = properties.getCompressThreshold();
+        StatsClientProperties.Sharding sharding = properties.getSharding();
+        if (sharding.isEnabled()) {
+            shardTopology = newShardTopology(sharding);
+            AtomicInteger threads = new AtomicInteger();
+            shardExecutor = Executors.newFixedThreadPool(sharding.getQueryThreads(), task -> {
+                Thread thread = new Thread(task, "stats-shard-query-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            log.info("Routing stats hits to shards {}", shardTopology.current());
+        } else {
+            shardTopology = null;
+            shardExecutor = null;
+        }
+        hitSender = properties.getAsync().isEnabled()
+                ? new AsyncHitSender(properties.getAsync(), this::postStats)
+                : null;
+        responseCache = properties.getCache().isEnabled()
+                ? new StatsResponseCache(properties.getCache())
+                : null;
     }
 
+    /**
+     * Records a hit. In asynchronous mode the hit is only queued and this method does not wait
+     * for the stats server; otherwise the hit is posted inline.
+     *
+     * @param endpointDto the hit to record
+     */
     public void postStats(EndpointDto endpointDto) {
-        restTemplate.postForLocation("/hit", endpointDto);
+        if (hitSender != null) {
+            hitSender.offer(endpointDto);
+        } else if (binary) {
+            postStats(List.of(endpointDto));
+        } else {
+            templateFor(endpointDto.getUri()).postForLocation("/hit", endpointDto);
+        }
+    }
+
+    /**
+     * Posts a batch of hits to the stats server in a single request. With sharding, the batch is split into one
+     * request per shard.
+     *
+     * @param endpointDtos the hits to record
+     */
+    public void postStats(List<EndpointDto> endpointDtos) {
+        if (endpointDtos.isEmpty()) {
+            return;
+        }
+        if (shardTopology == null) {
+            postBatch(restTemplate, endpointDtos);
+            return;
+        }
+        ShardRing ring = shardTopology.current();
+        Map<String, List<EndpointDto>> batches = endpointDtos.stream()
+                .collect(Collectors.groupingBy(endpointDto -> ring.shardOf(endpointDto.getUri()),
+                        LinkedHashMap::new, Collectors.toList()));
+        batches.forEach((shard, batch) -> postBatch(shardTemplate(shard), batch));
+    }
+
+    private void postBatch(RestTemplate template, List<EndpointDto> endpointDtos) {
+        if (binary) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(HitCodec.MEDIA_TYPE));
+            byte[] body = HitCodec.encode(endpointDtos, endpointDtos.size() >= compressThreshold);
+            try {
+                template.postForObject("/hits", new HttpEntity<>(body, headers), HitBatchAckDto.class);
+                return;
+            } catch (HttpClientErrorException.UnsupportedMediaType e) {
+                log.warn("Stats server does not accept {}, falling back to JSON", HitCodec.MEDIA_TYPE);
+                binary = false;
+            }
+        }
+        template.postForObject("/hits", endpointDtos, HitBatchAckDto.class);
     }
 
+    /**
+     * Retrieves view statistics. With sharding, the shards owning the URIs are queried in parallel and their
+     * results merged: hits are summed, and unique hits of URIs whose hits are split between shards after a
+     * rebalance are counted from the merged visitor sketches.
+     *
+     * @param start  the start of the range
+     * @param end    the end of the range
+     * @param uris   the URIs to retrieve statistics for, or {@code null} for all of them
+     * @param unique whether to count hits from distinct IP addresses only
+     * @return the view statistics, ordered by hits in descending order
+     */
     public List<ViewStatsDto> getStats(String start, String end, List<String> uris, boolean unique) {
+        if (responseCache != null) {
+            return responseCache.get(start, end, uris, unique, () -> fetchStats(start, end, uris, unique));
+        }
+        return fetchStats(start, end, uris, unique);
+    }
 
-        String url = String.format("/stats?start=%s&end=%s&uris=%s&unique=%s", start, end, uris, unique);
+    private List<ViewStatsDto> fetchStats(String start, String end, List<String> uris, boolean unique) {
+        if (shardTopology != null) {
+            return scatterStats(start, end, uris, unique, (shard, shardUris, sketch) ->
+                    fetchStats(shardTemplate(shard), start, end, shardUris, unique, sketch));
+        }
+        return fetchStats(restTemplate, start, end, uris, unique, false);
+    }
+
+    private List<ViewStatsDto> fetchStats(RestTemplate template, String start, String end, List<String> uris,
+                                          boolean unique, boolean sketch) {
 
-        ResponseEntity<ViewStatsDto[]> response = restTemplate.getForEntity(url, ViewStatsDto[].class);
+        String url = String.format("/stats?start=%s&end=%s&unique=%s", start, end, unique);
+        if (uris != null) {
+            url += "&uris=" + uris;
+        }
+        if (sketch) {
+            url += "&sketch=true";
+        }
+
+        ResponseEntity<ViewStatsDto[]> response = template.getForEntity(url, ViewStatsDto[].class);
         return (response.getBody() != null) ? Arrays.asList(response.getBody()) : Collections.emptyList();
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Retrieves view statistics for all URIs of the request in one call. The URIs travel in the request body,
+     * so a whole page of events can be looked up at once.
+     *
+     * @param request the range, the URIs and the uniqueness flag
+     * @return the view statistics of the requested URIs that have hits
+     */
+    public List<ViewStatsDto> getStats(ViewStatsRequestDto request) {
+        if (responseCache != null) {
+            return responseCache.get(request.getStart(), request.getEnd(), request.getUris(), request.isUnique(),
+                    () -> fetchStats(request));
+        }
+        return fetchStats(request);
+    }
+
+    private List<ViewStatsDto> fetchStats(ViewStatsRequestDto request) {
+        if (shardTopology != null) {
+            return scatterStats(request.getStart(), request.getEnd(), request.getUris(), request.isUnique(),
+                    (shard, shardUris, sketch) -> fetchStats(shardTemplate(shard), request.toBuilder()
+                            .uris(shardUris)
+                            .sketch(sketch)
+                            .build()));
+        }
+        return fetchStats(restTemplate, request);
+    }
+
+    private List<ViewStatsDto> fetchStats(RestTemplate template, ViewStatsRequestDto request) {
+        ViewStatsDto[] body = template.postForObject("/stats", request, ViewStatsDto[].class);
+        return (body != null) ? Arrays.asList(body) : Collections.emptyList();
+    }
+
+    /**
+     * Retrieves hits per time bucket for the given URIs in one call. With sharding, the series of a URI whose
+     * hits are split between shards after a rebalance are summed point by point, which counts a visitor seen by
+     * both shards twice in its unique hits.
+     *
+     * @param start    the start of the range
+     * @param end      the end of the range
+     * @param uris     the URIs to retrieve the series for
+     * @param interval the bucket width: {@code minute}, {@code hour} or {@code day}
+     * @param unique   whether to count hits from distinct IP addresses as well
+     * @return one series per app and URI with hits
+     */
+    public List<TimeSeriesDto> getTimeSeries(String start, String end, List<String> uris, String interval,
+                                             boolean unique) {
+        if (shardTopology == null) {
+            return fetchTimeSeries(restTemplate, start, end, uris, interval, unique);
+        }
+        Map<String, List<String>> shardUris = new LinkedHashMap<>();
+        for (String uri : uris) {
+            for (String shard : ownersOf(uri, start, end)) {
+                shardUris.computeIfAbsent(shard, k -> new ArrayList<>()).add(uri);
+            }
+        }
+        Map<String, TimeSeriesDto> series = new LinkedHashMap<>();
+        gather(shardUris.entrySet().stream()
+                .map(entry -> supplyOnShard(() -> fetchTimeSeries(shardTemplate(entry.getKey()), start, end,
+                        entry.getValue(), interval, unique)))
+                .collect(Collectors.toList()))
+                .forEach(partial -> series.merge(partial.getApp() + "-" + partial.getUri(), partial,
+                        this::mergeTimeSeries));
+        return new ArrayList<>(series.values());
+    }
+
+    private List<TimeSeriesDto> fetchTimeSeries(RestTemplate template, String start, String end, List<String> uris,
+                                                String interval, boolean unique) {
+        String url = String.format("/stats/timeseries?start=%s&end=%s&uris=%s&interval=%s&unique=%s",
+                start, end, uris, interval, unique);
+        TimeSeriesDto[] body = template.getForObject(url, TimeSeriesDto[].class);
+        return (body != null) ? Arrays.asList(body) : Collections.emptyList();
+    }
+
+    /**
+     * Adds a stats server. New hits of the URIs it takes over are sent to it, while queries keep asking their
+     * previous owners for the hits those already hold.
+     *
+     * @param url the base URL of the stats server
+     */
+    public void addShard(String url) {
+        requireSharding().rebalance(shardTopology.current().withShard(url));
+    }
+
+    /**
+     * Stops sending hits to a stats server. It must stay reachable for as long as the hits it holds are queried.
+     *
+     * @param url the base URL of the stats server
+     */
+    public void removeShard(String url) {
+        requireSharding().rebalance(shardTopology.current().withoutShard(url));
+    }
+
+    /**
+     * Returns the shard topology with the current and earlier shard rings, if sharding is enabled.
+     */
+    public Optional<ShardTopology> getShardTopology() {
+        return Optional.ofNullable(shardTopology);
+    }
+
+    /**
+     * Returns the background sender with its queued, sent and dropped counters, if asynchronous mode is enabled.
+     */
+    public Optional<AsyncHitSender> getHitSender() {
+        return Optional.ofNullable(hitSender);
+    }
+
+    /**
+     * Returns the response cache with its hit, miss and coalesced counters, if caching is enabled.
+     */
+    public Optional<StatsResponseCache> getResponseCache() {
+        return Optional.ofNullable(responseCache);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (hitSender != null) {
+            hitSender.close();
+        }
+        if (shardExecutor != null) {
+            shardExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Queries every shard that may hold hits of the requested URIs and merges the results. Unique hits of a URI
+     * with several owners cannot be added up, so those shards are asked for visitor sketches instead, which
+     * requires all shards to run with the same {@code stats.unique.mode}.
+     */
+    private List<ViewStatsDto> scatterStats(String start, String end, List<String> uris, boolean unique,
+                                            ShardQuery query) {
+        Map<String, List<String>> counted = new LinkedHashMap<>();
+        Map<String, List<String>> sketched = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty()) {
+            List<ShardRing> rings = ringsBetween(start, end);
+            Set<String> shards = new LinkedHashSet<>();
+            rings.forEach(ring -> shards.addAll(ring.getShards()));
+            Map<String, List<String>> target = unique && rings.size() > 1 ? sketched : counted;
+            shards.forEach(shard -> target.put(shard, uris));
+        } else {
+            for (String uri : uris) {
+                Set<String> owners = ownersOf(uri, start, end);
+                Map<String, List<String>> target = unique && owners.size() > 1 ? sketched : counted;
+                for (String shard : owners) {
+                    target.computeIfAbsent(shard, k -> new ArrayList<>()).add(uri);
+                }
+            }
+        }
+        List<CompletableFuture<List<ViewStatsDto>>> countedParts = new ArrayList<>();
+        counted.forEach((shard, shardUris) -> countedParts.add(supplyOnShard(() ->
+                query.fetch(shard, shardUris, false))));
+        List<CompletableFuture<List<ViewStatsDto>>> sketchedParts = new ArrayList<>();
+        sketched.forEach((shard, shardUris) -> sketchedParts.add(supplyOnShard(() ->
+                query.fetch(shard, shardUris, true))));
+
+        Map<String, ViewStatsDto> merged = new LinkedHashMap<>();
+        for (ViewStatsDto partial : gather(countedParts)) {
+            merged.merge(partial.getApp() + "-" + partial.getUri(), partial.toBuilder().build(), (left, right) -> {
+                left.setHits(left.getHits() + right.getHits());
+                return left;
+            });
+        }
+        Map<String, UniqueSketch> sketches = new LinkedHashMap<>();
+        Base64.Decoder decoder = Base64.getDecoder();
+        for (ViewStatsDto partial : gather(sketchedParts)) {
+            String key = partial.getApp() + "-" + partial.getUri();
+            UniqueSketch sketch = UniqueSketch.fromBytes(decoder.decode(partial.getSketch()));
+            UniqueSketch existing = sketches.putIfAbsent(key, sketch);
+            if (existing != null) {
+                existing.merge(sketch);
+            }
+            merged.putIfAbsent(key, partial.toBuilder().sketch(null).build());
+        }
+        sketches.forEach((key, sketch) -> merged.get(key).setHits(sketch.cardinality()));
+        return merged.values().stream()
+                .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private TimeSeriesDto mergeTimeSeries(TimeSeriesDto left, TimeSeriesDto right) {
+        Map<String, TimeSeriesPointDto> points = new LinkedHashMap<>();
+        for (TimeSeriesPointDto point : left.getPoints()) {
+            points.put(point.getStart(), point.toBuilder().build());
+        }
+        for (TimeSeriesPointDto point : right.getPoints()) {
+            points.merge(point.getStart(), point.toBuilder().build(), (sum, other) -> {
+                sum.setHits(sum.getHits() + other.getHits());
+                if (sum.getUniqueHits() != null && other.getUniqueHits() != null) {
+                    sum.setUniqueHits(sum.getUniqueHits() + other.getUniqueHits());
+                }
+                return sum;
+            });
+        }
+        return left.toBuilder()
+                .points(new ArrayList<>(points.values()))
+                .build();
+    }
+
+    private <T> CompletableFuture<List<T>> supplyOnShard(Supplier<List<T>> call) {
+        return CompletableFuture.supplyAsync(call, shardExecutor);
+    }
+
+    private <T> List<T> gather(List<CompletableFuture<List<T>>> parts) {
+        List<T> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<T>> part : parts) {
+                results.addAll(part.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private Set<String> ownersOf(String uri, String start, String end) {
+        Set<String> owners = new LinkedHashSet<>();
+        for (ShardRing ring : ringsBetween(start, end)) {
+            owners.add(ring.shardOf(uri));
+        }
+        return owners;
+    }
+
+    private List<ShardRing> ringsBetween(String start, String end) {
+        try {
+            return shardTopology.ringsBetween(LocalDateTime.parse(start, DATE_TIME_FORMATTER),
+                    LocalDateTime.parse(end, DATE_TIME_FORMATTER));
+        } catch (DateTimeParseException e) {
+            return shardTopology.ringsBetween(LocalDateTime.MIN, LocalDateTime.MAX);
+        }
+    }
+
+    private RestTemplate templateFor(String uri) {
+        return shardTopology == null ? restTemplate : shardTemplate(shardTopology.current().shardOf(uri));
+    }
+
+    private RestTemplate shardTemplate(String url) {
+        return shardTemplates.computeIfAbsent(url, this::newRestTemplate);
+    }
+
+    private RestTemplate newRestTemplate(String url) {
+        return builder
+                .uriTemplateHandler(new DefaultUriBuilderFactory(url))
+                .requestFactory(HttpComponentsClientHttpRequestFactory::new)
+                .build();
+    }
+
+    private ShardTopology requireSharding() {
+        if (shardTopology == null) {
+            throw new IllegalStateException("Stats sharding is not enabled");
+        }
+        return shardTopology;
+    }
+
+    private static ShardTopology newShardTopology(StatsClientProperties.Sharding sharding) {
+        List<ShardTopology.Generation> history = new ArrayList<>();
+        for (StatsClientProperties.Generation generation : sharding.getHistory()) {
+            history.add(new ShardTopology.Generation(new ShardRing(generation.getUrls(), sharding.getVirtualNodes()),
+                    LocalDateTime.parse(generation.getUntil(), DATE_TIME_FORMATTER)));
+        }
+        return new ShardTopology(new ShardRing(sharding.getUrls(), sharding.getVirtualNodes()), history,
+                sharding.getHandoffSlack());
+    }
+
+    @FunctionalInterface
+    private interface ShardQuery {
+        List<ViewStatsDto> fetch(String shard, List<String> uris, boolean sketch);
+    }
+}
@@ -0,0 +1,96 @@
+package ru.practicum.client;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "stat.client")
+public class StatsClientProperties {
+    private final Async async = new Async();
+    private final Cache cache = new Cache();
+    private final Sharding sharding = new Sharding();
+    private WireFormat wireFormat = WireFormat.JSON;
+    /**
+     * Binary hit batches of at least this many hits are gzip-compressed.
+     */
+    private int compressThreshold = 64;
+
+    @Getter
+    @Setter
+    public static class Async {
+        /**
+         * Records hits through a bounded queue and a background sender instead of posting them inline.
+         */
+        private boolean enabled = false;
+        private int queueCapacity = 10_000;
+        private int batchSize = 500;
+        /**
+         * Maximum time a hit waits in the queue before a partial batch is shipped.
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+        /**
+         * How long a caller may wait for free space when the overflow policy is {@link OverflowPolicy#BLOCK}.
+         */
+        private Duration blockTimeout = Duration.ofMillis(50);
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        /**
+         * Caches stats responses and coalesces concurrent identical requests.
+         */
+        private boolean enabled = false;
+        /**
+         * How old a cached response may get, and how far apart the end times of requests sharing it may be.
+         */
+        private Duration staleness = Duration.ofSeconds(2);
+        private int maxEntries = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Sharding {
+        /**
+         * Routes hits to the stats servers in {@code urls} by consistent hashing on the URI, instead of sending
+         * everything to {@code stat.server.url}.
+         */
+        private boolean enabled = false;
+        private List<String> urls = new ArrayList<>();
+        /**
+         * Points per server on the hash ring; more points spread URIs more evenly.
+         */
+        private int virtualNodes = 128;
+        /**
+         * Earlier server lists, oldest first. Their servers keep answering queries over the hits they received.
+         */
+        private List<Generation> history = new ArrayList<>();
+        /**
+         * How far hit timestamps may lag behind the time a server list was replaced.
+         */
+        private Duration handoffSlack = Duration.ofMinutes(5);
+        /**
+         * Threads that query the servers in parallel.
+         */
+        private int queryThreads = 8;
+    }
+
+    @Getter
+    @Setter
+    public static class Generation {
+        private List<String> urls = new ArrayList<>();
+        /**
+         * When the list was replaced, as {@code yyyy-MM-dd HH:mm:ss}.
+         */
+        private String until;
+    }
+}
@@ -0,0 +1,155 @@
+package ru.practicum.client;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.dto.ViewStatsDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches stats responses for a short time and lets concurrent identical requests share one call to the
+ * stats server.
+ * <p>
+ * Requests that only differ in their end time are treated as identical as long as the ends lie within the
+ * staleness bound of each other, so a response is never older than that bound, nor does it miss more than
+ * that bound of hits at the end of the range. Failed calls are not cached.
+ */
+@Slf4j
+public class StatsResponseCache {
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final long stalenessNanos;
+    private final int maxEntries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public StatsResponseCache(StatsClientProperties.Cache properties) {
+        this.stalenessNanos = properties.getStaleness().toNanos();
+        this.maxEntries = properties.getMaxEntries();
+    }
+
+    /**
+     * Returns a cached or in-flight response for the request, or loads it.
+     *
+     * @param start  the start of the range
+     * @param end    the end of the range
+     * @param uris   the URIs of the request
+     * @param unique whether unique hits are requested
+     * @param loader calls the stats server
+     * @return the response
+     */
+    public List<ViewStatsDto> get(String start, String end, List<String> uris, boolean unique,
+                                  Supplier<List<ViewStatsDto>> loader) {
+        LocalDateTime endTime;
+        try {
+            endTime = LocalDateTime.parse(end, DATE_TIME_FORMATTER);
+        } catch (DateTimeParseException e) {
+            return loader.get();
+        }
+        List<String> sortedUris = uris == null ? new ArrayList<>() : new ArrayList<>(uris);
+        Collections.sort(sortedUris);
+        Key key = new Key(start, sortedUris, unique);
+
+        long now = System.nanoTime();
+        Entry created = new Entry(endTime, now);
+        Entry entry = entries.compute(key, (k, existing) ->
+                existing != null && existing.isFreshFor(endTime, now) ? existing : created);
+        if (entry != created) {
+            if (entry.response.isDone()) {
+                hits.incrementAndGet();
+            } else {
+                coalesced.incrementAndGet();
+            }
+            return await(entry);
+        }
+
+        misses.incrementAndGet();
+        evictIfFull(now);
+        try {
+            entry.response.complete(loader.get());
+        } catch (RuntimeException e) {
+            entries.remove(key, entry);
+            entry.response.completeExceptionally(e);
+        }
+        return await(entry);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    private List<ViewStatsDto> await(Entry entry) {
+        try {
+            return entry.response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for stats", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void evictIfFull(long now) {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        entries.entrySet().removeIf(e -> e.getValue().response.isDone() && now - e.getValue().loadedAt > stalenessNanos);
+        if (entries.size() > maxEntries) {
+            log.debug("Stats response cache is full, clearing {} entries", entries.size());
+            entries.entrySet().removeIf(e -> e.getValue().response.isDone());
+        }
+    }
+
+    @Value
+    private static class Key {
+        String start;
+        List<String> uris;
+        boolean unique;
+    }
+
+    private class Entry {
+        private final LocalDateTime end;
+        private final long loadedAt;
+        private final CompletableFuture<List<ViewStatsDto>> response = new CompletableFuture<>();
+
+        private Entry(LocalDateTime end, long loadedAt) {
+            this.end = end;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isFreshFor(LocalDateTime requestedEnd, long now) {
+            long endDistanceNanos = Math.abs(Duration.between(end, requestedEnd).toNanos());
+            return now - loadedAt <= stalenessNanos && endDistanceNanos <= stalenessNanos;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.client;
+
+/**
+ * Encoding used to post hit batches to the stats server.
+ */
+public enum WireFormat {
+    JSON,
+    /**
+     * The compact {@link ru.practicum.codec.HitCodec} encoding. Falls back to JSON if the server rejects it.
+     */
+    BINARY
+}
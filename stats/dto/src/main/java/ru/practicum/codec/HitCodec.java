@@ -0,0 +1,353 @@
+package ru.practicum.codec;
+
+import ru.practicum.dto.EndpointDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact binary encoding of hit batches, sent with the {@link #MEDIA_TYPE} content type.
+ * <p>
+ * A batch starts with the magic bytes {@code 'S' 'H'}, a version byte and a flags byte; if the
+ * {@link #FLAG_GZIP} flag is set the rest of the batch is gzip-compressed. The rest holds a dictionary of
+ * the distinct app and URI strings followed by the hits. Each hit refers to its app and URI by dictionary
+ * index, stores its timestamp as the difference in epoch milliseconds (UTC) to the previous hit and stores
+ * a canonical IPv4 address as four bytes. Other IP addresses are kept as strings, so they decode exactly as
+ * they were sent. All integers are unsigned LEB128 varints, signed ones zigzag-encoded.
+ * <p>
+ * Decoding never reads more than a given number of bytes, before and after decompression, and sizes read from
+ * the batch are checked against the bytes left, so a malformed or hostile batch cannot make the decoder
+ * allocate more than that.
+ */
+public final class HitCodec {
+    public static final String MEDIA_TYPE = "application/x-stats-hits";
+
+    private static final int MAGIC_0 = 'S';
+    private static final int MAGIC_1 = 'H';
+    private static final int VERSION = 1;
+    private static final int FLAG_GZIP = 1;
+    private static final int IP_STRING = 0;
+    private static final int IP_V4 = 4;
+    private static final int MIN_HIT_BYTES = 4;
+
+    private HitCodec() {
+    }
+
+    /**
+     * Receives decoded hits.
+     */
+    @FunctionalInterface
+    public interface HitConsumer {
+        void accept(String app, String uri, String ip, long epochMillis);
+    }
+
+    /**
+     * Encodes hits whose timestamps use the {@code yyyy-MM-dd HH:mm:ss} format.
+     *
+     * @param endpointDtos the hits to encode
+     * @param compress     whether to gzip the batch
+     * @return the encoded batch
+     * @throws IllegalArgumentException if a timestamp is malformed
+     */
+    public static byte[] encode(List<EndpointDto> endpointDtos, boolean compress) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + endpointDtos.size() * 12);
+        bytes.write(MAGIC_0);
+        bytes.write(MAGIC_1);
+        bytes.write(VERSION);
+        bytes.write(compress ? FLAG_GZIP : 0);
+        try (OutputStream out = compress ? new GZIPOutputStream(bytes) : bytes) {
+            writeBody(endpointDtos, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a batch, passing every hit to the consumer in the order they were encoded.
+     *
+     * @param in       the encoded batch
+     * @param maxBytes the maximum size of the batch, both as sent and decompressed
+     * @param consumer receives the hits
+     * @return the number of decoded hits
+     * @throws IOException if the batch cannot be read, is malformed or is larger than {@code maxBytes}
+     */
+    public static int decode(InputStream in, long maxBytes, HitConsumer consumer) throws IOException {
+        try {
+            return decodeBatch(new LimitedInputStream(in, maxBytes), maxBytes, consumer);
+        } catch (EOFException e) {
+            throw new IOException("Truncated hit batch", e);
+        }
+    }
+
+    private static int decodeBatch(LimitedInputStream in, long maxBytes, HitConsumer consumer) throws IOException {
+        if (in.read() != MAGIC_0 || in.read() != MAGIC_1) {
+            throw new IOException("Not a hit batch");
+        }
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported hit batch version " + version);
+        }
+        int flags = in.read();
+        if (flags < 0) {
+            throw new EOFException();
+        }
+        LimitedInputStream body = (flags & FLAG_GZIP) != 0
+                ? new LimitedInputStream(new GZIPInputStream(in), maxBytes)
+                : in;
+        DataInputStream data = new DataInputStream(body);
+
+        int dictionarySize = readVarInt(data);
+        if (dictionarySize > body.remaining()) {
+            throw new IOException("Dictionary size exceeds the batch: " + dictionarySize);
+        }
+        List<String> dictionary = new ArrayList<>(dictionarySize);
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary.add(readString(data, body));
+        }
+        int count = readVarInt(data);
+        if (count > body.remaining() / MIN_HIT_BYTES) {
+            throw new IOException("Hit count exceeds the batch: " + count);
+        }
+        long millis = 0;
+        for (int i = 0; i < count; i++) {
+            String app = lookup(dictionary, readVarInt(data));
+            String uri = lookup(dictionary, readVarInt(data));
+            millis += zigZagDecode(readVarLong(data));
+            consumer.accept(app, uri, readIp(data, body), millis);
+        }
+        return count;
+    }
+
+    private static void writeBody(List<EndpointDto> endpointDtos, OutputStream out) throws IOException {
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] apps = new int[endpointDtos.size()];
+        int[] uris = new int[endpointDtos.size()];
+        for (int i = 0; i < endpointDtos.size(); i++) {
+            apps[i] = indexes.computeIfAbsent(endpointDtos.get(i).getApp(), value -> add(dictionary, value));
+            uris[i] = indexes.computeIfAbsent(endpointDtos.get(i).getUri(), value -> add(dictionary, value));
+        }
+        writeVarLong(out, dictionary.size());
+        for (String value : dictionary) {
+            writeString(out, value);
+        }
+        writeVarLong(out, endpointDtos.size());
+        long previous = 0;
+        for (int i = 0; i < endpointDtos.size(); i++) {
+            long millis = parseTimestamp(endpointDtos.get(i).getTimestamp());
+            writeVarLong(out, apps[i]);
+            writeVarLong(out, uris[i]);
+            writeVarLong(out, zigZagEncode(millis - previous));
+            writeIp(out, endpointDtos.get(i).getIp());
+            previous = millis;
+        }
+    }
+
+    private static int add(List<String> dictionary, String value) {
+        dictionary.add(value);
+        return dictionary.size() - 1;
+    }
+
+    private static String lookup(List<String> dictionary, int index) throws IOException {
+        if (index >= dictionary.size()) {
+            throw new IOException("Dictionary index out of range: " + index);
+        }
+        return dictionary.get(index);
+    }
+
+    /**
+     * Parses {@code yyyy-MM-dd HH:mm:ss} by position, which is much cheaper than a {@code DateTimeFormatter}.
+     */
+    static long parseTimestamp(String timestamp) {
+        if (timestamp == null || timestamp.length() != 19 || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-'
+                || timestamp.charAt(10) != ' ' || timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':') {
+            throw new IllegalArgumentException("Malformed timestamp: " + timestamp);
+        }
+        LocalDateTime dateTime = LocalDateTime.of(digits(timestamp, 0, 4), digits(timestamp, 5, 2),
+                digits(timestamp, 8, 2), digits(timestamp, 11, 2), digits(timestamp, 14, 2), digits(timestamp, 17, 2));
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1000;
+    }
+
+    private static int digits(String value, int offset, int length) {
+        int result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Malformed timestamp: " + value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static void writeIp(OutputStream out, String ip) throws IOException {
+        byte[] address = parseCanonicalIpv4(ip);
+        if (address != null) {
+            out.write(IP_V4);
+            out.write(address);
+        } else {
+            out.write(IP_STRING);
+            writeString(out, ip);
+        }
+    }
+
+    private static String readIp(DataInputStream in, LimitedInputStream body) throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag == IP_V4) {
+            return in.readUnsignedByte() + "." + in.readUnsignedByte() + "." + in.readUnsignedByte() + "."
+                    + in.readUnsignedByte();
+        }
+        if (tag == IP_STRING) {
+            return readString(in, body);
+        }
+        throw new IOException("Unknown IP tag " + tag);
+    }
+
+    /**
+     * Returns the four bytes of a dotted-decimal IPv4 address without leading zeros, or {@code null} if the
+     * address would not decode back to the same string.
+     */
+    private static byte[] parseCanonicalIpv4(String ip) {
+        byte[] address = new byte[4];
+        int octet = 0;
+        int digits = 0;
+        int index = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                if (digits > 0 && octet == 0) {
+                    return null;
+                }
+                octet = octet * 10 + (c - '0');
+                digits++;
+                if (octet > 255) {
+                    return null;
+                }
+            } else if (c == '.' && digits > 0 && index < 4) {
+                address[index++] = (byte) octet;
+                octet = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        return index == 4 ? address : null;
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, LimitedInputStream body) throws IOException {
+        int length = readVarInt(in);
+        if (length > body.remaining()) {
+            throw new IOException("String length exceeds the batch: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Varint out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    private static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Fails once more than the given number of bytes have been read.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+            this.remaining = maxBytes;
+        }
+
+        long remaining() {
+            return remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, remaining < len ? (int) remaining + 1 : len);
+            if (read > 0) {
+                consume(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(remaining < n ? remaining + 1 : n);
+            consume(skipped);
+            return skipped;
+        }
+
+        private void consume(long bytes) throws IOException {
+            remaining -= bytes;
+            if (remaining < 0) {
+                throw new IOException("Hit batch exceeds " + maxBytes + " bytes");
+            }
+        }
+    }
+}
@@ -3,11 +3,21 @@ package ru.practicum.dto;
 import lombok.Builder;
 import lombok.Data;
 
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Size;
+
 @Data
 @Builder(toBuilder = true)
 public class EndpointDto {
+    @NotBlank
+    @Size(max = 64)
     private String app;
+    @NotBlank
+    @Size(max = 64)
     private String uri;
+    @NotBlank
+    @Size(max = 64)
     private String ip;
+    @NotBlank
     private String timestamp;
 }
@@ -0,0 +1,19 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public class HitBatchAckDto {
+    private Integer received;
+    private Integer stored;
+    private Integer batches;
+    /**
+     * Why a streamed ingestion failed after storing the acknowledged hits, or {@code null} if it succeeded.
+     */
+    private String error;
+}
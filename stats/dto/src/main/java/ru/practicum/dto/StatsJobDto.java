@@ -0,0 +1,30 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public class StatsJobDto {
+    private String id;
+    /**
+     * {@code PENDING}, {@code RUNNING}, {@code DONE}, {@code FAILED} or {@code CANCELLED}.
+     */
+    private String status;
+    /**
+     * The share of the time range counted so far, from 0 to 1.
+     */
+    private Double progress;
+    private String createdOn;
+    private String finishedOn;
+    private String error;
+    /**
+     * The view statistics ordered by hits in descending order, once the job is done.
+     */
+    private List<ViewStatsDto> result;
+}
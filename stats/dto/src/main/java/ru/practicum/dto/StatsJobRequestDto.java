@@ -0,0 +1,27 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Positive;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public class StatsJobRequestDto {
+    @NotBlank
+    private String start;
+    @NotBlank
+    private String end;
+    /**
+     * The URIs to count, or {@code null} for all of them.
+     */
+    private List<String> uris;
+    private boolean unique;
+    @Positive
+    private Integer limit;
+}
@@ -0,0 +1,17 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public class TimeSeriesDto {
+    private String app;
+    private String uri;
+    private List<TimeSeriesPointDto> points;
+}
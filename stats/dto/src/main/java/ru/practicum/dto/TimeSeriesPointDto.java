@@ -0,0 +1,15 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public class TimeSeriesPointDto {
+    private String start;
+    private Long hits;
+    private Long uniqueHits;
+}
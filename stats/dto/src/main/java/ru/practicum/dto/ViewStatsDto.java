@@ -11,5 +11,18 @@ import lombok.*;
 public class ViewStatsDto {
     private String app;
     private String uri;
-    private Integer hits;
+    private Long hits;
+    /**
+     * Lower end of the 95% confidence interval of a sampled estimate, {@code null} for exact counts.
+     */
+    private Long hitsLower;
+    /**
+     * Upper end of the 95% confidence interval of a sampled estimate, {@code null} for exact counts.
+     */
+    private Long hitsUpper;
+    /**
+     * Base64 of the serialized {@link ru.practicum.sketch.UniqueSketch} of the visitors when requested, so that
+     * unique hits of several stats servers can be merged; {@code null} otherwise.
+     */
+    private String sketch;
 }
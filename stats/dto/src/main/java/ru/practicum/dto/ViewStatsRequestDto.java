@@ -0,0 +1,27 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public class ViewStatsRequestDto {
+    @NotBlank
+    private String start;
+    @NotBlank
+    private String end;
+    @NotEmpty
+    private List<String> uris;
+    private boolean unique;
+    /**
+     * Whether to return the unique visitor sketches along with unique hits.
+     */
+    private boolean sketch;
+}
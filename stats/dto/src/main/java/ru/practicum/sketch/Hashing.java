@@ -0,0 +1,28 @@
+package ru.practicum.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hash function shared by the sketches.
+ */
+public final class Hashing {
+    private Hashing() {
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes followed by the MurmurHash3 64-bit finalizer for good bit dispersion.
+     */
+    public static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
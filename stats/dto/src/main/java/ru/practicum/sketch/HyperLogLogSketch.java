@@ -0,0 +1,109 @@
+package ru.practicum.sketch;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HyperLogLog cardinality estimator with {@code 2^precision} one-byte registers and a 64-bit hash.
+ */
+public class HyperLogLogSketch implements UniqueSketch {
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLogSketch(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 16: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Returns the smallest precision whose standard error {@code 1.04 / sqrt(2^precision)} does not exceed the given bound.
+     *
+     * @param relativeError the acceptable relative standard error, for example {@code 0.01}
+     * @return the precision, clamped to the supported range
+     */
+    public static int precisionFor(double relativeError) {
+        double registers = Math.pow(1.04 / relativeError, 2);
+        int precision = (int) Math.ceil(Math.log(registers) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    static HyperLogLogSketch read(ByteBuffer buffer) {
+        HyperLogLogSketch sketch = new HyperLogLogSketch(buffer.get());
+        buffer.get(sketch.registers);
+        return sketch;
+    }
+
+    @Override
+    public void add(String ip) {
+        long hash = Hashing.hash64(ip);
+        int index = (int) (hash >>> (Long.SIZE - precision));
+        long rest = hash << precision;
+        int rank = rest == 0 ? Long.SIZE - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    @Override
+    public void merge(UniqueSketch other) {
+        if (!(other instanceof HyperLogLogSketch) || ((HyperLogLogSketch) other).precision != precision) {
+            throw new IllegalArgumentException("Cannot merge " + other + " into " + this);
+        }
+        byte[] otherRegisters = ((HyperLogLogSketch) other).registers;
+        for (int i = 0; i < registers.length; i++) {
+            if (otherRegisters[i] > registers[i]) {
+                registers[i] = otherRegisters[i];
+            }
+        }
+    }
+
+    @Override
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(2 + registers.length)
+                .put(HYPER_LOG_LOG)
+                .put((byte) precision)
+                .put(registers)
+                .array();
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLogSketch(precision=" + precision + ")";
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
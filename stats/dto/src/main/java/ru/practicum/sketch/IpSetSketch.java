@@ -0,0 +1,117 @@
+package ru.practicum.sketch;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exact set of IP addresses. IPv4 addresses are stored as unsigned ints in a compressed Roaring bitmap,
+ * anything else (IPv6, unparsable values) is kept verbatim.
+ */
+public class IpSetSketch implements UniqueSketch {
+    private final RoaringBitmap ipv4 = new RoaringBitmap();
+    private final Set<String> others = new HashSet<>();
+
+    static IpSetSketch read(ByteBuffer buffer) {
+        IpSetSketch sketch = new IpSetSketch();
+        try {
+            sketch.ipv4.deserialize(buffer.slice());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.position(buffer.position() + sketch.ipv4.serializedSizeInBytes());
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] value = new byte[buffer.getShort() & 0xffff];
+            buffer.get(value);
+            sketch.others.add(new String(value, StandardCharsets.UTF_8));
+        }
+        return sketch;
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address.
+     *
+     * @param ip the address to parse
+     * @return the address as an unsigned int in the low 32 bits, or {@code -1} if it is not an IPv4 address
+     */
+    public static long parseIpv4(String ip) {
+        long address = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                address = (address << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || octet < 0) {
+            return -1;
+        }
+        return (address << 8) | octet;
+    }
+
+    @Override
+    public void add(String ip) {
+        long address = parseIpv4(ip);
+        if (address >= 0) {
+            ipv4.add((int) address);
+        } else {
+            others.add(ip);
+        }
+    }
+
+    @Override
+    public void merge(UniqueSketch other) {
+        if (!(other instanceof IpSetSketch)) {
+            throw new IllegalArgumentException("Cannot merge " + other + " into " + this);
+        }
+        ipv4.or(((IpSetSketch) other).ipv4);
+        others.addAll(((IpSetSketch) other).others);
+    }
+
+    @Override
+    public long cardinality() {
+        return ipv4.getLongCardinality() + others.size();
+    }
+
+    @Override
+    public byte[] toBytes() {
+        ipv4.runOptimize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + ipv4.serializedSizeInBytes() + 4);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(IP_SET);
+            ipv4.serialize(out);
+            out.writeInt(others.size());
+            for (String other : others) {
+                byte[] value = other.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(value.length);
+                out.write(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return "IpSetSketch(size=" + cardinality() + ")";
+    }
+}
@@ -0,0 +1,38 @@
+package ru.practicum.sketch;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A mergeable summary of the distinct IP addresses seen for one app and URI.
+ */
+public interface UniqueSketch {
+    byte HYPER_LOG_LOG = 1;
+    byte IP_SET = 2;
+
+    void add(String ip);
+
+    /**
+     * Adds every address of the other sketch to this one. Merging is idempotent, so the same sketch
+     * may safely be merged more than once.
+     *
+     * @param other a sketch created with the same mode and precision
+     */
+    void merge(UniqueSketch other);
+
+    long cardinality();
+
+    byte[] toBytes();
+
+    static UniqueSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte type = buffer.get();
+        switch (type) {
+            case HYPER_LOG_LOG:
+                return HyperLogLogSketch.read(buffer);
+            case IP_SET:
+                return IpSetSketch.read(buffer);
+            default:
+                throw new IllegalArgumentException("Unknown sketch type " + type);
+        }
+    }
+}
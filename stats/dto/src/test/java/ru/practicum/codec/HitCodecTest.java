@@ -0,0 +1,135 @@
+package ru.practicum.codec;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.dto.EndpointDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitCodecTest {
+    private static final int MAX_BYTES = 1 << 20;
+
+    @DisplayName("Кодирование и декодирование пакета хитов")
+    @Test
+    void roundTripTest() throws IOException {
+        List<EndpointDto> endpointDtos = endpointDtos(1000);
+
+        List<String> decoded = decode(HitCodec.encode(endpointDtos, false), MAX_BYTES);
+
+        assertEquals(expected(endpointDtos), decoded);
+    }
+
+    @DisplayName("Кодирование и декодирование сжатого пакета хитов")
+    @Test
+    void roundTripCompressedTest() throws IOException {
+        List<EndpointDto> endpointDtos = endpointDtos(1000);
+        byte[] plain = HitCodec.encode(endpointDtos, false);
+        byte[] compressed = HitCodec.encode(endpointDtos, true);
+
+        assertTrue(compressed.length < plain.length);
+        assertEquals(expected(endpointDtos), decode(compressed, MAX_BYTES));
+    }
+
+    @DisplayName("Адреса, отличные от канонических IPv4, декодируются без изменений")
+    @Test
+    void nonCanonicalIpTest() throws IOException {
+        List<EndpointDto> endpointDtos = new ArrayList<>();
+        for (String ip : List.of("2001:db8::1", "010.0.0.1", "1.2.3", "256.0.0.1", "1.2.3.4.", "unknown")) {
+            endpointDtos.add(EndpointDto.builder()
+                    .app("ewm-main-service")
+                    .uri("/events")
+                    .ip(ip)
+                    .timestamp("2024-01-01 00:00:00")
+                    .build());
+        }
+
+        assertEquals(expected(endpointDtos), decode(HitCodec.encode(endpointDtos, false), MAX_BYTES));
+    }
+
+    @DisplayName("Некорректный заголовок пакета")
+    @Test
+    void malformedHeaderTest() {
+        assertThrows(IOException.class, () -> decode(new byte[]{'X', 'Y', 1, 0}, MAX_BYTES));
+        assertThrows(IOException.class, () -> decode(new byte[]{'S', 'H', 9, 0}, MAX_BYTES));
+        assertThrows(IOException.class, () -> decode(new byte[]{'S', 'H', 1}, MAX_BYTES));
+    }
+
+    @DisplayName("Обрезанный пакет")
+    @Test
+    void truncatedTest() {
+        byte[] batch = HitCodec.encode(endpointDtos(100), false);
+
+        assertThrows(IOException.class, () -> decode(Arrays.copyOf(batch, batch.length - 1), MAX_BYTES));
+        assertThrows(IOException.class, () -> decode(Arrays.copyOf(batch, batch.length / 2), MAX_BYTES));
+    }
+
+    @DisplayName("Размеры из пакета ограничены оставшимися байтами")
+    @Test
+    void sizesBoundedByInputTest() {
+        byte[] dictionarySize = {'S', 'H', 1, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07};
+        byte[] stringLength = {'S', 'H', 1, 0, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07};
+        byte[] hitCount = {'S', 'H', 1, 0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07};
+
+        assertThrows(IOException.class, () -> decode(dictionarySize, MAX_BYTES));
+        assertThrows(IOException.class, () -> decode(stringLength, MAX_BYTES));
+        assertThrows(IOException.class, () -> decode(hitCount, MAX_BYTES));
+    }
+
+    @DisplayName("Индекс словаря вне диапазона")
+    @Test
+    void dictionaryIndexOutOfRangeTest() {
+        byte[] batch = {'S', 'H', 1, 0, 0, 1, 5, 0, 0, 4, 1, 2, 3, 4};
+
+        assertThrows(IOException.class, () -> decode(batch, MAX_BYTES));
+    }
+
+    @DisplayName("Пакет больше допустимого размера до и после распаковки")
+    @Test
+    void maxBytesTest() throws IOException {
+        List<EndpointDto> endpointDtos = endpointDtos(1000);
+        byte[] plain = HitCodec.encode(endpointDtos, false);
+        byte[] compressed = HitCodec.encode(endpointDtos, true);
+
+        assertEquals(expected(endpointDtos), decode(plain, plain.length));
+        assertThrows(IOException.class, () -> decode(plain, plain.length - 1));
+        assertThrows(IOException.class, () -> decode(compressed, compressed.length));
+    }
+
+    private static List<EndpointDto> endpointDtos(int count) {
+        List<EndpointDto> endpointDtos = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            endpointDtos.add(EndpointDto.builder()
+                    .app(i % 3 == 0 ? "ewm-main-service" : "ewm-admin")
+                    .uri("/events/" + i % 17)
+                    .ip("10.0." + i / 256 % 256 + "." + i % 256)
+                    .timestamp(String.format("2024-01-%02d %02d:%02d:%02d", 1 + i % 28, i % 24, i % 60, (i * 7) % 60))
+                    .build());
+        }
+        return endpointDtos;
+    }
+
+    private static List<String> expected(List<EndpointDto> endpointDtos) {
+        List<String> expected = new ArrayList<>();
+        for (EndpointDto endpointDto : endpointDtos) {
+            expected.add(endpointDto.getApp() + " " + endpointDto.getUri() + " " + endpointDto.getIp() + " "
+                    + HitCodec.parseTimestamp(endpointDto.getTimestamp()));
+        }
+        return expected;
+    }
+
+    private static List<String> decode(byte[] batch, long maxBytes) throws IOException {
+        List<String> decoded = new ArrayList<>();
+        int count = HitCodec.decode(new ByteArrayInputStream(batch), maxBytes, (app, uri, ip, epochMillis) ->
+                decoded.add(app + " " + uri + " " + ip + " " + epochMillis));
+        assertEquals(decoded.size(), count);
+        return decoded;
+    }
+}
@@ -0,0 +1,409 @@
+package ru.practicum.aggregation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sums hit counts per app and URI within a fixed memory budget.
+ * <p>
+ * Counts are kept in an open-addressing hash table over primitive arrays, keyed by the dictionary keys of the
+ * app, route and resource, which takes 24 bytes per slot instead of several objects per entry. The table
+ * doubles until it reaches the budget; when it fills up after that, its entries are sorted by key and
+ * spilled to a temporary run file, and the table starts over. Reading the result merges the sorted runs,
+ * summing the counts of equal keys, and keeps the top entries in a bounded heap, so memory stays within the
+ * budget plus the requested number of top entries.
+ * <p>
+ * Instances are not thread-safe and must be closed to delete their run files.
+ */
+@Slf4j
+public class HitAggregator implements Closeable {
+    private static final long EMPTY = -1;
+    private static final int SLOT_BYTES = 3 * Long.BYTES;
+    private static final double MAX_LOAD = 0.7;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final Path spillDirectory;
+    private final int maxSlots;
+    private final List<Path> runs = new ArrayList<>();
+    private long[] keys;
+    private long[] resources;
+    private long[] counts;
+    private int mask;
+    private int maxSize;
+    private int size;
+
+    /**
+     * @param memoryBudget   the maximum size of the hash table in bytes; the table starts small and doubles up
+     *                       to it
+     * @param spillDirectory the directory run files are created in
+     */
+    public HitAggregator(long memoryBudget, Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        this.maxSlots = Integer.highestOneBit((int) Math.min(Math.max(memoryBudget / SLOT_BYTES, 16), 1 << 30));
+        allocate(Math.min(INITIAL_SLOTS, maxSlots));
+    }
+
+    /**
+     * Adds hits of an app and URI.
+     */
+    public void add(int appId, int routeId, long resourceId, long hits) {
+        long key = key(appId, routeId);
+        int slot = (int) hash(key, resourceId) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key && resources[slot] == resourceId) {
+                counts[slot] += hits;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        resources[slot] = resourceId;
+        counts[slot] = hits;
+        if (++size >= maxSize) {
+            if (keys.length < maxSlots) {
+                grow();
+            } else {
+                spill();
+            }
+        }
+    }
+
+    /**
+     * Passes the apps and URIs with the most hits to the consumer, most visited first. Must be called once.
+     *
+     * @param limit    the maximum number of entries, or {@code null} for all of them
+     * @param consumer receives the entries
+     */
+    public void top(Integer limit, HitConsumer consumer) {
+        TopHits top = new TopHits(limit == null ? Integer.MAX_VALUE : limit);
+        if (runs.isEmpty()) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    top.offer(keys[slot], resources[slot], counts[slot]);
+                }
+            }
+        } else {
+            if (size > 0) {
+                spill();
+            }
+            merge(top);
+        }
+        top.drain(consumer);
+    }
+
+    public int getSpills() {
+        return runs.size();
+    }
+
+    @Override
+    public void close() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                log.warn("Failed to delete aggregation run {}: {}", run, e.getMessage());
+            }
+        }
+        runs.clear();
+    }
+
+    private void allocate(int slots) {
+        keys = new long[slots];
+        resources = new long[slots];
+        counts = new long[slots];
+        mask = slots - 1;
+        maxSize = (int) (slots * MAX_LOAD);
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldResources = resources;
+        long[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = (int) hash(oldKeys[i], oldResources[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                resources[slot] = oldResources[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Moves the entries to the front of the table, sorts them by key and writes them to a new run file.
+     */
+    private void spill() {
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                keys[count] = keys[slot];
+                resources[count] = resources[slot];
+                counts[count] = counts[slot];
+                count++;
+            }
+        }
+        sort(count);
+        try {
+            Path run = Files.createTempFile(spillDirectory, "stats-aggregation-", ".run");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                    BUFFER_SIZE))) {
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(keys[i]);
+                    out.writeLong(resources[i]);
+                    out.writeLong(counts[i]);
+                }
+            }
+            log.debug("Spilled {} aggregated entries to {}", count, run);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void merge(TopHits top) {
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(runs.size(), (left, right) -> {
+            int order = Long.compare(left.key, right.key);
+            return order != 0 ? order : Long.compare(left.resource, right.resource);
+        });
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!readers.isEmpty()) {
+                RunReader reader = readers.peek();
+                long key = reader.key;
+                long resource = reader.resource;
+                long sum = 0;
+                while (reader != null && reader.key == key && reader.resource == resource) {
+                    readers.poll();
+                    sum += reader.count;
+                    if (reader.next()) {
+                        readers.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                    reader = readers.peek();
+                }
+                top.offer(key, resource, sum);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            readers.forEach(RunReader::close);
+        }
+    }
+
+    /**
+     * Heap sort of the first {@code count} entries by key, which needs no extra memory.
+     */
+    private void sort(int count) {
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(i, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(int i, int count) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < count && compare(left, largest) > 0) {
+                largest = left;
+            }
+            if (right < count && compare(right, largest) > 0) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private int compare(int i, int j) {
+        int order = Long.compare(keys[i], keys[j]);
+        return order != 0 ? order : Long.compare(resources[i], resources[j]);
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long resource = resources[i];
+        resources[i] = resources[j];
+        resources[j] = resource;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+
+    private static long key(int appId, int routeId) {
+        return ((long) appId << 32) | (routeId & 0xffffffffL);
+    }
+
+    private static long hash(long key, long resource) {
+        long hash = key * 0x9e3779b97f4a7c15L ^ resource * 0xc2b2ae3d27d4eb4fL;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        private int remaining;
+        private long key;
+        private long resource;
+        private long count;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+            this.remaining = in.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            key = in.readLong();
+            resource = in.readLong();
+            count = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.warn("Failed to close aggregation run: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Bounded min-heap over primitive arrays that keeps the entries with the most hits.
+     */
+    private static class TopHits {
+        private final int limit;
+        private long[] keys = new long[16];
+        private long[] resources = new long[16];
+        private long[] counts = new long[16];
+        private int size;
+
+        TopHits(int limit) {
+            this.limit = limit;
+        }
+
+        void offer(long key, long resource, long count) {
+            if (size < limit) {
+                if (size == keys.length) {
+                    int capacity = (int) Math.min((long) size * 2, limit);
+                    keys = Arrays.copyOf(keys, capacity);
+                    resources = Arrays.copyOf(resources, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+                }
+                set(size, key, resource, count);
+                siftUp(size++);
+            } else if (limit > 0 && count > counts[0]) {
+                set(0, key, resource, count);
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Passes the entries to the consumer, most hits first, emptying the heap.
+         */
+        void drain(HitConsumer consumer) {
+            int count = size;
+            // Popping the minimum into the freed last slot leaves the entries sorted by hits descending.
+            while (size > 1) {
+                swap(0, --size);
+                siftDown(0);
+            }
+            for (int i = 0; i < count; i++) {
+                consumer.accept((int) (keys[i] >>> 32), (int) keys[i], resources[i], counts[i]);
+            }
+            size = 0;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (counts[parent] <= counts[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && counts[left] < counts[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && counts[right] < counts[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void set(int i, long key, long resource, long count) {
+            keys[i] = key;
+            resources[i] = resource;
+            counts[i] = count;
+        }
+
+        private void swap(int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            long resource = resources[i];
+            resources[i] = resources[j];
+            resources[j] = resource;
+            long count = counts[i];
+            counts[i] = counts[j];
+            counts[j] = count;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.aggregation;
+
+/**
+ * Receives hit counts keyed by the dictionary keys of an app and URI.
+ */
+@FunctionalInterface
+public interface HitConsumer {
+    void accept(int appId, int routeId, long resourceId, long hits);
+}
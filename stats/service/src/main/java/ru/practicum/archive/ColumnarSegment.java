@@ -0,0 +1,369 @@
+package ru.practicum.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * A read-only columnar segment written by {@link ColumnarSegmentWriter}, scanned through memory-mapped columns.
+ * <p>
+ * Each column is mapped on its own, so a scan only pages in the columns it reads: counting hits touches the
+ * app and URI codes, and the IP column is only read for unique visitors. When counting, timestamps are only
+ * decoded in the blocks at the edges of the scanned range. Instances are immutable and can be scanned
+ * concurrently.
+ */
+public class ColumnarSegment {
+    private static final long IPV4_MASK = (1L << Integer.SIZE) - 1;
+
+    private final long rows;
+    private final String[] appNames;
+    private final String[] templates;
+    private final long[] resourceIds;
+    private final int appWidth;
+    private final int uriWidth;
+    private final int ipWidth;
+    private final String[] ipStrings;
+    private final long[] blockSeconds;
+    private final long[] blockOffsets;
+    private final ByteBuffer timestamps;
+    private final ByteBuffer apps;
+    private final ByteBuffer uris;
+    private final ByteBuffer ips;
+
+    private ColumnarSegment(long rows, String[] appNames, String[] templates, long[] resourceIds, int ipWidth,
+                            String[] ipStrings, long[] blockSeconds, long[] blockOffsets, ByteBuffer timestamps,
+                            ByteBuffer apps, ByteBuffer uris, ByteBuffer ips) {
+        this.rows = rows;
+        this.appNames = appNames;
+        this.templates = templates;
+        this.resourceIds = resourceIds;
+        this.appWidth = ColumnarSegmentWriter.bitWidth(appNames.length);
+        this.uriWidth = ColumnarSegmentWriter.bitWidth(templates.length);
+        this.ipWidth = ipWidth;
+        this.ipStrings = ipStrings;
+        this.blockSeconds = blockSeconds;
+        this.blockOffsets = blockOffsets;
+        this.timestamps = timestamps;
+        this.apps = apps;
+        this.uris = uris;
+        this.ips = ips;
+    }
+
+    /**
+     * Maps a segment file. The mapping stays valid after the file is replaced or deleted.
+     *
+     * @param file the segment file
+     * @return the segment
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    public static ColumnarSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, 2 * Integer.BYTES);
+            if (prefix.getInt() != ColumnarSegmentWriter.MAGIC) {
+                throw new IOException(file + " is not a statistics segment");
+            }
+            int headerSize = prefix.getInt();
+            long position = 2 * Integer.BYTES;
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, position, headerSize);
+            position += headerSize;
+
+            long rows = header.getLong();
+            String[] appNames = new String[header.getInt()];
+            for (int i = 0; i < appNames.length; i++) {
+                appNames[i] = readString(header);
+            }
+            int uriCount = header.getInt();
+            String[] templates = new String[uriCount];
+            long[] resourceIds = new long[uriCount];
+            for (int i = 0; i < uriCount; i++) {
+                templates[i] = readString(header);
+                resourceIds[i] = header.getLong();
+            }
+            int ipWidth = header.getInt();
+            String[] ipStrings = new String[header.getInt()];
+            for (int i = 0; i < ipStrings.length; i++) {
+                ipStrings[i] = readString(header);
+            }
+            int blocks = header.getInt();
+            long[] blockSeconds = new long[blocks];
+            long[] blockOffsets = new long[blocks];
+            for (int i = 0; i < blocks; i++) {
+                blockSeconds[i] = header.getLong();
+                blockOffsets[i] = header.getLong();
+            }
+            ByteBuffer[] columns = new ByteBuffer[4];
+            for (int i = 0; i < columns.length; i++) {
+                long size = header.getLong();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException(file + " has a column too large to map");
+                }
+                columns[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                position += size;
+            }
+            return new ColumnarSegment(rows, appNames, templates, resourceIds, ipWidth, ipStrings, blockSeconds,
+                    blockOffsets, columns[0], columns[1], columns[2], columns[3]);
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public String getAppName(int appCode) {
+        return appNames[appCode];
+    }
+
+    /**
+     * Returns the code of an app in this segment.
+     *
+     * @param appName the app name
+     * @return the code, or {@code -1} if the segment holds no hits of the app
+     */
+    public int findAppCode(String appName) {
+        int code = Arrays.binarySearch(appNames, appName);
+        return code >= 0 ? code : -1;
+    }
+
+    public int getAppCount() {
+        return appNames.length;
+    }
+
+    public String getTemplate(int uriCode) {
+        return templates[uriCode];
+    }
+
+    public long getResourceId(int uriCode) {
+        return resourceIds[uriCode];
+    }
+
+    public int getUriCount() {
+        return templates.length;
+    }
+
+    /**
+     * Returns the code of a URI in this segment.
+     *
+     * @param template   the route template of the URI
+     * @param resourceId the resource id of the URI
+     * @return the code, or {@code -1} if the segment holds no hits of the URI
+     */
+    public int findUriCode(String template, long resourceId) {
+        int low = 0;
+        int high = templates.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = templates[middle].compareTo(template);
+            if (order == 0) {
+                order = Long.compare(resourceIds[middle], resourceId);
+            }
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the hits per app and URI within {@code [fromSecond, toSecond)}, reading the code columns only.
+     *
+     * @param fromSecond the inclusive start as epoch second
+     * @param toSecond   the exclusive end as epoch second
+     * @param uriCodes   the codes of the URIs to count, or {@code null} for all of them
+     * @param consumer   receives the codes and hit count of every app and URI with hits
+     */
+    public void countHits(long fromSecond, long toSecond, BitSet uriCodes, CountConsumer consumer) {
+        long first = firstRow(fromSecond);
+        long end = firstRow(toSecond);
+        long[][] counts = new long[appNames.length][];
+        for (long row = first; row < end; row++) {
+            int uriCode = (int) unpack(uris, row, uriWidth);
+            if (Objects.nonNull(uriCodes) && !uriCodes.get(uriCode)) {
+                continue;
+            }
+            int appCode = (int) unpack(apps, row, appWidth);
+            if (Objects.isNull(counts[appCode])) {
+                counts[appCode] = new long[templates.length];
+            }
+            counts[appCode][uriCode]++;
+        }
+        for (int appCode = 0; appCode < counts.length; appCode++) {
+            if (Objects.isNull(counts[appCode])) {
+                continue;
+            }
+            for (int uriCode = 0; uriCode < templates.length; uriCode++) {
+                if (counts[appCode][uriCode] > 0) {
+                    consumer.accept(appCode, uriCode, counts[appCode][uriCode]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a cursor over the hits within {@code [fromSecond, toSecond)}. Unlike {@link #countHits}, it decodes
+     * the timestamp of every row, and reads the IP column only for the addresses asked for.
+     *
+     * @param fromSecond the inclusive start as epoch second
+     * @param toSecond   the exclusive end as epoch second
+     * @param uriCodes   the codes of the URIs to read, or {@code null} for all of them
+     * @return a cursor positioned before the first matching hit
+     */
+    public Cursor scan(long fromSecond, long toSecond, BitSet uriCodes) {
+        return new Cursor(firstRow(fromSecond), firstRow(toSecond), uriCodes);
+    }
+
+    /**
+     * Returns the first row with a timestamp of at least the given second, decoding a single block.
+     */
+    private long firstRow(long second) {
+        // The last block starting before the second is the only one that may hold both earlier and later rows.
+        int low = 0;
+        int high = blockSeconds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (blockSeconds[middle] < second) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int block = low - 1;
+        if (block < 0) {
+            return 0;
+        }
+        ByteBuffer column = timestamps.duplicate();
+        column.position((int) blockOffsets[block]);
+        long row = (long) block * ColumnarSegmentWriter.BLOCK_ROWS;
+        long end = Math.min(row + ColumnarSegmentWriter.BLOCK_ROWS, rows);
+        long timestamp = blockSeconds[block];
+        for (; row < end; row++) {
+            timestamp += readVarint(column);
+            if (timestamp >= second) {
+                return row;
+            }
+        }
+        return end;
+    }
+
+    private static String readString(ByteBuffer header) {
+        byte[] bytes = new byte[header.getInt()];
+        header.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarint(ByteBuffer column) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = column.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static long unpack(ByteBuffer column, long row, int width) {
+        long bit = row * width;
+        long word = column.getLong((int) (bit >>> 3));
+        return (word >>> (bit & 7)) & ((1L << width) - 1);
+    }
+
+    private static String formatIpv4(long address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "."
+                + (address & 0xFF);
+    }
+
+    /**
+     * Receives the hit counts of a segment scan.
+     */
+    @FunctionalInterface
+    public interface CountConsumer {
+        void accept(int appCode, int uriCode, long hits);
+    }
+
+    /**
+     * Iterates over the hits of a segment in timestamp order. Not thread-safe.
+     */
+    public final class Cursor {
+        private final long end;
+        private final BitSet uriCodes;
+        private final ByteBuffer column = timestamps.duplicate();
+        private long row;
+        private long second;
+        private int appCode;
+        private int uriCode;
+
+        private Cursor(long first, long end, BitSet uriCodes) {
+            this.end = end;
+            this.uriCodes = uriCodes;
+            if (first < end) {
+                // Timestamps are deltas from the start of their block.
+                long blockStart = first - first % ColumnarSegmentWriter.BLOCK_ROWS;
+                column.position((int) blockOffsets[(int) (blockStart / ColumnarSegmentWriter.BLOCK_ROWS)]);
+                row = blockStart - 1;
+                while (row < first - 1) {
+                    advance();
+                }
+            } else {
+                row = first - 1;
+            }
+        }
+
+        /**
+         * Moves to the next matching hit.
+         *
+         * @return whether there is one
+         */
+        public boolean next() {
+            while (row + 1 < end) {
+                advance();
+                uriCode = (int) unpack(uris, row, uriWidth);
+                if (Objects.isNull(uriCodes) || uriCodes.get(uriCode)) {
+                    appCode = (int) unpack(apps, row, appWidth);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getAppCode() {
+            return appCode;
+        }
+
+        public int getUriCode() {
+            return uriCode;
+        }
+
+        /**
+         * Returns the timestamp of the hit as epoch second.
+         */
+        public long getSecond() {
+            return second;
+        }
+
+        public String getIp() {
+            long ip = unpack(ips, row, ipWidth);
+            return ip > IPV4_MASK ? ipStrings[(int) (ip & IPV4_MASK)] : formatIpv4(ip);
+        }
+
+        private void advance() {
+            row++;
+            if (row % ColumnarSegmentWriter.BLOCK_ROWS == 0) {
+                second = blockSeconds[(int) (row / ColumnarSegmentWriter.BLOCK_ROWS)];
+            }
+            second += readVarint(column);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package ru.practicum.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import ru.practicum.sketch.IpSetSketch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes raw hits, in timestamp order, into a columnar segment file read by {@link ColumnarSegment}.
+ * <p>
+ * A segment consists of a header followed by four columns:
+ * <ul>
+ *     <li>timestamps as epoch seconds, each stored as the varint delta to the previous row; the header holds
+ *     the first second and column offset of every block of {@link #BLOCK_ROWS} rows, so that a time range is
+ *     located without decoding the whole column;</li>
+ *     <li>apps and URIs as codes into the sorted dictionaries of the segment, bit-packed at the width of the
+ *     dictionary size; the dictionaries hold app names and route templates rather than database keys, so that
+ *     segments outlive the dictionary tables;</li>
+ *     <li>IP addresses bit-packed at 32 bits, or 33 bits if the segment holds addresses other than IPv4, whose
+ *     values then point into a string table with the high bit set.</li>
+ * </ul>
+ * Bit-packed columns are little endian and padded with one long, so that every value can be read with a
+ * single unaligned {@code getLong}.
+ * <p>
+ * Rows are first written to temporary per-column files next to the target, since the widths are only known
+ * once all rows are seen; {@link #finish()} packs them into the segment and moves it into place atomically.
+ * The packed file and then the directory are forced to disk, so that the raw rows of a segment may be deleted
+ * as soon as {@link #finish()} returns. Instances are not thread-safe and must be closed to delete the temporary files.
+ */
+public class ColumnarSegmentWriter implements Closeable {
+    static final int MAGIC = 0x53544332;
+    static final int BLOCK_ROWS = 4096;
+    static final int PADDING = Long.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path target;
+    private final List<Path> temporaryFiles = new ArrayList<>();
+    private final Path timestampFile;
+    private final Path appFile;
+    private final Path uriFile;
+    private final Path ipFile;
+    private final DataOutputStream timestamps;
+    private final DataOutputStream apps;
+    private final DataOutputStream uris;
+    private final DataOutputStream ips;
+
+    private final Map<String, Integer> appCodes = new HashMap<>();
+    private final Map<UriKey, Integer> uriCodes = new HashMap<>();
+    private final Map<String, Integer> ipStrings = new HashMap<>();
+    private final List<Long> blockSeconds = new ArrayList<>();
+    private final List<Long> blockOffsets = new ArrayList<>();
+    private long timestampBytes;
+    private long rows;
+    private long lastSecond;
+
+    public ColumnarSegmentWriter(Path target) throws IOException {
+        this.target = target;
+        this.timestampFile = createTemporaryFile();
+        this.appFile = createTemporaryFile();
+        this.uriFile = createTemporaryFile();
+        this.ipFile = createTemporaryFile();
+        this.timestamps = open(timestampFile);
+        this.apps = open(appFile);
+        this.uris = open(uriFile);
+        this.ips = open(ipFile);
+    }
+
+    /**
+     * Appends a hit. Hits must be added in timestamp order.
+     *
+     * @param app        the app name
+     * @param template   the route template of the URI
+     * @param resourceId the resource id of the URI
+     * @param ip         the IP address
+     * @param timestamp  the time of the hit, truncated to seconds
+     */
+    public void add(String app, String template, long resourceId, String ip, LocalDateTime timestamp) {
+        long second = timestamp.toEpochSecond(ZoneOffset.UTC);
+        if (rows > 0 && second < lastSecond) {
+            throw new IllegalArgumentException("Hits must be added in timestamp order, got " + timestamp);
+        }
+        try {
+            if (rows % BLOCK_ROWS == 0) {
+                blockSeconds.add(second);
+                blockOffsets.add(timestampBytes);
+                lastSecond = second;
+            }
+            timestampBytes += writeVarint(timestamps, second - lastSecond);
+            lastSecond = second;
+            apps.writeInt(appCodes.computeIfAbsent(app, k -> appCodes.size()));
+            uris.writeInt(uriCodes.computeIfAbsent(new UriKey(template, resourceId), k -> uriCodes.size()));
+            long address = IpSetSketch.parseIpv4(ip);
+            ips.writeLong(address >= 0 ? address : -1 - ipStrings.computeIfAbsent(ip, k -> ipStrings.size()));
+            rows++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Packs the added hits into the segment file, replacing an existing one.
+     */
+    public void finish() throws IOException {
+        timestamps.close();
+        apps.close();
+        uris.close();
+        ips.close();
+
+        String[] appNames = appCodes.keySet().stream().sorted().toArray(String[]::new);
+        int[] appRemap = new int[appNames.length];
+        for (int i = 0; i < appNames.length; i++) {
+            appRemap[appCodes.get(appNames[i])] = i;
+        }
+        UriKey[] uriKeys = uriCodes.keySet().toArray(new UriKey[0]);
+        Arrays.sort(uriKeys, UriKey.ORDER);
+        int[] uriRemap = new int[uriKeys.length];
+        for (int i = 0; i < uriKeys.length; i++) {
+            uriRemap[uriCodes.get(uriKeys[i])] = i;
+        }
+        String[] strings = new String[ipStrings.size()];
+        ipStrings.forEach((ip, index) -> strings[index] = ip);
+        int ipWidth = strings.length == 0 ? Integer.SIZE : Integer.SIZE + 1;
+
+        Path packed = createTemporaryFile();
+        Path appColumn = createTemporaryFile();
+        Path uriColumn = createTemporaryFile();
+        Path ipColumn = createTemporaryFile();
+        long appBytes = repackInts(appFile, appColumn, bitWidth(appNames.length), appRemap);
+        long uriBytes = repackInts(uriFile, uriColumn, bitWidth(uriKeys.length), uriRemap);
+        long ipBytes = repackIps(ipFile, ipColumn, ipWidth);
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+            header.writeLong(rows);
+            header.writeInt(appNames.length);
+            for (String appName : appNames) {
+                writeString(header, appName);
+            }
+            header.writeInt(uriKeys.length);
+            for (UriKey uriKey : uriKeys) {
+                writeString(header, uriKey.template);
+                header.writeLong(uriKey.resourceId);
+            }
+            header.writeInt(ipWidth);
+            header.writeInt(strings.length);
+            for (String string : strings) {
+                writeString(header, string);
+            }
+            header.writeInt(blockSeconds.size());
+            for (int i = 0; i < blockSeconds.size(); i++) {
+                header.writeLong(blockSeconds.get(i));
+                header.writeLong(blockOffsets.get(i));
+            }
+            header.writeLong(timestampBytes);
+            header.writeLong(appBytes);
+            header.writeLong(uriBytes);
+            header.writeLong(ipBytes);
+        }
+        try (FileChannel channel = FileChannel.open(packed, StandardOpenOption.WRITE);
+             DataOutputStream data = new DataOutputStream(Channels.newOutputStream(channel))) {
+            data.writeInt(MAGIC);
+            data.writeInt(headerBytes.size());
+            headerBytes.writeTo(data);
+            Files.copy(timestampFile, data);
+            Files.copy(appColumn, data);
+            Files.copy(uriColumn, data);
+            Files.copy(ipColumn, data);
+            data.flush();
+            channel.force(true);
+        }
+        Files.move(packed, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(target.toAbsolutePath().getParent());
+    }
+
+    @Override
+    public void close() {
+        for (DataOutputStream column : List.of(timestamps, apps, uris, ips)) {
+            try {
+                column.close();
+            } catch (IOException e) {
+                // The column is deleted right away.
+            }
+        }
+        for (Path file : temporaryFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bits needed for codes into a dictionary of the given size.
+     */
+    static int bitWidth(int size) {
+        return size <= 1 ? 1 : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private long repackInts(Path source, Path column, int width, int[] remap) throws IOException {
+        try (DataInputStream in = openInput(source);
+             BitPackedOutput out = new BitPackedOutput(column, width)) {
+            for (long i = 0; i < rows; i++) {
+                out.write(remap[in.readInt()]);
+            }
+            return out.finish();
+        }
+    }
+
+    private long repackIps(Path source, Path column, int width) throws IOException {
+        try (DataInputStream in = openInput(source);
+             BitPackedOutput out = new BitPackedOutput(column, width)) {
+            for (long i = 0; i < rows; i++) {
+                long value = in.readLong();
+                out.write(value >= 0 ? value : (1L << Integer.SIZE) | (-1 - value));
+            }
+            return out.finish();
+        }
+    }
+
+    private Path createTemporaryFile() throws IOException {
+        Path file = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        temporaryFiles.add(file);
+        return file;
+    }
+
+    /**
+     * Forces a directory to disk, which makes a file moved into it durable. Only works where directories can be
+     * opened for reading, as on Linux.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static DataOutputStream open(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static DataInputStream openInput(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int writeVarint(DataOutputStream out, long value) throws IOException {
+        int bytes = 1;
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+            bytes++;
+        }
+        out.writeByte((int) value);
+        return bytes;
+    }
+
+    /**
+     * Packs values of a fixed bit width back to back, least significant bit first.
+     */
+    private static class BitPackedOutput implements Closeable {
+        private final OutputStream out;
+        private final int width;
+        private long buffer;
+        private int bits;
+        private long bytes;
+
+        BitPackedOutput(Path file, int width) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+            this.width = width;
+        }
+
+        void write(long value) throws IOException {
+            buffer |= value << bits;
+            bits += width;
+            while (bits >= Byte.SIZE) {
+                out.write((int) buffer);
+                buffer >>>= Byte.SIZE;
+                bits -= Byte.SIZE;
+                bytes++;
+            }
+        }
+
+        /**
+         * Flushes the last partial byte and the padding, returning the size of the column.
+         */
+        long finish() throws IOException {
+            if (bits > 0) {
+                out.write((int) buffer);
+                bytes++;
+            }
+            out.write(new byte[PADDING]);
+            return bytes + PADDING;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class UriKey {
+        static final Comparator<UriKey> ORDER = Comparator.<UriKey, String>comparing(key -> key.template)
+                .thenComparingLong(key -> key.resourceId);
+
+        private final String template;
+        private final long resourceId;
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.archive;
+
+import java.time.LocalDateTime;
+
+/**
+ * Receives raw hits with their app name and their URI split into route template and resource id, see
+ * {@link ru.practicum.model.RouteUri}.
+ */
+@FunctionalInterface
+public interface RawHitConsumer {
+    void accept(String app, String template, long resourceId, String ip, LocalDateTime timestamp);
+}
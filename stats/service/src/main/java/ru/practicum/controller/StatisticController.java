@@ -1,28 +1,67 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import ru.practicum.codec.HitCodec;
 import ru.practicum.dto.EndpointDto;
+import ru.practicum.dto.HitBatchAckDto;
+import ru.practicum.dto.StatsJobDto;
+import ru.practicum.dto.StatsJobRequestDto;
+import ru.practicum.dto.TimeSeriesDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.dto.ViewStatsRequestDto;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.exception.PartialIngestionException;
+import ru.practicum.mapper.StatisticMapper;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.Statistic;
+import ru.practicum.service.HitValidator;
 import ru.practicum.service.StatisticService;
+import ru.practicum.service.StatsJobService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
 
 @RestController
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class StatisticController {
     private final StatisticService statisticService;
+    private final StatsJobService statsJobService;
+    private final ObjectMapper objectMapper;
+    private final StatisticMapper statisticMapper;
+    private final HitValidator hitValidator;
+
+    @Value("${stats.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Value("${stats.ingest.max-binary-bytes:16777216}")
+    private int maxBinaryBytes;
 
     /**
      * Creates an endpoint DTO.
@@ -40,6 +79,99 @@ public class StatisticController {
         statisticService.createStatistic(endpointDto);
     }
 
+    /**
+     * Creates statistics for a JSON array of endpoint hits. The whole array is validated and then stored in a
+     * single transaction, so an invalid hit rejects the array with 400 and nothing is stored.
+     *
+     * @param endpointDtos the hits to store
+     * @return an acknowledgement with the number of received and stored hits
+     */
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchAckDto createEndpointDtos(@RequestBody List<EndpointDto> endpointDtos) {
+        return statisticService.createStatistics(endpointDtos);
+    }
+
+    /**
+     * Creates statistics for a newline-delimited JSON stream of endpoint hits. The stream is read incrementally
+     * and every {@code stats.ingest.batch-size} hits are validated and stored in their own transaction.
+     * <p>
+     * A malformed or invalid line, or a batch that cannot be stored, fails the request with the status of the
+     * failure. If batches have been stored before, the response body is the acknowledgement of the stored hits
+     * with the {@code error}, and the client resends only the lines after the first {@code received} ones.
+     *
+     * @param request the request whose body holds one endpoint hit per line
+     * @return an acknowledgement summing up all stored batches
+     * @throws IOException if the request body cannot be read
+     */
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchAckDto createEndpointDtosStream(HttpServletRequest request) throws IOException {
+        HitBatchAckDto total = HitBatchAckDto.builder()
+                .received(0)
+                .stored(0)
+                .batches(0)
+                .build();
+        List<EndpointDto> batch = new ArrayList<>(batchSize);
+        try (MappingIterator<EndpointDto> iterator = objectMapper.readerFor(EndpointDto.class)
+                .readValues(request.getInputStream())) {
+            EndpointDto next = nextHit(iterator);
+            while (next != null) {
+                batch.add(next);
+                next = nextHit(iterator);
+                if (batch.size() == batchSize || next == null) {
+                    HitBatchAckDto ack = statisticService.createStatistics(batch);
+                    total.setReceived(total.getReceived() + ack.getReceived());
+                    total.setStored(total.getStored() + ack.getStored());
+                    total.setBatches(total.getBatches() + 1);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (RuntimeException e) {
+            if (total.getBatches() == 0) {
+                throw e;
+            }
+            throw new PartialIngestionException(total, e);
+        }
+        return total;
+    }
+
+    /**
+     * Creates statistics for a batch in the compact {@link HitCodec} encoding. The batch is decoded as a whole
+     * and every {@code stats.ingest.batch-size} hits are stored in their own transaction. Batches larger than
+     * {@code stats.ingest.max-binary-bytes}, before or after decompression, are rejected like malformed ones.
+     * A failure after some batches have been stored is reported as for the NDJSON stream.
+     *
+     * @param request the request whose body holds the encoded batch
+     * @return an acknowledgement summing up all stored batches
+     * @throws BadRequestException if the batch is malformed, too large or holds an invalid hit
+     */
+    @PostMapping(value = "/hits", consumes = HitCodec.MEDIA_TYPE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchAckDto createEndpointDtosBinary(HttpServletRequest request) {
+        List<Statistic> statistics = new ArrayList<>();
+        try {
+            HitCodec.decode(request.getInputStream(), maxBinaryBytes, (app, uri, ip, epochMillis) ->
+                    statistics.add(statisticMapper.toStatistic(app, uri, ip, epochMillis)));
+        } catch (IOException e) {
+            throw new BadRequestException("Malformed hit batch: " + e.getMessage());
+        }
+        hitValidator.validateStatistics(statistics);
+        List<HitBatchAckDto> acks = new ArrayList<>();
+        try {
+            for (int from = 0; from < statistics.size(); from += batchSize) {
+                acks.add(statisticService.storeStatistics(
+                        statistics.subList(from, Math.min(from + batchSize, statistics.size()))));
+            }
+        } catch (RuntimeException e) {
+            if (acks.isEmpty()) {
+                throw e;
+            }
+            throw new PartialIngestionException(sumAcks(acks), e);
+        }
+        return sumAcks(acks);
+    }
+
     /**
      * Retrieves a list of ViewStatsDto objects based on the specified start and end dates, uniqueness flag, and URI filter.
      *
@@ -47,14 +179,173 @@ public class StatisticController {
      * @param end    The end date of the statistics range.
      * @param uris   A list of URIs to filter the statistics by. Only the statistics for the specified URIs will be included in the result. (optional)
      * @param unique A boolean flag indicating whether to return unique statistics. Defaults to false if not specified.
+     * @param limit  The maximum number of returned entries, most visited first. (optional)
+     * @param sample The fraction of raw hits to sample, greater than 0 and at most 1. Hits are then estimated and
+     *               returned with 95% confidence bounds. (optional)
+     * @param sketch Whether to return the serialized visitor sketch of every entry, so that unique hits of several
+     *               stats servers can be merged. Requires unique hits. Defaults to false.
      * @return A list of ViewStatsDto objects representing the view statistics for the specified period, uniqueness flag, and URI filter.
      */
     @GetMapping("/stats")
     public List<ViewStatsDto> getViewStatsDto(@RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime start,
                                               @RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime end,
                                               @RequestParam(required = false) List<String> uris,
-                                              @RequestParam(defaultValue = "false") boolean unique) {
+                                              @RequestParam(defaultValue = "false") boolean unique,
+                                              @RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) Double sample,
+                                              @RequestParam(defaultValue = "false") boolean sketch) {
+        if (sketch) {
+            return getUniqueSketches(start, end, uris, unique);
+        }
+        if (sample != null) {
+            return statisticService.getSampledViewStatsDto(start, end, unique, uris, limit, sample);
+        }
+        return statisticService.getAllViewStatsDto(start, end, unique, uris, limit);
+    }
+
+    /**
+     * Retrieves the most visited apps and URIs of a recent sliding window from in-memory sketches.
+     *
+     * @param window The window: {@code 5m}, {@code 1h} or {@code 1d}. Defaults to {@code 1h}.
+     * @param limit  The maximum number of returned entries. Defaults to 10.
+     * @return A list of ViewStatsDto objects with estimated hits, most visited first.
+     */
+    @GetMapping("/stats/trending")
+    public List<ViewStatsDto> getTrending(@RequestParam(defaultValue = "1h") String window,
+                                          @RequestParam(defaultValue = "10") int limit) {
+        return statisticService.getTrending(window, limit);
+    }
+
+    /**
+     * Retrieves hits per time bucket for the given URIs, so that a chart needs a single call.
+     *
+     * @param start    The start date of the range.
+     * @param end      The end date of the range.
+     * @param uris     The URIs to retrieve the series for.
+     * @param interval The bucket width: {@code minute}, {@code hour} or {@code day}. Defaults to {@code hour}.
+     * @param unique   Whether to count hits from distinct IP addresses per bucket as well. Defaults to true.
+     * @return A list of TimeSeriesDto objects, one per app and URI with hits, each with a point for every bucket.
+     */
+    @GetMapping("/stats/timeseries")
+    public List<TimeSeriesDto> getTimeSeries(@RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime start,
+                                             @RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime end,
+                                             @RequestParam List<String> uris,
+                                             @RequestParam(defaultValue = "hour") String interval,
+                                             @RequestParam(defaultValue = "true") boolean unique) {
+        return statisticService.getTimeSeries(start, end, uris, interval, unique);
+    }
+
+    /**
+     * Streams raw hits as NDJSON or CSV, reading them through a database cursor so that exports of any size
+     * fit into bounded memory. Rows are not ordered.
+     *
+     * @param start    The start date of the export. (optional)
+     * @param end      The end date of the export. (optional)
+     * @param app      The app to export. (optional)
+     * @param uris     The URIs to export. (optional)
+     * @param format   The output format: {@code ndjson} or {@code csv}. Defaults to {@code ndjson}.
+     * @param response The response the rows are written to.
+     */
+    @GetMapping("/stats/export")
+    public void exportStatistics(@RequestParam(required = false) @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime start,
+                                 @RequestParam(required = false) @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime end,
+                                 @RequestParam(required = false) String app,
+                                 @RequestParam(required = false) List<String> uris,
+                                 @RequestParam(defaultValue = "ndjson") String format,
+                                 HttpServletResponse response) throws IOException {
+        ExportFormat exportFormat = ExportFormat.fromCode(format)
+                .orElseThrow(() -> new BadRequestException("Unknown export format: " + format));
+        response.setContentType(exportFormat.getMediaType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"statistics." + exportFormat.getCode() + "\"");
+        statisticService.exportStatistics(start, end, app, uris, exportFormat, response.getOutputStream());
+    }
+
+    /**
+     * Retrieves view statistics for the URIs listed in the request body. Unlike {@code GET /stats}, the number
+     * of URIs is not limited by the length of the query string, so a whole page of events fits into one call.
+     *
+     * @param request the range, the URIs and the uniqueness flag
+     * @return the view statistics of the requested URIs that have hits, ordered by hits in descending order
+     */
+    @PostMapping(value = "/stats", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<ViewStatsDto> getViewStatsDto(@Valid @RequestBody ViewStatsRequestDto request) {
+        if (request.isSketch()) {
+            return getUniqueSketches(parseTime(request.getStart()), parseTime(request.getEnd()), request.getUris(),
+                    request.isUnique());
+        }
+        return statisticService.getAllViewStatsDto(parseTime(request.getStart()), parseTime(request.getEnd()),
+                request.isUnique(), request.getUris(), null);
+    }
+
+    /**
+     * Queues a long-running view statistics query, which is counted in the background and polled with
+     * {@code GET /stats/jobs/{id}}.
+     *
+     * @param request the range, the URIs, the uniqueness flag and the limit
+     * @return the pending job with its id
+     */
+    @PostMapping(value = "/stats/jobs", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public StatsJobDto createJob(@Valid @RequestBody StatsJobRequestDto request) {
+        return statsJobService.submit(request);
+    }
+
+    /**
+     * Retrieves the status and progress of a query job, and its result once it is done.
+     *
+     * @param id the job id
+     * @return the job
+     */
+    @GetMapping("/stats/jobs/{id}")
+    public StatsJobDto getJob(@PathVariable String id) {
+        return statsJobService.get(id);
+    }
+
+    /**
+     * Cancels a query job.
+     *
+     * @param id the job id
+     * @return the job
+     */
+    @DeleteMapping("/stats/jobs/{id}")
+    public StatsJobDto cancelJob(@PathVariable String id) {
+        return statsJobService.cancel(id);
+    }
+
+    private List<ViewStatsDto> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                 boolean unique) {
+        if (!unique) {
+            throw new BadRequestException("Sketches are only available for unique hits");
+        }
+        return statisticService.getUniqueSketches(start, end, uris);
+    }
+
+    private HitBatchAckDto sumAcks(List<HitBatchAckDto> acks) {
+        return HitBatchAckDto.builder()
+                .received(acks.stream().mapToInt(HitBatchAckDto::getReceived).sum())
+                .stored(acks.stream().mapToInt(HitBatchAckDto::getStored).sum())
+                .batches(acks.size())
+                .build();
+    }
+
+    /**
+     * Returns the next hit of the stream, or {@code null} at its end.
+     */
+    private EndpointDto nextHit(MappingIterator<EndpointDto> iterator) {
+        try {
+            return iterator.hasNext() ? iterator.next() : null;
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Malformed hit: " + e.getMessage());
+        }
+    }
 
-        return statisticService.getAllViewStatsDto(start, end, unique, uris);
+    private LocalDateTime parseTime(String value) {
+        try {
+            return LocalDateTime.parse(value, DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER));
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid date: " + value);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package ru.practicum.counter;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size ring of hit counters, one per time unit, indexed by {@code unit % size}.
+ * <p>
+ * A unit is accepted while it lies within {@code (now - retained, now + future]}. Because the ring has exactly
+ * {@code retained + future} slots, a slot can only be reused by a unit that is too far in the future to be
+ * accepted while the previous one is still retained, so every retained unit reads back exactly. Slots are
+ * replaced with compare-and-set and counted with {@link LongAdder}, so neither writers nor readers lock.
+ */
+public class CounterRing {
+    private final long unitSeconds;
+    private final int retained;
+    private final int future;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public CounterRing(long unitSeconds, int retained, int future) {
+        this.unitSeconds = unitSeconds;
+        this.retained = retained;
+        this.future = future;
+        this.buckets = new AtomicReferenceArray<>(retained + future);
+    }
+
+    /**
+     * Counts one hit.
+     *
+     * @param epochSecond the second of the hit
+     * @param nowSecond   the current second
+     * @return {@code false} if the hit lies outside the accepted units and was not counted
+     */
+    public boolean add(long epochSecond, long nowSecond) {
+        long unit = Math.floorDiv(epochSecond, unitSeconds);
+        long now = Math.floorDiv(nowSecond, unitSeconds);
+        if (unit <= now - retained || unit > now + future) {
+            return false;
+        }
+        int index = index(unit);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.unit == unit) {
+                bucket.count.increment();
+                return true;
+            }
+            if (bucket != null && bucket.unit > unit) {
+                return false;
+            }
+            buckets.compareAndSet(index, bucket, new Bucket(unit));
+        }
+    }
+
+    /**
+     * Sums the hits of the units whose start lies within {@code [fromSecond, toSecond)}. The caller must only
+     * ask for retained units, both bounds being aligned to the unit.
+     *
+     * @param fromSecond the inclusive start
+     * @param toSecond   the exclusive end
+     * @return the number of hits
+     */
+    public long sum(long fromSecond, long toSecond) {
+        long total = 0;
+        for (long unit = fromSecond / unitSeconds; unit < toSecond / unitSeconds; unit++) {
+            Bucket bucket = buckets.get(index(unit));
+            if (bucket != null && bucket.unit == unit) {
+                total += bucket.count.sum();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Tells whether the ring holds no hits for any unit that is still retained.
+     *
+     * @param nowSecond the current second
+     */
+    public boolean isIdle(long nowSecond) {
+        long now = Math.floorDiv(nowSecond, unitSeconds);
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.unit > now - retained) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(long unit) {
+        return (int) Math.floorMod(unit, (long) buckets.length());
+    }
+
+    private static final class Bucket {
+        private final long unit;
+        private final LongAdder count = new LongAdder();
+
+        private Bucket(long unit) {
+            this.unit = unit;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ru.practicum.counter;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time wheel of key sets, one per second, that recognizes keys already seen in the same second.
+ * <p>
+ * A second is tracked while it lies within {@code (now - retained, now + future]}; as in {@link CounterRing},
+ * the wheel has exactly {@code retained + future} slots, so a slot is only reused once its previous second
+ * has left the window and its keys simply expire. The total number of keys is bounded: once the limit is
+ * reached, new keys are let through without being remembered. Slots are locked individually.
+ *
+ * @param <K> the key type
+ */
+public class DedupWindow<K> {
+    private final int retained;
+    private final int future;
+    private final int maxKeys;
+    private final Slot<K>[] slots;
+    private final AtomicInteger size = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    public DedupWindow(int retained, int future, int maxKeys) {
+        this.retained = retained;
+        this.future = future;
+        this.maxKeys = maxKeys;
+        this.slots = new Slot[retained + future];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot<>();
+        }
+    }
+
+    /**
+     * Records a key seen at the given second.
+     *
+     * @param key         the key
+     * @param epochSecond the second the key was seen at
+     * @param nowSecond   the current second
+     * @return {@code false} if the key was already seen at that second, {@code true} otherwise, including when
+     * the second lies outside the window or the wheel is full
+     */
+    public boolean add(K key, long epochSecond, long nowSecond) {
+        if (epochSecond <= nowSecond - retained || epochSecond > nowSecond + future) {
+            return true;
+        }
+        Slot<K> slot = slots[index(epochSecond)];
+        synchronized (slot) {
+            if (slot.second != epochSecond) {
+                size.addAndGet(-slot.keys.size());
+                slot.keys.clear();
+                slot.second = epochSecond;
+            }
+            if (slot.keys.contains(key)) {
+                return false;
+            }
+            if (size.get() < maxKeys) {
+                slot.keys.add(key);
+                size.incrementAndGet();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Forgets a key recorded at the given second, so that it is let through again.
+     *
+     * @param key         the key
+     * @param epochSecond the second the key was seen at
+     */
+    public void remove(K key, long epochSecond) {
+        Slot<K> slot = slots[index(epochSecond)];
+        synchronized (slot) {
+            if (slot.second == epochSecond && slot.keys.remove(key)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops the keys of all seconds that have left the window.
+     *
+     * @param nowSecond the current second
+     */
+    public void evict(long nowSecond) {
+        for (Slot<K> slot : slots) {
+            synchronized (slot) {
+                if (slot.second <= nowSecond - retained && !slot.keys.isEmpty()) {
+                    size.addAndGet(-slot.keys.size());
+                    slot.keys.clear();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private int index(long epochSecond) {
+        return (int) Math.floorMod(epochSecond, (long) slots.length);
+    }
+
+    private static class Slot<K> {
+        private final Set<K> keys = new HashSet<>();
+        private long second = Long.MIN_VALUE;
+    }
+}
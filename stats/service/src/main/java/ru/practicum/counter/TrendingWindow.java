@@ -0,0 +1,142 @@
+package ru.practicum.counter;
+
+import ru.practicum.model.AppUri;
+import ru.practicum.sketch.CountMinSketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most visited apps and URIs of a sliding time window.
+ * <p>
+ * The window is split into slots, each with its own {@link CountMinSketch}; a running sketch holds the sum of
+ * all live slots, and a slot that slides out of the window is subtracted from it. Next to the sketch a bounded
+ * set of heavy-hitter candidates is kept: a key enters it once its estimate exceeds the smallest candidate's.
+ * Reading the top entries therefore only sorts the candidates and does not depend on the traffic volume.
+ */
+public class TrendingWindow {
+    private final long slotSeconds;
+    private final CountMinSketch[] slots;
+    private final CountMinSketch window;
+    private final int capacity;
+    private final Map<AppUri, Long> candidates = new HashMap<>();
+
+    private long currentSlot = Long.MIN_VALUE;
+    private long minCandidate;
+
+    public TrendingWindow(long windowSeconds, int slotCount, int width, int depth, int capacity) {
+        this.slotSeconds = windowSeconds / slotCount;
+        this.slots = new CountMinSketch[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new CountMinSketch(width, depth);
+        }
+        this.window = new CountMinSketch(width, depth);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Counts the hits of a key that happened at the given second. Hits older than the window are ignored and
+     * hits from the future are counted in the current slot.
+     *
+     * @param key         the app and URI
+     * @param epochSecond the second of the hits
+     * @param count       the number of hits
+     * @param nowSecond   the current second
+     */
+    public synchronized void add(AppUri key, long epochSecond, long count, long nowSecond) {
+        advance(nowSecond);
+        long slot = Math.min(Math.floorDiv(epochSecond, slotSeconds), currentSlot);
+        if (slot <= currentSlot - slots.length) {
+            return;
+        }
+        String hashKey = hashKey(key);
+        slots[index(slot)].add(hashKey, count);
+        long estimate = window.add(hashKey, count);
+        offer(key, estimate);
+    }
+
+    /**
+     * Returns up to {@code limit} keys with the highest estimated hits in the window, most visited first.
+     *
+     * @param limit     the maximum number of returned keys
+     * @param nowSecond the current second
+     * @return the keys with their estimated hits
+     */
+    public synchronized List<Map.Entry<AppUri, Long>> top(int limit, long nowSecond) {
+        advance(nowSecond);
+        List<Map.Entry<AppUri, Long>> top = new ArrayList<>(candidates.size());
+        for (Map.Entry<AppUri, Long> candidate : candidates.entrySet()) {
+            if (candidate.getValue() > 0) {
+                top.add(Map.entry(candidate.getKey(), candidate.getValue()));
+            }
+        }
+        top.sort(Map.Entry.<AppUri, Long>comparingByValue(Comparator.reverseOrder()));
+        return top.size() > limit ? top.subList(0, limit) : top;
+    }
+
+    private void offer(AppUri key, long estimate) {
+        if (candidates.containsKey(key)) {
+            // Estimates only grow between slides, so minCandidate stays a lower bound.
+            candidates.put(key, estimate);
+            return;
+        }
+        if (candidates.size() >= capacity) {
+            if (estimate <= minCandidate) {
+                return;
+            }
+            AppUri minKey = minKey();
+            minCandidate = candidates.get(minKey);
+            if (estimate <= minCandidate) {
+                return;
+            }
+            candidates.remove(minKey);
+        }
+        candidates.put(key, estimate);
+        if (candidates.size() == capacity) {
+            minCandidate = candidates.get(minKey());
+        }
+    }
+
+    /**
+     * Slides the window to the slot of the given second, subtracting expired slots and re-estimating the
+     * candidates.
+     */
+    private void advance(long nowSecond) {
+        long slot = Math.floorDiv(nowSecond, slotSeconds);
+        if (currentSlot == Long.MIN_VALUE) {
+            currentSlot = slot;
+            return;
+        }
+        if (slot <= currentSlot) {
+            return;
+        }
+        long expired = Math.min(slot - currentSlot, slots.length);
+        for (long i = 1; i <= expired; i++) {
+            CountMinSketch sketch = slots[index(currentSlot + i)];
+            window.subtract(sketch);
+            sketch.clear();
+        }
+        currentSlot = slot;
+        candidates.replaceAll((key, estimate) -> window.estimate(hashKey(key)));
+        candidates.values().removeIf(estimate -> estimate <= 0);
+        minCandidate = candidates.isEmpty() ? 0 : candidates.get(minKey());
+    }
+
+    private AppUri minKey() {
+        return candidates.entrySet().stream()
+                .min(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElseThrow();
+    }
+
+    private int index(long slot) {
+        return (int) Math.floorMod(slot, (long) slots.length);
+    }
+
+    private static String hashKey(AppUri key) {
+        return key.getApp() + '\n' + key.getUri();
+    }
+}
@@ -1,12 +1,14 @@
 package ru.practicum.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.practicum.dto.HitBatchAckDto;
 
 @Slf4j
 @RestControllerAdvice(annotations = RestController.class)
@@ -30,7 +32,40 @@ public class HandlerException {
                 .build(), e.getHttpStatus());
     }
 
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> payloadTooLarge(final PayloadTooLargeException e) {
+        log.warn("413 {}", e.getMessage());
+        return new ResponseEntity<>(ErrorResponse.builder()
+                .error("Payload too large")
+                .message(e.getMessage())
+                .build(), e.getHttpStatus());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<HitBatchAckDto> partialIngestion(final PartialIngestionException e) {
+        log.warn("{} after storing {} hits: {}", e.getHttpStatus().value(), e.getAck().getReceived(), e.getMessage());
+        return new ResponseEntity<>(e.getAck(), e.getHttpStatus());
+    }
 
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> tooManyRequests(final TooManyRequestsException e) {
+        log.warn("429 {}", e.getMessage());
+        return ResponseEntity.status(e.getHttpStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(ErrorResponse.builder()
+                        .error("Too many requests")
+                        .message(e.getMessage())
+                        .build());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> serviceUnavailable(final ServiceUnavailableException e) {
+        log.warn("503 {}", e.getMessage());
+        return new ResponseEntity<>(ErrorResponse.builder()
+                .error("Service unavailable")
+                .message(e.getMessage())
+                .build(), e.getHttpStatus());
+    }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> methodArgumentNotValid(MethodArgumentNotValidException e) {
@@ -0,0 +1,44 @@
+package ru.practicum.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import ru.practicum.dto.HitBatchAckDto;
+
+/**
+ * Fails a streamed ingestion after some of its batches have already been stored. The response carries the
+ * status of the failure along with the acknowledgement of the stored hits, so that the client only resends
+ * the hits after the first {@code received} ones.
+ */
+@Getter
+public class PartialIngestionException extends RuntimeException {
+    private final HttpStatus httpStatus;
+    private final HitBatchAckDto ack;
+
+    public PartialIngestionException(HitBatchAckDto ack, RuntimeException cause) {
+        super(cause.getMessage(), cause);
+        this.httpStatus = statusOf(cause);
+        this.ack = ack.toBuilder()
+                .error(cause.getMessage())
+                .build();
+    }
+
+    private static HttpStatus statusOf(RuntimeException e) {
+        if (e instanceof BadRequestException) {
+            return ((BadRequestException) e).getHttpStatus();
+        }
+        if (e instanceof PayloadTooLargeException) {
+            return ((PayloadTooLargeException) e).getHttpStatus();
+        }
+        if (e instanceof TooManyRequestsException) {
+            return ((TooManyRequestsException) e).getHttpStatus();
+        }
+        if (e instanceof ServiceUnavailableException) {
+            return ((ServiceUnavailableException) e).getHttpStatus();
+        }
+        if (e instanceof ResponseStatusException) {
+            return ((ResponseStatusException) e).getStatus();
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+}
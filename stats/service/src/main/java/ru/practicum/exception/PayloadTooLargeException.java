@@ -0,0 +1,14 @@
+package ru.practicum.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+@Getter
+public class PayloadTooLargeException extends RuntimeException {
+    private final HttpStatus httpStatus;
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+        this.httpStatus = HttpStatus.PAYLOAD_TOO_LARGE;
+    }
+}
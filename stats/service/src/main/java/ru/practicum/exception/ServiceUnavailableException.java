@@ -0,0 +1,14 @@
+package ru.practicum.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+@Getter
+public class ServiceUnavailableException extends RuntimeException {
+    private final HttpStatus httpStatus;
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+        this.httpStatus = HttpStatus.SERVICE_UNAVAILABLE;
+    }
+}
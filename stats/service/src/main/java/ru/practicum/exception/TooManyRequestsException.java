@@ -0,0 +1,16 @@
+package ru.practicum.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+    private final HttpStatus httpStatus;
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.httpStatus = HttpStatus.TOO_MANY_REQUESTS;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -6,6 +6,10 @@ import org.mapstruct.Mappings;
 import ru.practicum.dto.EndpointDto;
 import ru.practicum.model.Statistic;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
 import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
 
 @Mapper(componentModel = "spring")
@@ -15,4 +19,12 @@ public interface StatisticMapper {
             @Mapping(target = "timestamp", source = "timestamp", dateFormat = DATE_TIME_FORMATTER)
     })
     Statistic toEndpointDto(EndpointDto endpointDto);
+
+    List<Statistic> toStatistics(List<EndpointDto> endpointDtos);
+
+    default Statistic toStatistic(String app, String uri, String ip, long epochMillis) {
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000L),
+                (int) Math.floorMod(epochMillis, 1000L) * 1_000_000, ZoneOffset.UTC);
+        return new Statistic(null, app, uri, ip, timestamp);
+    }
 }
@@ -0,0 +1,12 @@
+package ru.practicum.model;
+
+import lombok.Value;
+
+/**
+ * Identifies the app and URI that statistics are grouped by.
+ */
+@Value
+public class AppUri {
+    String app;
+    String uri;
+}
@@ -0,0 +1,13 @@
+package ru.practicum.model;
+
+import lombok.Value;
+
+/**
+ * Hits counted in a time bucket of an app and URI; {@code uniqueHits} is {@code null} when it was not counted.
+ */
+@Value
+public class BucketHits {
+    BucketKey key;
+    long hits;
+    Long uniqueHits;
+}
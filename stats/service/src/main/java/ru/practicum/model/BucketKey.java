@@ -0,0 +1,24 @@
+package ru.practicum.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Identifies a time bucket of an app and URI.
+ */
+@Value
+public class BucketKey {
+    public static final Comparator<BucketKey> ORDER = Comparator.comparing(BucketKey::getApp)
+            .thenComparing(BucketKey::getUri)
+            .thenComparing(BucketKey::getBucketStart);
+
+    String app;
+    String uri;
+    LocalDateTime bucketStart;
+
+    public AppUri getAppUri() {
+        return new AppUri(app, uri);
+    }
+}
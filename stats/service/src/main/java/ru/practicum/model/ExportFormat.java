@@ -0,0 +1,34 @@
+package ru.practicum.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Output formats of the raw statistics export.
+ */
+public enum ExportFormat {
+    NDJSON("ndjson", "application/x-ndjson"),
+    CSV("csv", "text/csv");
+
+    private final String code;
+    private final String mediaType;
+
+    ExportFormat(String code, String mediaType) {
+        this.code = code;
+        this.mediaType = mediaType;
+    }
+
+    public static Optional<ExportFormat> fromCode(String code) {
+        return Arrays.stream(values())
+                .filter(format -> format.code.equalsIgnoreCase(code))
+                .findFirst();
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.practicum.model;
+
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Time resolution at which hits are stored or read.
+ */
+public enum Granularity {
+    RAW(ChronoUnit.SECONDS, "second", "statistics"),
+    MINUTE(ChronoUnit.MINUTES, "minute", "statistics_rollup_minute"),
+    HOUR(ChronoUnit.HOURS, "hour", "statistics_rollup_hour");
+
+    private final ChronoUnit unit;
+    private final String field;
+    private final String table;
+
+    Granularity(ChronoUnit unit, String field, String table) {
+        this.unit = unit;
+        this.field = field;
+        this.table = table;
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * Returns the {@code date_trunc} field name of the unit.
+     */
+    public String getField() {
+        return field;
+    }
+
+    public String getTable() {
+        return table;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum.model;
+
+/**
+ * What happens to a raw statistics partition once it falls out of the retention period.
+ */
+public enum RetentionAction {
+    /**
+     * The partition is detached and kept as a standalone table, for example to be archived.
+     */
+    DETACH,
+    /**
+     * The partition is detached and dropped.
+     */
+    DROP
+}
@@ -0,0 +1,62 @@
+package ru.practicum.model;
+
+import lombok.Value;
+
+/**
+ * A URI decomposed into a route template and a numeric resource id, e.g. {@code /events/42} into
+ * {@code /events/{id}} and {@code 42}. URIs without exactly one numeric path segment keep their full text as
+ * the template and have no resource id, so every URI can be restored exactly.
+ */
+@Value
+public class RouteUri {
+    public static final long NO_RESOURCE = -1;
+    private static final String PLACEHOLDER = "{id}";
+    private static final int MAX_DIGITS = 18;
+
+    String template;
+    long resourceId;
+
+    public static RouteUri parse(String uri) {
+        if (uri.contains(PLACEHOLDER)) {
+            return new RouteUri(uri, NO_RESOURCE);
+        }
+        int numericStart = -1;
+        int numericEnd = -1;
+        int segmentStart = 0;
+        for (int i = 0; i <= uri.length(); i++) {
+            if (i < uri.length() && uri.charAt(i) != '/') {
+                continue;
+            }
+            if (isNumeric(uri, segmentStart, i)) {
+                if (numericStart >= 0) {
+                    return new RouteUri(uri, NO_RESOURCE);
+                }
+                numericStart = segmentStart;
+                numericEnd = i;
+            }
+            segmentStart = i + 1;
+        }
+        if (numericStart < 0) {
+            return new RouteUri(uri, NO_RESOURCE);
+        }
+        return new RouteUri(uri.substring(0, numericStart) + PLACEHOLDER + uri.substring(numericEnd),
+                Long.parseLong(uri.substring(numericStart, numericEnd)));
+    }
+
+    public String toUri() {
+        return resourceId == NO_RESOURCE ? template : template.replace(PLACEHOLDER, Long.toString(resourceId));
+    }
+
+    private static boolean isNumeric(String uri, int from, int to) {
+        int length = to - from;
+        if (length == 0 || length > MAX_DIGITS || (length > 1 && uri.charAt(from) == '0')) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (uri.charAt(i) < '0' || uri.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
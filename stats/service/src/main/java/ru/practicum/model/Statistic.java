@@ -1,34 +1,22 @@
 package ru.practicum.model;
 
 import lombok.*;
-import org.springframework.format.annotation.DateTimeFormat;
 
-import javax.persistence.*;
 import java.time.LocalDateTime;
 
-import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
-
-@Entity
+/**
+ * A single hit. In the database the app and URI are stored as dictionary keys, see
+ * {@link ru.practicum.repository.StatisticDictionary}.
+ */
 @Getter
 @Setter
 @ToString
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "statistics")
 public class Statistic {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
-
-    @Column(nullable = false)
     private String app;
-
-    @Column(nullable = false)
     private String uri;
-    @Column(nullable = false)
     private String ip;
-    @Column(nullable = false)
-    @DateTimeFormat(pattern = DATE_TIME_FORMATTER)
     private LocalDateTime timestamp;
-
-}
\ No newline at end of file
+}
@@ -1,11 +0,0 @@
-package ru.practicum.model;
-
-public interface StatisticProjection {
-
-
-    String getApp();
-
-    String getUri();
-
-    String getIp();
-}
\ No newline at end of file
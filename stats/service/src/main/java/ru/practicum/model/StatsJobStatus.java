@@ -0,0 +1,16 @@
+package ru.practicum.model;
+
+/**
+ * Life cycle of an asynchronous stats query job.
+ */
+public enum StatsJobStatus {
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED || this == CANCELLED;
+    }
+}
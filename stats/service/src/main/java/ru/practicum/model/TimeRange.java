@@ -0,0 +1,14 @@
+package ru.practicum.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * A half-open time range {@code [from, to)}.
+ */
+@Value
+public class TimeRange {
+    LocalDateTime from;
+    LocalDateTime to;
+}
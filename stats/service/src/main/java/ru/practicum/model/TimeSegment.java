@@ -0,0 +1,19 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A half-open time range {@code [from, to)} answered at a single granularity.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TimeSegment {
+    private final Granularity granularity;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+}
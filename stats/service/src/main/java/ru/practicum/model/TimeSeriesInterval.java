@@ -0,0 +1,36 @@
+package ru.practicum.model;
+
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Bucket width of a time series. The code doubles as the {@code date_trunc} field name.
+ */
+public enum TimeSeriesInterval {
+    MINUTE("minute", ChronoUnit.MINUTES),
+    HOUR("hour", ChronoUnit.HOURS),
+    DAY("day", ChronoUnit.DAYS);
+
+    private final String code;
+    private final ChronoUnit unit;
+
+    TimeSeriesInterval(String code, ChronoUnit unit) {
+        this.code = code;
+        this.unit = unit;
+    }
+
+    public static Optional<TimeSeriesInterval> fromCode(String code) {
+        return Arrays.stream(values())
+                .filter(interval -> interval.code.equals(code))
+                .findFirst();
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+}
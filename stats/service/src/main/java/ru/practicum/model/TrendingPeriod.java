@@ -0,0 +1,41 @@
+package ru.practicum.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Sliding windows served by {@code /stats/trending}, with the number of slots each one slides by.
+ */
+public enum TrendingPeriod {
+    FIVE_MINUTES("5m", 5 * 60, 5),
+    HOUR("1h", 60 * 60, 12),
+    DAY("1d", 24 * 60 * 60, 24);
+
+    private final String code;
+    private final long seconds;
+    private final int slots;
+
+    TrendingPeriod(String code, long seconds, int slots) {
+        this.code = code;
+        this.seconds = seconds;
+        this.slots = slots;
+    }
+
+    public static Optional<TrendingPeriod> fromCode(String code) {
+        return Arrays.stream(values())
+                .filter(period -> period.code.equals(code))
+                .findFirst();
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public long getSeconds() {
+        return seconds;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+}
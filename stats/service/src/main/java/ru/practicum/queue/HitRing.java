@@ -0,0 +1,120 @@
+package ru.practicum.queue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue with many producers and a single consumer, backed by a preallocated ring of slots.
+ * <p>
+ * Every slot carries a sequence number that tells producers and the consumer whose turn it is: a slot at
+ * position {@code p} is free when its sequence equals {@code p} and holds an element when it equals
+ * {@code p + 1}. Producers claim a run of slots with one compare-and-set on the tail, so a batch is either
+ * accepted as a whole or rejected. The consumer frees slots strictly in order, which means the run is free as
+ * soon as its last slot is.
+ *
+ * @param <E> the type of the elements
+ */
+public class HitRing<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two
+     */
+    public HitRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring capacity must be between 1 and 2^30: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Publishes all elements, or none of them if the ring has no room for the whole list. May be called by any
+     * number of threads.
+     *
+     * @param batch the elements to publish
+     * @return {@code false} if the ring is full and nothing was published
+     * @throws IllegalArgumentException if the batch is larger than the ring, so that it could never be published
+     */
+    public boolean offerAll(List<? extends E> batch) {
+        int size = batch.size();
+        if (size == 0) {
+            return true;
+        }
+        if (size > capacity) {
+            throw new IllegalArgumentException("Batch of " + size + " exceeds the ring capacity " + capacity);
+        }
+        long position;
+        while (true) {
+            position = tail.get();
+            long last = position + size - 1;
+            long sequence = sequences.get(index(last));
+            if (sequence == last) {
+                if (tail.compareAndSet(position, position + size)) {
+                    break;
+                }
+            } else if (sequence < last) {
+                return false;
+            }
+            // Otherwise another producer has claimed the slot since the tail was read.
+        }
+        for (int i = 0; i < size; i++) {
+            int index = index(position + i);
+            elements.lazySet(index, batch.get(i));
+            sequences.set(index, position + i + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Moves up to {@code max} published elements to the given list, in publication order. Must only be called
+     * by the consumer thread.
+     *
+     * @param target the list the elements are added to
+     * @param max    the maximum number of moved elements
+     * @return the number of moved elements
+     */
+    public int drainTo(List<? super E> target, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int index = index(head);
+            if (sequences.get(index) != head + 1) {
+                // Either empty, or a producer has claimed the slot but not filled it yet.
+                break;
+            }
+            target.add(elements.get(index));
+            elements.lazySet(index, null);
+            sequences.set(index, head + capacity);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Returns the number of claimed slots that have not been drained yet, which may change concurrently.
+     */
+    public long size() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    private int index(long position) {
+        return (int) (position & mask);
+    }
+}
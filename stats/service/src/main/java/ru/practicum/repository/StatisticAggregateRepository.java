@@ -0,0 +1,66 @@
+package ru.practicum.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.aggregation.HitConsumer;
+import ru.practicum.model.Granularity;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Streams hit counts per app and URI keyed by their dictionary keys, for aggregations over more URIs than fit
+ * in memory as objects. Like {@link StatisticExportRepository}, queries use a fetch size, so inside a
+ * transaction the result is read through a server-side cursor.
+ */
+@Repository
+public class StatisticAggregateRepository {
+    private static final String COUNT_RAW_HITS = "SELECT app_id, route_id, resource_id, COUNT(*) AS hits " +
+            "FROM statistics " +
+            "WHERE timestamp >= :from AND timestamp < :to %s" +
+            "GROUP BY app_id, route_id, resource_id";
+    private static final String COUNT_ROLLUP_HITS = "SELECT app_id, route_id, resource_id, SUM(hits) AS hits " +
+            "FROM %s " +
+            "WHERE bucket_start >= :from AND bucket_start < :to %s" +
+            "GROUP BY app_id, route_id, resource_id";
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final StatisticDictionary statisticDictionary;
+
+    public StatisticAggregateRepository(DataSource dataSource, StatisticDictionary statisticDictionary,
+                                        @Value("${stats.aggregation.fetch-size:10000}") int fetchSize) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.statisticDictionary = statisticDictionary;
+    }
+
+    /**
+     * Streams the hits per app and URI within {@code [from, to)} from the raw statistics table or a rollup.
+     *
+     * @param granularity the table to read
+     * @param from        the inclusive start, aligned to the granularity
+     * @param to          the exclusive end, aligned to the granularity
+     * @param uris        the URIs to match, or {@code null} for all of them
+     * @param consumer    receives the hit count of every app and URI
+     */
+    public void streamHits(Granularity granularity, LocalDateTime from, LocalDateTime to, List<String> uris,
+                           HitConsumer consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String uriCondition = statisticDictionary.uriCondition(uris, parameters);
+        String sql = granularity == Granularity.RAW
+                ? String.format(COUNT_RAW_HITS, uriCondition)
+                : String.format(COUNT_ROLLUP_HITS, granularity.getTable(), uriCondition);
+        namedParameterJdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(rs.getInt("app_id"), rs.getInt("route_id"), rs.getLong("resource_id"),
+                    rs.getLong("hits"));
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.archive.RawHitConsumer;
+import ru.practicum.model.TimeRange;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads raw statistics for the columnar archive and keeps its watermark. Like {@link StatisticExportRepository},
+ * hits are streamed with a fetch size, so inside a transaction they are read through a server-side cursor.
+ */
+@Repository
+public class StatisticArchiveRepository {
+    private static final String SELECT_WATERMARK = "SELECT archived_from, archived_before FROM statistics_archive " +
+            "WHERE id = 1";
+    private static final String UPSERT_WATERMARK = "INSERT INTO statistics_archive (id, archived_from, archived_before) " +
+            "VALUES (1, ?, ?) ON CONFLICT (id) DO UPDATE SET archived_before = EXCLUDED.archived_before";
+    private static final String SELECT_STATISTICS = "SELECT a.name AS app, r.template, s.resource_id, s.ip, " +
+            "s.timestamp " +
+            "FROM statistics s " +
+            "JOIN statistics_app a ON a.id = s.app_id " +
+            "JOIN statistics_route r ON r.id = s.route_id " +
+            "WHERE s.timestamp >= ? AND s.timestamp < ? " +
+            "ORDER BY s.timestamp";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    public StatisticArchiveRepository(DataSource dataSource, JdbcTemplate jdbcTemplate,
+                                      @Value("${stats.archive.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Returns the range of raw statistics that have been moved into the archive, which ends at the watermark.
+     */
+    public Optional<TimeRange> findWatermark() {
+        List<TimeRange> watermarks = jdbcTemplate.query(SELECT_WATERMARK, (rs, rowNum) -> new TimeRange(
+                rs.getTimestamp("archived_from").toLocalDateTime(),
+                rs.getTimestamp("archived_before").toLocalDateTime()));
+        return watermarks.isEmpty() ? Optional.empty() : Optional.of(watermarks.get(0));
+    }
+
+    /**
+     * Stores the archive watermark. Must only be called once the segments below it are in place.
+     *
+     * @param archivedFrom   the start of the first archived day, only stored along with the first watermark
+     * @param archivedBefore the exclusive end of the archived history
+     */
+    public void saveWatermark(LocalDateTime archivedFrom, LocalDateTime archivedBefore) {
+        jdbcTemplate.update(UPSERT_WATERMARK, Timestamp.valueOf(archivedFrom), Timestamp.valueOf(archivedBefore));
+    }
+
+    /**
+     * Streams the raw statistics within {@code [from, to)} in timestamp order, with app names and route templates
+     * joined in. Must be called in a transaction, otherwise the driver fetches the whole result at once.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param consumer receives every hit
+     */
+    public void streamHits(LocalDateTime from, LocalDateTime to, RawHitConsumer consumer) {
+        streamingJdbcTemplate.query(SELECT_STATISTICS, rs -> {
+            consumer.accept(rs.getString("app"), rs.getString("template"), rs.getLong("resource_id"),
+                    rs.getString("ip"), rs.getTimestamp("timestamp").toLocalDateTime());
+        }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+}
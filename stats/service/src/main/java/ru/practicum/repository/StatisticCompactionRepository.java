@@ -0,0 +1,37 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class StatisticCompactionRepository {
+    private static final String SELECT_WATERMARK = "SELECT compacted_before FROM statistics_compaction WHERE id = 1";
+    private static final String UPSERT_WATERMARK = "INSERT INTO statistics_compaction (id, compacted_before) " +
+            "VALUES (1, ?) ON CONFLICT (id) DO UPDATE SET compacted_before = EXCLUDED.compacted_before";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns the time before which raw statistics have been folded into the hour aggregates.
+     */
+    public Optional<LocalDateTime> findWatermark() {
+        List<Timestamp> watermarks = jdbcTemplate.queryForList(SELECT_WATERMARK, Timestamp.class);
+        return watermarks.isEmpty() ? Optional.empty() : Optional.of(watermarks.get(0).toLocalDateTime());
+    }
+
+    /**
+     * Stores the compaction watermark. Must run in the transaction that rebuilds the aggregates below it.
+     *
+     * @param compactedBefore the exclusive end of the compacted history
+     */
+    public void saveWatermark(LocalDateTime compactedBefore) {
+        jdbcTemplate.update(UPSERT_WATERMARK, Timestamp.valueOf(compactedBefore));
+    }
+}
@@ -0,0 +1,194 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.model.RouteUri;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns app names and route templates as small integer keys stored in {@code statistics_app} and
+ * {@code statistics_route}, and caches both directions in memory.
+ * <p>
+ * New entries are created in the caller's transaction and only cached once it commits, so the cache never
+ * holds a key that was rolled back.
+ */
+@Repository
+@RequiredArgsConstructor
+public class StatisticDictionary {
+    private static final String UPSERT_APP = "INSERT INTO statistics_app (name) VALUES (?) " +
+            "ON CONFLICT (name) DO UPDATE SET name = EXCLUDED.name RETURNING id";
+    private static final String SELECT_APP_ID = "SELECT id FROM statistics_app WHERE name = ?";
+    private static final String SELECT_APP_NAME = "SELECT name FROM statistics_app WHERE id = ?";
+    private static final String UPSERT_ROUTE = "INSERT INTO statistics_route (template) VALUES (?) " +
+            "ON CONFLICT (template) DO UPDATE SET template = EXCLUDED.template RETURNING id";
+    private static final String SELECT_ROUTE_ID = "SELECT id FROM statistics_route WHERE template = ?";
+    private static final String SELECT_ROUTE_TEMPLATE = "SELECT template FROM statistics_route WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentMap<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> appNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> routeIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> routeTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the keys of the given apps, creating missing ones in sorted order so that concurrent writers
+     * cannot deadlock.
+     */
+    public Map<String, Integer> appIds(Collection<String> apps) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (String app : new TreeSet<>(apps)) {
+            ids.put(app, appId(app));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the keys of the given route templates, creating missing ones in sorted order so that concurrent
+     * writers cannot deadlock.
+     */
+    public Map<String, Integer> routeIds(Collection<String> templates) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (String template : new TreeSet<>(templates)) {
+            ids.put(template, routeId(template));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the key of an app, creating it if necessary.
+     */
+    public int appId(String app) {
+        Integer id = appIds.get(app);
+        if (Objects.isNull(id)) {
+            id = jdbcTemplate.queryForObject(UPSERT_APP, Integer.class, app);
+            publish(appIds, appNames, app, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the key of a route template, creating it if necessary.
+     */
+    public int routeId(String template) {
+        Integer id = routeIds.get(template);
+        if (Objects.isNull(id)) {
+            id = jdbcTemplate.queryForObject(UPSERT_ROUTE, Integer.class, template);
+            publish(routeIds, routeTemplates, template, id);
+        }
+        return id;
+    }
+
+    public String appName(int id) {
+        return lookup(appNames, appIds, SELECT_APP_NAME, id);
+    }
+
+    /**
+     * Restores the URI of a route and resource id.
+     */
+    public String uri(int routeId, long resourceId) {
+        return new RouteUri(lookup(routeTemplates, routeIds, SELECT_ROUTE_TEMPLATE, routeId), resourceId).toUri();
+    }
+
+    /**
+     * Builds the SQL condition restricting a query on {@code route_id} and {@code resource_id} to the given URIs,
+     * adding its parameter. URIs that were never stored cannot match and are left out.
+     *
+     * @param uris       the URIs to match, or {@code null} for all of them
+     * @param parameters the query parameters to add the {@code uriKeys} parameter to
+     * @return the condition starting with {@code AND}, or an empty string if all URIs match
+     */
+    public String uriCondition(List<String> uris, MapSqlParameterSource parameters) {
+        if (Objects.isNull(uris)) {
+            return "";
+        }
+        List<Object[]> keys = new ArrayList<>();
+        for (String uri : uris) {
+            RouteUri routeUri = RouteUri.parse(uri);
+            findRouteId(routeUri.getTemplate())
+                    .ifPresent(routeId -> keys.add(new Object[]{routeId, routeUri.getResourceId()}));
+        }
+        if (keys.isEmpty()) {
+            return "AND FALSE ";
+        }
+        parameters.addValue("uriKeys", keys);
+        return "AND (route_id, resource_id) IN (:uriKeys) ";
+    }
+
+    /**
+     * Builds the SQL condition restricting a query on {@code app_id} to the given app, adding its parameter.
+     *
+     * @param app        the app to match, or {@code null} for all of them
+     * @param parameters the query parameters to add the {@code appId} parameter to
+     * @return the condition starting with {@code AND}, or an empty string if all apps match
+     */
+    public String appCondition(String app, MapSqlParameterSource parameters) {
+        if (Objects.isNull(app)) {
+            return "";
+        }
+        Optional<Integer> id = find(appIds, appNames, SELECT_APP_ID, app);
+        if (id.isEmpty()) {
+            return "AND FALSE ";
+        }
+        parameters.addValue("appId", id.get());
+        return "AND app_id = :appId ";
+    }
+
+    private Optional<Integer> findRouteId(String template) {
+        return find(routeIds, routeTemplates, SELECT_ROUTE_ID, template);
+    }
+
+    private Optional<Integer> find(ConcurrentMap<String, Integer> ids, ConcurrentMap<Integer, String> values,
+                                   String select, String value) {
+        Integer id = ids.get(value);
+        if (Objects.nonNull(id)) {
+            return Optional.of(id);
+        }
+        List<Integer> found = jdbcTemplate.queryForList(select, Integer.class, value);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        publish(ids, values, value, found.get(0));
+        return Optional.of(found.get(0));
+    }
+
+    private String lookup(ConcurrentMap<Integer, String> values, ConcurrentMap<String, Integer> ids, String select,
+                          int id) {
+        String value = values.get(id);
+        if (Objects.isNull(value)) {
+            value = jdbcTemplate.queryForObject(select, String.class, id);
+            publish(ids, values, value, id);
+        }
+        return value;
+    }
+
+    private void publish(ConcurrentMap<String, Integer> ids, ConcurrentMap<Integer, String> values, String value,
+                         int id) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.put(value, id);
+                    values.put(id, value);
+                }
+            });
+        } else {
+            ids.put(value, id);
+            values.put(id, value);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.practicum.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.Statistic;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Streams raw statistics for exports. Queries use a fetch size, so inside a transaction the PostgreSQL driver
+ * reads the result through a server-side cursor instead of loading it at once.
+ */
+@Repository
+public class StatisticExportRepository {
+    private static final String SELECT_STATISTICS = "SELECT id, app_id, route_id, resource_id, ip, timestamp " +
+            "FROM statistics " +
+            "WHERE TRUE %s";
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final StatisticDictionary statisticDictionary;
+
+    public StatisticExportRepository(DataSource dataSource, StatisticDictionary statisticDictionary,
+                                     @Value("${stats.export.fetch-size:5000}") int fetchSize) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.statisticDictionary = statisticDictionary;
+    }
+
+    /**
+     * Streams the statistics matching the filters in no particular order. Must be called in a transaction,
+     * otherwise the driver fetches the whole result at once.
+     *
+     * @param from     the inclusive start, or {@code null} for no lower bound
+     * @param to       the exclusive end, or {@code null} for no upper bound
+     * @param app      the app to match, or {@code null} for all of them
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives every matching statistic
+     */
+    public void streamStatistics(LocalDateTime from, LocalDateTime to, String app, List<String> uris,
+                                 Consumer<Statistic> consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        StringBuilder conditions = new StringBuilder();
+        if (Objects.nonNull(from)) {
+            conditions.append("AND timestamp >= :from ");
+            parameters.addValue("from", Timestamp.valueOf(from));
+        }
+        if (Objects.nonNull(to)) {
+            conditions.append("AND timestamp < :to ");
+            parameters.addValue("to", Timestamp.valueOf(to));
+        }
+        conditions.append(statisticDictionary.appCondition(app, parameters));
+        conditions.append(statisticDictionary.uriCondition(uris, parameters));
+        namedParameterJdbcTemplate.query(String.format(SELECT_STATISTICS, conditions), parameters, rs -> {
+            consumer.accept(new Statistic(rs.getLong("id"),
+                    statisticDictionary.appName(rs.getInt("app_id")),
+                    statisticDictionary.uri(rs.getInt("route_id"), rs.getLong("resource_id")),
+                    rs.getString("ip"),
+                    rs.getTimestamp("timestamp").toLocalDateTime()));
+        });
+    }
+}
@@ -0,0 +1,265 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketHits;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.RouteUri;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeSeriesInterval;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+@Repository
+@RequiredArgsConstructor
+public class StatisticJdbcRepository {
+    private static final String INSERT_STATISTIC = "INSERT INTO statistics (app_id, route_id, resource_id, ip, timestamp) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final String SELECT_OLDEST_TIMESTAMP = "SELECT MIN(timestamp) FROM statistics";
+    private static final String DELETE_CHUNK = "DELETE FROM statistics WHERE (id, timestamp) IN " +
+            "(SELECT id, timestamp FROM statistics WHERE timestamp < ? LIMIT ?)";
+    private static final String COUNT_HITS = "SELECT app_id, route_id, resource_id, %s AS hits " +
+            "FROM statistics " +
+            "WHERE timestamp >= :from AND timestamp < :to %s" +
+            "GROUP BY app_id, route_id, resource_id";
+    private static final String COUNT_SAMPLED_HITS = "SELECT app_id, route_id, resource_id, COUNT(*) AS hits " +
+            "FROM statistics TABLESAMPLE BERNOULLI (:percent) " +
+            "WHERE timestamp >= :from AND timestamp < :to %s" +
+            "GROUP BY app_id, route_id, resource_id";
+    private static final String COUNT_SAMPLED_UNIQUE_HITS = "SELECT app_id, route_id, resource_id, " +
+            "COUNT(DISTINCT ip) AS hits " +
+            "FROM statistics " +
+            "WHERE timestamp >= :from AND timestamp < :to AND (hashtext(ip) & 2147483647) < :threshold %s" +
+            "GROUP BY app_id, route_id, resource_id";
+    private static final String ORDER_BY_HITS = " ORDER BY hits DESC";
+    private static final String FIND_DISTINCT_IPS = "SELECT DISTINCT app_id, route_id, resource_id, ip " +
+            "FROM statistics " +
+            "WHERE timestamp >= :from AND timestamp < :to %s";
+    private static final String COUNT_BUCKET_HITS = "SELECT app_id, route_id, resource_id, " +
+            "date_trunc('%s', timestamp) AS bucket_start, COUNT(*) AS hits, %s AS unique_hits " +
+            "FROM statistics " +
+            "WHERE timestamp >= :from AND timestamp < :to %s" +
+            "GROUP BY app_id, route_id, resource_id, bucket_start";
+    private static final String FIND_DISTINCT_BUCKET_IPS = "SELECT DISTINCT app_id, route_id, resource_id, " +
+            "date_trunc('%s', timestamp) AS bucket_start, ip " +
+            "FROM statistics " +
+            "WHERE timestamp >= :from AND timestamp < :to %s";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final StatisticDictionary statisticDictionary;
+
+    /**
+     * Inserts the given statistics with JDBC batch statements, interning their apps and routes first.
+     *
+     * @param statistics the statistics to insert
+     * @param batchSize  the number of rows sent to the database per JDBC batch
+     */
+    public void insertAll(List<Statistic> statistics, int batchSize) {
+        List<RouteUri> routeUris = statistics.stream()
+                .map(statistic -> RouteUri.parse(statistic.getUri()))
+                .collect(Collectors.toList());
+        Map<String, Integer> appIds = statisticDictionary.appIds(statistics.stream()
+                .map(Statistic::getApp)
+                .collect(Collectors.toSet()));
+        Map<String, Integer> routeIds = statisticDictionary.routeIds(routeUris.stream()
+                .map(RouteUri::getTemplate)
+                .collect(Collectors.toSet()));
+        List<Object[]> rows = new ArrayList<>(statistics.size());
+        for (int i = 0; i < statistics.size(); i++) {
+            Statistic statistic = statistics.get(i);
+            RouteUri routeUri = routeUris.get(i);
+            rows.add(new Object[]{appIds.get(statistic.getApp()), routeIds.get(routeUri.getTemplate()),
+                    routeUri.getResourceId(), statistic.getIp(), Timestamp.valueOf(statistic.getTimestamp())});
+        }
+        jdbcTemplate.batchUpdate(INSERT_STATISTIC, rows, batchSize, (ps, row) -> {
+            ps.setInt(1, (Integer) row[0]);
+            ps.setInt(2, (Integer) row[1]);
+            ps.setLong(3, (Long) row[2]);
+            ps.setString(4, (String) row[3]);
+            ps.setTimestamp(5, (Timestamp) row[4]);
+        });
+    }
+
+    /**
+     * Counts raw hits per app and URI within {@code [from, to)}.
+     *
+     * @param from the inclusive start
+     * @param to   the exclusive end
+     * @param uris the URIs to match, or {@code null} for all of them
+     * @return hit counts grouped by app and URI
+     */
+    public List<ViewStatsDto> countHits(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = String.format(COUNT_HITS, "COUNT(*)", statisticDictionary.uriCondition(uris, parameters));
+        return namedParameterJdbcTemplate.query(sql, parameters, this::toViewStatsDto);
+    }
+
+    /**
+     * Counts raw hits, or hits from distinct IP addresses, per app and URI within {@code [from, to)}, most
+     * visited first.
+     *
+     * @param from   the inclusive start
+     * @param to     the exclusive end
+     * @param uris   the URIs to match, or {@code null} for all of them
+     * @param unique whether to count distinct IP addresses only
+     * @param limit  the maximum number of returned rows, or {@code null} for all of them
+     * @return hit counts grouped by app and URI, ordered by hits in descending order
+     */
+    public List<ViewStatsDto> countTopHits(LocalDateTime from, LocalDateTime to, List<String> uris, boolean unique,
+                                           Integer limit) {
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = String.format(COUNT_HITS, unique ? "COUNT(DISTINCT ip)" : "COUNT(*)",
+                statisticDictionary.uriCondition(uris, parameters)) + ORDER_BY_HITS;
+        if (Objects.nonNull(limit)) {
+            sql += " LIMIT :limit";
+            parameters.addValue("limit", limit);
+        }
+        return namedParameterJdbcTemplate.query(sql, parameters, this::toViewStatsDto);
+    }
+
+    /**
+     * Counts the hits per app and URI within {@code [from, to)} over a sample of the raw statistics, without
+     * scaling them up.
+     * <p>
+     * Hits are sampled with {@code TABLESAMPLE BERNOULLI}, which keeps every row independently with the given
+     * probability, so the sampled counts are binomial as the estimates of the caller assume. Sampling whole
+     * blocks with {@code SYSTEM} would read less, but rows of a block share their timestamps and often their
+     * URIs, which makes the counts far more variable than that. Distinct IP addresses cannot be counted from a
+     * row sample, so for unique hits the sample consists of the IP addresses whose hash falls below the fraction
+     * instead; then every sampled address is counted exactly once. Either way all rows of the range are read,
+     * and the saving lies in counting and grouping only the sampled ones.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param unique   whether to count distinct IP addresses only
+     * @param fraction the sampled fraction, between 0 and 1
+     * @return sampled hit counts grouped by app and URI
+     */
+    public List<ViewStatsDto> countSampledHits(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                               boolean unique, double fraction) {
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql;
+        if (unique) {
+            parameters.addValue("threshold", (long) (fraction * (1L << 31)));
+            sql = String.format(COUNT_SAMPLED_UNIQUE_HITS, statisticDictionary.uriCondition(uris, parameters));
+        } else {
+            parameters.addValue("percent", fraction * 100);
+            sql = String.format(COUNT_SAMPLED_HITS, statisticDictionary.uriCondition(uris, parameters));
+        }
+        return namedParameterJdbcTemplate.query(sql, parameters, this::toViewStatsDto);
+    }
+
+    /**
+     * Streams the distinct IP addresses per app and URI within {@code [from, to)}.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives every distinct app, URI and IP address
+     */
+    public void findDistinctIps(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                BiConsumer<AppUri, String> consumer) {
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = String.format(FIND_DISTINCT_IPS, statisticDictionary.uriCondition(uris, parameters));
+        namedParameterJdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(new AppUri(statisticDictionary.appName(rs.getInt("app_id")),
+                    statisticDictionary.uri(rs.getInt("route_id"), rs.getLong("resource_id"))), rs.getString("ip"));
+        });
+    }
+
+    /**
+     * Counts raw hits, and optionally hits from distinct IP addresses, per app, URI and time bucket within
+     * {@code [from, to)} in a single grouped scan.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param interval the width of the buckets
+     * @param unique   whether to count distinct IP addresses as well
+     * @return hit counts grouped by app, URI and bucket start
+     */
+    public List<BucketHits> countBucketHits(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                            TimeSeriesInterval interval, boolean unique) {
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = String.format(COUNT_BUCKET_HITS, interval.getCode(), unique ? "COUNT(DISTINCT ip)" : "NULL",
+                statisticDictionary.uriCondition(uris, parameters));
+        return namedParameterJdbcTemplate.query(sql, parameters, (rs, rowNum) -> new BucketHits(toBucketKey(rs),
+                rs.getLong("hits"), unique ? rs.getLong("unique_hits") : null));
+    }
+
+    /**
+     * Streams the distinct IP addresses per app, URI and time bucket within {@code [from, to)}.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param interval the width of the buckets
+     * @param consumer receives every distinct bucket and IP address
+     */
+    public void findDistinctBucketIps(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                      TimeSeriesInterval interval, BiConsumer<BucketKey, String> consumer) {
+        MapSqlParameterSource parameters = rangeParameters(from, to);
+        String sql = String.format(FIND_DISTINCT_BUCKET_IPS, interval.getCode(),
+                statisticDictionary.uriCondition(uris, parameters));
+        namedParameterJdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(toBucketKey(rs), rs.getString("ip"));
+        });
+    }
+
+    /**
+     * Returns the timestamp of the oldest stored statistic.
+     */
+    public Optional<LocalDateTime> findOldestTimestamp() {
+        Timestamp oldest = jdbcTemplate.queryForObject(SELECT_OLDEST_TIMESTAMP, Timestamp.class);
+        return Optional.ofNullable(oldest).map(Timestamp::toLocalDateTime);
+    }
+
+    /**
+     * Deletes up to {@code limit} statistics older than the given time. Run outside of a transaction, every
+     * call only holds its row locks for one small chunk.
+     *
+     * @param before the exclusive upper bound of the deleted timestamps
+     * @param limit  the maximum number of deleted rows
+     * @return the number of deleted rows
+     */
+    public int deleteBefore(LocalDateTime before, int limit) {
+        return jdbcTemplate.update(DELETE_CHUNK, Timestamp.valueOf(before), limit);
+    }
+
+    private BucketKey toBucketKey(ResultSet rs) throws SQLException {
+        return new BucketKey(statisticDictionary.appName(rs.getInt("app_id")),
+                statisticDictionary.uri(rs.getInt("route_id"), rs.getLong("resource_id")),
+                rs.getTimestamp("bucket_start").toLocalDateTime());
+    }
+
+    private MapSqlParameterSource rangeParameters(LocalDateTime from, LocalDateTime to) {
+        return new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+    }
+
+    private ViewStatsDto toViewStatsDto(ResultSet rs, int rowNum) throws SQLException {
+        return ViewStatsDto.builder()
+                .app(statisticDictionary.appName(rs.getInt("app_id")))
+                .uri(statisticDictionary.uri(rs.getInt("route_id"), rs.getLong("resource_id")))
+                .hits(rs.getLong("hits"))
+                .build();
+    }
+}
@@ -0,0 +1,119 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Manages the range partitions of the {@code statistics} table. Partition names are generated by the caller
+ * and never come from user input, which is why they can be inlined into the DDL.
+ */
+@Repository
+@RequiredArgsConstructor
+public class StatisticPartitionRepository {
+    private static final String FIND_PARTITIONS = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'statistics'::regclass";
+    private static final String CREATE_PARTITION = "CREATE TABLE IF NOT EXISTS %s PARTITION OF statistics " +
+            "FOR VALUES FROM ('%s') TO ('%s')";
+    private static final String DETACH_PARTITION = "ALTER TABLE statistics DETACH PARTITION %s";
+    private static final String DROP_TABLE = "DROP TABLE IF EXISTS %s";
+    private static final String FIND_DEFAULT_STARTS = "SELECT DISTINCT date_trunc('%s', timestamp) AS start " +
+            "FROM statistics_default ORDER BY start";
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS %s (LIKE statistics INCLUDING DEFAULTS)";
+    private static final String MOVE_FROM_DEFAULT = "WITH moved AS (" +
+            "DELETE FROM statistics_default WHERE timestamp >= ? AND timestamp < ? " +
+            "RETURNING id, app_id, route_id, resource_id, ip, timestamp) " +
+            "INSERT INTO %s (id, app_id, route_id, resource_id, ip, timestamp) " +
+            "SELECT id, app_id, route_id, resource_id, ip, timestamp FROM moved";
+    private static final String ATTACH_PARTITION = "ALTER TABLE statistics ATTACH PARTITION %s " +
+            "FOR VALUES FROM ('%s') TO ('%s')";
+    private static final String DELETE_FROM_DEFAULT = "DELETE FROM statistics_default " +
+            "WHERE timestamp >= ? AND timestamp < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns the names of all partitions currently attached to {@code statistics}.
+     */
+    public List<String> findPartitions() {
+        return jdbcTemplate.queryForList(FIND_PARTITIONS, String.class);
+    }
+
+    /**
+     * Creates a partition for {@code [from, to)} unless it already exists.
+     *
+     * @param name the partition name
+     * @param from the inclusive lower bound
+     * @param to   the exclusive upper bound
+     */
+    public void createPartition(String name, LocalDateTime from, LocalDateTime to) {
+        jdbcTemplate.execute(String.format(CREATE_PARTITION, name, Timestamp.valueOf(from), Timestamp.valueOf(to)));
+    }
+
+    /**
+     * Returns the starts of the days or months that the default partition holds rows of.
+     *
+     * @param unit {@code day} or {@code month}, as understood by {@code date_trunc}
+     */
+    public List<LocalDateTime> findDefaultStarts(String unit) {
+        return jdbcTemplate.query(String.format(FIND_DEFAULT_STARTS, unit),
+                (rs, rowNum) -> rs.getTimestamp("start").toLocalDateTime());
+    }
+
+    /**
+     * Moves the rows of {@code [from, to)} out of the default partition into a table of their own, which is
+     * created unless it exists, and attaches that table as the partition of the range if asked to. Attaching
+     * builds the indexes of the partition.
+     *
+     * @param name   the partition name
+     * @param from   the inclusive lower bound
+     * @param to     the exclusive upper bound
+     * @param attach whether to attach the table as a partition
+     * @return the number of moved rows
+     */
+    @Transactional
+    public int moveFromDefault(String name, LocalDateTime from, LocalDateTime to, boolean attach) {
+        jdbcTemplate.execute(String.format(CREATE_TABLE, name));
+        int moved = jdbcTemplate.update(String.format(MOVE_FROM_DEFAULT, name), Timestamp.valueOf(from),
+                Timestamp.valueOf(to));
+        if (attach) {
+            jdbcTemplate.execute(String.format(ATTACH_PARTITION, name, Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        }
+        return moved;
+    }
+
+    /**
+     * Deletes the rows of {@code [from, to)} from the default partition.
+     *
+     * @param from the inclusive lower bound
+     * @param to   the exclusive upper bound
+     * @return the number of deleted rows
+     */
+    public int deleteFromDefault(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.update(DELETE_FROM_DEFAULT, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Detaches a partition, keeping its table and data.
+     *
+     * @param name the partition name
+     */
+    public void detachPartition(String name) {
+        jdbcTemplate.execute(String.format(DETACH_PARTITION, name));
+    }
+
+    /**
+     * Drops a detached partition table.
+     *
+     * @param name the partition name
+     */
+    public void dropTable(String name) {
+        jdbcTemplate.execute(String.format(DROP_TABLE, name));
+    }
+}
@@ -0,0 +1,147 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.model.BucketHits;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.RouteUri;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeSeriesInterval;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Repository
+@RequiredArgsConstructor
+public class StatisticRollupRepository {
+    private static final String UPSERT_ROLLUP = "INSERT INTO %1$s (app_id, route_id, resource_id, bucket_start, hits) " +
+            "VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (app_id, route_id, resource_id, bucket_start) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+    private static final String REBUILD_ROLLUP = "INSERT INTO %1$s (app_id, route_id, resource_id, bucket_start, hits) " +
+            "SELECT app_id, route_id, resource_id, date_trunc('%2$s', timestamp), COUNT(*) " +
+            "FROM statistics " +
+            "WHERE timestamp >= ? AND timestamp < ? " +
+            "GROUP BY app_id, route_id, resource_id, date_trunc('%2$s', timestamp) " +
+            "ON CONFLICT (app_id, route_id, resource_id, bucket_start) DO UPDATE SET hits = EXCLUDED.hits";
+    private static final String COUNT_HITS = "SELECT app_id, route_id, resource_id, SUM(hits) AS hits " +
+            "FROM %s " +
+            "WHERE bucket_start >= :from AND bucket_start < :to %s" +
+            "GROUP BY app_id, route_id, resource_id";
+    private static final String COUNT_BUCKET_HITS = "SELECT app_id, route_id, resource_id, " +
+            "date_trunc('%s', bucket_start) AS bucket, SUM(hits) AS hits " +
+            "FROM %s " +
+            "WHERE bucket_start >= :from AND bucket_start < :to %s" +
+            "GROUP BY app_id, route_id, resource_id, bucket";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final StatisticDictionary statisticDictionary;
+
+    /**
+     * Adds the given statistics to the rollup buckets of the given granularity. The batch is pre-aggregated
+     * so that each bucket is updated once, in a stable order to avoid deadlocks between concurrent writers.
+     *
+     * @param granularity the rollup to update
+     * @param statistics  the freshly stored statistics
+     */
+    public void increment(Granularity granularity, List<Statistic> statistics) {
+        if (statistics.isEmpty()) {
+            return;
+        }
+        Map<BucketKey, Long> buckets = new TreeMap<>(BucketKey.ORDER);
+        for (Statistic statistic : statistics) {
+            BucketKey key = new BucketKey(statistic.getApp(), statistic.getUri(),
+                    statistic.getTimestamp().truncatedTo(granularity.getUnit()));
+            buckets.merge(key, 1L, Long::sum);
+        }
+        Map<String, Integer> appIds = statisticDictionary.appIds(buckets.keySet().stream()
+                .map(BucketKey::getApp)
+                .collect(Collectors.toSet()));
+        Map<String, RouteUri> routeUris = buckets.keySet().stream()
+                .map(BucketKey::getUri)
+                .distinct()
+                .collect(Collectors.toMap(uri -> uri, RouteUri::parse));
+        Map<String, Integer> routeIds = statisticDictionary.routeIds(routeUris.values().stream()
+                .map(RouteUri::getTemplate)
+                .collect(Collectors.toSet()));
+        jdbcTemplate.batchUpdate(String.format(UPSERT_ROLLUP, granularity.getTable()),
+                new ArrayList<>(buckets.entrySet()), buckets.size(), (ps, bucket) -> {
+                    RouteUri routeUri = routeUris.get(bucket.getKey().getUri());
+                    ps.setInt(1, appIds.get(bucket.getKey().getApp()));
+                    ps.setInt(2, routeIds.get(routeUri.getTemplate()));
+                    ps.setLong(3, routeUri.getResourceId());
+                    ps.setTimestamp(4, Timestamp.valueOf(bucket.getKey().getBucketStart()));
+                    ps.setLong(5, bucket.getValue());
+                });
+    }
+
+    /**
+     * Recomputes the rollup buckets of the given granularity within {@code [from, to)} from the raw statistics,
+     * so that they are exact before the raw rows are deleted. Buckets without raw rows are left alone.
+     *
+     * @param granularity the rollup to rebuild
+     * @param from        the inclusive start, aligned to the granularity
+     * @param to          the exclusive end, aligned to the granularity
+     * @return the number of rebuilt buckets
+     */
+    public int rebuild(Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.update(String.format(REBUILD_ROLLUP, granularity.getTable(), granularity.getField()),
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Sums the hits of all buckets starting within {@code [from, to)}.
+     *
+     * @param granularity the rollup to read
+     * @param from        the inclusive start, aligned to the granularity
+     * @param to          the exclusive end, aligned to the granularity
+     * @param uris        the URIs to match, or {@code null} for all of them
+     * @return hit counts grouped by app and URI
+     */
+    public List<ViewStatsDto> countHits(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                        List<String> uris) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = String.format(COUNT_HITS, granularity.getTable(), statisticDictionary.uriCondition(uris, parameters));
+        return namedParameterJdbcTemplate.query(sql, parameters, (rs, rowNum) -> ViewStatsDto.builder()
+                .app(statisticDictionary.appName(rs.getInt("app_id")))
+                .uri(statisticDictionary.uri(rs.getInt("route_id"), rs.getLong("resource_id")))
+                .hits(rs.getLong("hits"))
+                .build());
+    }
+
+    /**
+     * Sums the hits of all rollup buckets starting within {@code [from, to)} per app, URI and time series bucket.
+     *
+     * @param granularity the rollup to read, no coarser than the interval
+     * @param from        the inclusive start, aligned to the granularity
+     * @param to          the exclusive end, aligned to the granularity
+     * @param uris        the URIs to match, or {@code null} for all of them
+     * @param interval    the width of the time series buckets
+     * @return hit counts grouped by app, URI and time series bucket start
+     */
+    public List<BucketHits> countBucketHits(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                            List<String> uris, TimeSeriesInterval interval) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = String.format(COUNT_BUCKET_HITS, interval.getCode(), granularity.getTable(),
+                statisticDictionary.uriCondition(uris, parameters));
+        return namedParameterJdbcTemplate.query(sql, parameters, (rs, rowNum) -> new BucketHits(
+                new BucketKey(statisticDictionary.appName(rs.getInt("app_id")),
+                        statisticDictionary.uri(rs.getInt("route_id"), rs.getLong("resource_id")),
+                        rs.getTimestamp("bucket").toLocalDateTime()),
+                rs.getLong("hits"), null));
+    }
+}
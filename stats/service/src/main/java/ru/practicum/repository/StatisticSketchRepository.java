@@ -0,0 +1,86 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.RouteUri;
+import ru.practicum.sketch.UniqueSketch;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+@Repository
+@RequiredArgsConstructor
+public class StatisticSketchRepository {
+    private static final String SELECT_FOR_UPDATE = "SELECT sketch FROM statistics_sketch_hour " +
+            "WHERE app_id = ? AND route_id = ? AND resource_id = ? AND bucket_start = ? FOR UPDATE";
+    private static final String UPSERT_SKETCH = "INSERT INTO statistics_sketch_hour " +
+            "(app_id, route_id, resource_id, bucket_start, sketch) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (app_id, route_id, resource_id, bucket_start) DO UPDATE SET sketch = EXCLUDED.sketch";
+    private static final String SELECT_SKETCHES = "SELECT app_id, route_id, resource_id, bucket_start, sketch " +
+            "FROM statistics_sketch_hour " +
+            "WHERE bucket_start >= :from AND bucket_start < :to %s";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final StatisticDictionary statisticDictionary;
+
+    /**
+     * Merges the given hour sketches into the stored ones, creating missing buckets.
+     *
+     * @param sketches the sketches to merge, keyed by hour bucket
+     */
+    @Transactional
+    public void mergeAll(Map<BucketKey, UniqueSketch> sketches) {
+        Map<String, Integer> appIds = statisticDictionary.appIds(sketches.keySet().stream()
+                .map(BucketKey::getApp)
+                .collect(Collectors.toSet()));
+        Map<String, Integer> routeIds = statisticDictionary.routeIds(sketches.keySet().stream()
+                .map(key -> RouteUri.parse(key.getUri()).getTemplate())
+                .collect(Collectors.toSet()));
+        for (Map.Entry<BucketKey, UniqueSketch> entry : sketches.entrySet()) {
+            BucketKey key = entry.getKey();
+            RouteUri routeUri = RouteUri.parse(key.getUri());
+            Object[] bucket = {appIds.get(key.getApp()), routeIds.get(routeUri.getTemplate()), routeUri.getResourceId(),
+                    Timestamp.valueOf(key.getBucketStart())};
+            UniqueSketch sketch = entry.getValue();
+            List<byte[]> stored = jdbcTemplate.query(SELECT_FOR_UPDATE, (rs, rowNum) -> rs.getBytes("sketch"), bucket);
+            if (!stored.isEmpty()) {
+                UniqueSketch merged = UniqueSketch.fromBytes(stored.get(0));
+                merged.merge(sketch);
+                sketch = merged;
+            }
+            jdbcTemplate.update(UPSERT_SKETCH, bucket[0], bucket[1], bucket[2], bucket[3], sketch.toBytes());
+        }
+    }
+
+    /**
+     * Streams the stored sketches of all hour buckets starting within {@code [from, to)} with their bucket.
+     *
+     * @param from     the inclusive start, aligned to an hour
+     * @param to       the exclusive end, aligned to an hour
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives every stored sketch with its app, URI and hour
+     */
+    public void findBucketSketches(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                   BiConsumer<BucketKey, UniqueSketch> consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = String.format(SELECT_SKETCHES, statisticDictionary.uriCondition(uris, parameters));
+        namedParameterJdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(new BucketKey(statisticDictionary.appName(rs.getInt("app_id")),
+                            statisticDictionary.uri(rs.getInt("route_id"), rs.getLong("resource_id")),
+                            rs.getTimestamp("bucket_start").toLocalDateTime()),
+                    UniqueSketch.fromBytes(rs.getBytes("sketch")));
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.OptionalLong;
+
+@Repository
+@RequiredArgsConstructor
+public class WalCheckpointRepository {
+    private static final String SELECT_POSITION = "SELECT position FROM statistics_wal_checkpoint WHERE id = 1";
+    private static final String UPSERT_POSITION = "INSERT INTO statistics_wal_checkpoint (id, position) VALUES (1, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET position = EXCLUDED.position";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns the hit log position up to which hits have been committed to the statistics table.
+     */
+    public OptionalLong findPosition() {
+        List<Long> positions = jdbcTemplate.queryForList(SELECT_POSITION, Long.class);
+        return positions.isEmpty() ? OptionalLong.empty() : OptionalLong.of(positions.get(0));
+    }
+
+    /**
+     * Stores the committed hit log position. Must run in the transaction that stores the hits themselves.
+     *
+     * @param position the position right after the last committed hit
+     */
+    public void savePosition(long position) {
+        jdbcTemplate.update(UPSERT_POSITION, position);
+    }
+}
@@ -0,0 +1,23 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Statistic;
+
+import java.util.List;
+
+/**
+ * Writes hits to the database on the request thread.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "direct", matchIfMissing = true)
+public class DirectStatisticIngestion implements StatisticIngestion {
+    private final StatisticWriter statisticWriter;
+
+    @Override
+    public void ingest(List<Statistic> statistics) {
+        statisticWriter.write(statistics);
+    }
+}
@@ -0,0 +1,115 @@
+package ru.practicum.service;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.counter.DedupWindow;
+import ru.practicum.model.Statistic;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops exact repeats of a hit, the same app, URI and IP address within the same second, before they are
+ * stored. Such repeats come from client retries and refresh storms; they never change unique counts, but
+ * every one of them would be a row. Hits are remembered for {@code stats.dedup.window-seconds} seconds of
+ * their timestamp, so a retry that keeps the original timestamp is recognized within that time. Hits are
+ * remembered as they are filtered, so that concurrent repeats are dropped as well, and must be
+ * {@link #forget forgotten} again if storing them fails, otherwise the retry of the client would be dropped.
+ * <p>
+ * Like the hot counters, the window only sees hits received by this instance.
+ */
+@Slf4j
+@Component
+public class HitDeduplicator {
+    private static final int FUTURE_SECONDS = 60;
+
+    private final boolean enabled;
+    private final DedupWindow<HitKey> window;
+    private final LongAdder suppressed = new LongAdder();
+
+    public HitDeduplicator(@Value("${stats.dedup.enabled:false}") boolean enabled,
+                           @Value("${stats.dedup.window-seconds:60}") int windowSeconds,
+                           @Value("${stats.dedup.max-entries:1000000}") int maxEntries) {
+        this.enabled = enabled;
+        this.window = new DedupWindow<>(windowSeconds, FUTURE_SECONDS, maxEntries);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the statistics that are not repeats of a hit seen before, in their original order.
+     *
+     * @param statistics the received statistics
+     * @return the statistics to store
+     */
+    public List<Statistic> filter(List<Statistic> statistics) {
+        if (!enabled) {
+            return statistics;
+        }
+        long now = nowSecond();
+        List<Statistic> unique = new ArrayList<>(statistics.size());
+        for (Statistic statistic : statistics) {
+            long second = statistic.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            if (window.add(new HitKey(statistic.getApp(), statistic.getUri(), statistic.getIp(), second), second, now)) {
+                unique.add(statistic);
+            }
+        }
+        if (unique.size() < statistics.size()) {
+            suppressed.add(statistics.size() - unique.size());
+        }
+        return unique;
+    }
+
+    /**
+     * Forgets statistics returned by {@link #filter} that could not be stored, so that their retries are accepted.
+     *
+     * @param statistics the statistics that were not stored
+     */
+    public void forget(List<Statistic> statistics) {
+        if (!enabled) {
+            return;
+        }
+        for (Statistic statistic : statistics) {
+            long second = statistic.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            window.remove(new HitKey(statistic.getApp(), statistic.getUri(), statistic.getIp(), second), second);
+        }
+    }
+
+    /**
+     * Returns the number of hits dropped as repeats since this instance started.
+     */
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.dedup.evict-interval-ms:10000}")
+    public void evict() {
+        if (!enabled) {
+            return;
+        }
+        window.evict(nowSecond());
+        log.debug("Deduplication window holds {} hits, {} repeats suppressed", window.size(), getSuppressed());
+    }
+
+    private static long nowSecond() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class HitKey {
+        private final String app;
+        private final String uri;
+        private final String ip;
+        private final long second;
+    }
+}
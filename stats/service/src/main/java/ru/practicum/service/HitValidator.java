@@ -0,0 +1,93 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.EndpointDto;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.model.RouteUri;
+import ru.practicum.model.Statistic;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
+
+/**
+ * Checks received hits against the constraints of {@link EndpointDto} and parses their timestamps. A batch is
+ * checked as a whole before any of its hits is stored, so an invalid hit rejects its batch with 400 instead of
+ * failing it halfway through. The route template a URI is stored as may be a few characters longer than the
+ * URI itself, so it is checked against the column width separately. Hits decoded from the binary encoding
+ * skip bean validation and are checked by {@link #validateStatistics} instead.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitValidator {
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER);
+    private static final int MAX_LENGTH = 64;
+
+    private final Validator validator;
+
+    /**
+     * @param endpointDtos the hits of a batch
+     * @throws BadRequestException naming the first invalid hit by its position in the batch
+     */
+    public void validate(List<EndpointDto> endpointDtos) {
+        for (int i = 0; i < endpointDtos.size(); i++) {
+            EndpointDto endpointDto = endpointDtos.get(i);
+            if (endpointDto == null) {
+                throw new BadRequestException("Hit " + i + " is null");
+            }
+            Set<ConstraintViolation<EndpointDto>> violations = validator.validate(endpointDto);
+            if (!violations.isEmpty()) {
+                ConstraintViolation<EndpointDto> violation = violations.iterator().next();
+                throw new BadRequestException("Hit " + i + ": " + violation.getPropertyPath() + " "
+                        + violation.getMessage());
+            }
+            checkTemplate(i, endpointDto.getUri());
+            try {
+                LocalDateTime.parse(endpointDto.getTimestamp(), DATE_TIME_FORMAT);
+            } catch (DateTimeParseException e) {
+                throw new BadRequestException("Hit " + i + ": invalid timestamp " + endpointDto.getTimestamp());
+            }
+        }
+    }
+
+    /**
+     * Checks decoded hits, whose timestamps are already parsed, against the constraints of {@link EndpointDto}.
+     *
+     * @param statistics the hits of a decoded batch
+     * @throws BadRequestException naming the first invalid hit by its position in the batch
+     */
+    public void validateStatistics(List<Statistic> statistics) {
+        for (int i = 0; i < statistics.size(); i++) {
+            Statistic statistic = statistics.get(i);
+            checkText(i, "app", statistic.getApp());
+            checkText(i, "uri", statistic.getUri());
+            checkText(i, "ip", statistic.getIp());
+            checkTemplate(i, statistic.getUri());
+        }
+    }
+
+    private static void checkText(int index, String property, String value) {
+        if (Objects.isNull(value) || value.isBlank()) {
+            throw new BadRequestException("Hit " + index + ": " + property + " must not be blank");
+        }
+        if (value.length() > MAX_LENGTH) {
+            throw new BadRequestException("Hit " + index + ": " + property + " size must be between 0 and "
+                    + MAX_LENGTH);
+        }
+    }
+
+    private static void checkTemplate(int index, String uri) {
+        if (RouteUri.parse(uri).getTemplate().length() > MAX_LENGTH) {
+            throw new BadRequestException("Hit " + index + ": uri route template is longer than " + MAX_LENGTH
+                    + " characters");
+        }
+    }
+}
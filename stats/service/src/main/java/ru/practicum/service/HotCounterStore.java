@@ -0,0 +1,181 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.counter.CounterRing;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeRange;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the hits of the recent past per app and URI in memory: per second for the last
+ * {@code stats.hot.second-window} seconds and per minute for the last {@code stats.hot.minute-window} minutes.
+ * Committed hits are added by {@link StatisticWriter}, so the counters agree with the database for every
+ * second since this instance started.
+ * <p>
+ * The counters only see hits written by this instance and must be disabled when several instances share
+ * a database.
+ */
+@Slf4j
+@Component
+public class HotCounterStore {
+    private static final int MINUTE = 60;
+    private static final int SECOND_MARGIN = 5;
+    private static final int MINUTE_MARGIN = 2;
+    private static final int FUTURE_SECONDS = 60;
+
+    private final boolean enabled;
+    private final int secondWindow;
+    private final int minuteWindow;
+    private final ConcurrentMap<AppUri, Counters> counters = new ConcurrentHashMap<>();
+    /**
+     * The first second for which every committed hit has been counted.
+     */
+    private final AtomicLong coveredFrom;
+
+    public HotCounterStore(@Value("${stats.hot.enabled:true}") boolean enabled,
+                           @Value("${stats.hot.second-window:120}") int secondWindow,
+                           @Value("${stats.hot.minute-window:180}") int minuteWindow) {
+        this.enabled = enabled;
+        this.secondWindow = secondWindow;
+        this.minuteWindow = minuteWindow;
+        this.coveredFrom = new AtomicLong(nowSecond() + 1);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds committed statistics to the counters.
+     *
+     * @param statistics the statistics to add
+     */
+    public void add(List<Statistic> statistics) {
+        long now = nowSecond();
+        Map<AppUri, List<Long>> seconds = new HashMap<>();
+        for (Statistic statistic : statistics) {
+            seconds.computeIfAbsent(new AppUri(statistic.getApp(), statistic.getUri()), k -> new ArrayList<>())
+                    .add(statistic.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        }
+        // Locking the map entry once per batch keeps eviction from discarding concurrent increments.
+        seconds.forEach((appUri, hits) -> counters.compute(appUri, (k, entry) -> {
+            Counters target = Objects.isNull(entry) ? new Counters() : entry;
+            for (long second : hits) {
+                boolean counted = target.seconds.add(second, now) & target.minutes.add(second, now);
+                if (!counted && second > now) {
+                    // A hit too far in the future will be missing from the counters once its time comes.
+                    coveredFrom.accumulateAndGet(second + 1, Math::max);
+                }
+            }
+            return target;
+        }));
+    }
+
+    /**
+     * Finds the part of {@code [from, to)} that the counters answer exactly. Whole minutes are taken from the
+     * minute counters and partial minutes from the second counters; everything else is left to the database.
+     *
+     * @param from the inclusive start, aligned to a second
+     * @param to   the exclusive end, aligned to a second
+     * @return the covered range, which always ends at {@code to} or earlier
+     */
+    public Optional<TimeRange> cover(LocalDateTime from, LocalDateTime to) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long now = nowSecond();
+        long covered = coveredFrom.get();
+        long secondFrom = Math.max(covered, now - secondWindow + 1);
+        long minuteFrom = Math.max(ceilMinute(covered), (Math.floorDiv(now, MINUTE) - minuteWindow + 1) * MINUTE);
+
+        long start = toSecond(from);
+        long hotFrom = start >= secondFrom ? start : Math.max(ceilMinute(start), minuteFrom);
+        long hotTo = Math.min(toSecond(to), now + 1);
+        if (floorMinute(hotTo) != hotTo && floorMinute(hotTo) < secondFrom) {
+            hotTo = floorMinute(hotTo);
+        }
+        if (hotFrom >= hotTo) {
+            return Optional.empty();
+        }
+        return Optional.of(new TimeRange(toDateTime(hotFrom), toDateTime(hotTo)));
+    }
+
+    /**
+     * Counts hits per app and URI within a range returned by {@link #cover}.
+     *
+     * @param range the covered range
+     * @param uris  the URIs to match, or {@code null} for all of them
+     * @return the hit counts of the apps and URIs that have hits
+     */
+    public Map<AppUri, Long> countHits(TimeRange range, List<String> uris) {
+        long from = toSecond(range.getFrom());
+        long to = toSecond(range.getTo());
+        long fromMinute = ceilMinute(from);
+        long toMinute = floorMinute(to);
+        Map<AppUri, Long> hits = new HashMap<>();
+        counters.forEach((appUri, entry) -> {
+            if (Objects.nonNull(uris) && !uris.contains(appUri.getUri())) {
+                return;
+            }
+            long count = fromMinute >= toMinute
+                    ? entry.seconds.sum(from, to)
+                    : entry.seconds.sum(from, fromMinute) + entry.minutes.sum(fromMinute, toMinute)
+                    + entry.seconds.sum(toMinute, to);
+            if (count > 0) {
+                hits.put(appUri, count);
+            }
+        });
+        return hits;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.hot.evict-interval-ms:60000}")
+    public void evict() {
+        long now = nowSecond();
+        for (AppUri appUri : counters.keySet()) {
+            counters.computeIfPresent(appUri, (k, entry) ->
+                    entry.seconds.isIdle(now) && entry.minutes.isIdle(now) ? null : entry);
+        }
+        log.debug("Hot counters kept for {} apps and URIs", counters.size());
+    }
+
+    private static long nowSecond() {
+        return toSecond(LocalDateTime.now());
+    }
+
+    private static long toSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toDateTime(long second) {
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+
+    private static long floorMinute(long second) {
+        return Math.floorDiv(second, MINUTE) * MINUTE;
+    }
+
+    private static long ceilMinute(long second) {
+        return -Math.floorDiv(-second, MINUTE) * MINUTE;
+    }
+
+    private class Counters {
+        private final CounterRing seconds = new CounterRing(1, secondWindow + SECOND_MARGIN, FUTURE_SECONDS);
+        private final CounterRing minutes = new CounterRing(MINUTE, minuteWindow + MINUTE_MARGIN,
+                FUTURE_SECONDS / MINUTE + 1);
+    }
+}
@@ -0,0 +1,245 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.aggregation.HitConsumer;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketHits;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeSeriesInterval;
+import ru.practicum.repository.StatisticAggregateRepository;
+import ru.practicum.repository.StatisticDictionary;
+import ru.practicum.repository.StatisticExportRepository;
+import ru.practicum.repository.StatisticJdbcRepository;
+import ru.practicum.sketch.UniqueSketch;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Reads raw statistics from wherever they are kept: the part of a range before the archive watermark from the
+ * columnar segments of {@link StatisticArchive}, the rest from the {@code statistics} table. Ranges that do
+ * not reach back to the watermark go straight to the database.
+ */
+@Component
+@RequiredArgsConstructor
+public class RawStatisticSource {
+    private final StatisticJdbcRepository statisticJdbcRepository;
+    private final StatisticAggregateRepository statisticAggregateRepository;
+    private final StatisticExportRepository statisticExportRepository;
+    private final StatisticArchive statisticArchive;
+    private final StatisticDictionary statisticDictionary;
+    private final UniqueSketchStore uniqueSketchStore;
+
+    /**
+     * Counts raw hits per app and URI within {@code [from, to)}.
+     *
+     * @param from the inclusive start
+     * @param to   the exclusive end
+     * @param uris the URIs to match, or {@code null} for all of them
+     * @return hit counts grouped by app and URI
+     */
+    public List<ViewStatsDto> countHits(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        LocalDateTime split = splitAtArchive(from, to);
+        if (!from.isBefore(split)) {
+            return statisticJdbcRepository.countHits(from, to, uris);
+        }
+        return toViewStatsDtos(mergeHits(from, split, to, uris), null);
+    }
+
+    /**
+     * Counts raw hits, or hits from distinct IP addresses, per app and URI within {@code [from, to)}, most
+     * visited first.
+     *
+     * @param from   the inclusive start
+     * @param to     the exclusive end
+     * @param uris   the URIs to match, or {@code null} for all of them
+     * @param unique whether to count distinct IP addresses only
+     * @param limit  the maximum number of returned rows, or {@code null} for all of them
+     * @return hit counts grouped by app and URI, ordered by hits in descending order
+     */
+    public List<ViewStatsDto> countTopHits(LocalDateTime from, LocalDateTime to, List<String> uris, boolean unique,
+                                           Integer limit) {
+        LocalDateTime split = splitAtArchive(from, to);
+        if (!from.isBefore(split)) {
+            return statisticJdbcRepository.countTopHits(from, to, uris, unique, limit);
+        }
+        if (!unique) {
+            return toViewStatsDtos(mergeHits(from, split, to, uris), limit);
+        }
+        Map<AppUri, UniqueSketch> sketches = new HashMap<>();
+        findDistinctIps(from, to, uris, (appUri, ip) ->
+                sketches.computeIfAbsent(appUri, k -> uniqueSketchStore.newSketch()).add(ip));
+        Map<AppUri, Long> hits = new HashMap<>();
+        sketches.forEach((appUri, sketch) -> hits.put(appUri, sketch.cardinality()));
+        return toViewStatsDtos(hits, limit);
+    }
+
+    /**
+     * Streams the IP addresses per app and URI within {@code [from, to)}. Addresses are only distinct within
+     * the database part of the range, so the consumer must tolerate repeated addresses.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives the app, URI and IP address of the hits
+     */
+    public void findDistinctIps(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                BiConsumer<AppUri, String> consumer) {
+        LocalDateTime split = splitAtArchive(from, to);
+        statisticArchive.findIps(from, split, uris, consumer);
+        if (split.isBefore(to)) {
+            statisticJdbcRepository.findDistinctIps(split, to, uris, consumer);
+        }
+    }
+
+    /**
+     * Streams raw hit counts per app and URI within {@code [from, to)}, keyed by their dictionary keys. An app
+     * and URI may be reported once from the archive and once from the database.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives the hit counts
+     */
+    public void streamHits(LocalDateTime from, LocalDateTime to, List<String> uris, HitConsumer consumer) {
+        LocalDateTime split = splitAtArchive(from, to);
+        statisticArchive.countHits(from, split, uris, consumer);
+        if (split.isBefore(to)) {
+            statisticAggregateRepository.streamHits(Granularity.RAW, split, to, uris, consumer);
+        }
+    }
+
+    /**
+     * Counts raw hits, and optionally hits from distinct IP addresses, per app, URI and time bucket within
+     * {@code [from, to)}. The archive watermark is at the start of a day, so no bucket spans both the archive
+     * and the database.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param interval the width of the buckets
+     * @param unique   whether to count distinct IP addresses as well
+     * @return hit counts grouped by app, URI and bucket start
+     */
+    public List<BucketHits> countBucketHits(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                            TimeSeriesInterval interval, boolean unique) {
+        LocalDateTime split = splitAtArchive(from, to);
+        if (!from.isBefore(split)) {
+            return statisticJdbcRepository.countBucketHits(from, to, uris, interval, unique);
+        }
+        List<BucketHits> buckets = new ArrayList<>();
+        if (unique) {
+            Map<BucketKey, Long> hits = new HashMap<>();
+            Map<BucketKey, UniqueSketch> sketches = new HashMap<>();
+            statisticArchive.findBucketIps(from, split, uris, interval, (key, ip) -> {
+                hits.merge(key, 1L, Long::sum);
+                sketches.computeIfAbsent(key, k -> uniqueSketchStore.newSketch()).add(ip);
+            });
+            hits.forEach((key, count) -> buckets.add(new BucketHits(key, count, sketches.get(key).cardinality())));
+        } else {
+            statisticArchive.countBucketHits(from, split, uris, interval)
+                    .forEach((key, count) -> buckets.add(new BucketHits(key, count, null)));
+        }
+        if (split.isBefore(to)) {
+            buckets.addAll(statisticJdbcRepository.countBucketHits(split, to, uris, interval, unique));
+        }
+        return buckets;
+    }
+
+    /**
+     * Streams the IP addresses per app, URI and time bucket within {@code [from, to)}. As with
+     * {@link #findDistinctIps}, the consumer must tolerate repeated addresses.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param interval the width of the buckets
+     * @param consumer receives the bucket and IP address of the hits
+     */
+    public void findDistinctBucketIps(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                      TimeSeriesInterval interval, BiConsumer<BucketKey, String> consumer) {
+        LocalDateTime split = splitAtArchive(from, to);
+        statisticArchive.findBucketIps(from, split, uris, interval, consumer);
+        if (split.isBefore(to)) {
+            statisticJdbcRepository.findDistinctBucketIps(split, to, uris, interval, consumer);
+        }
+    }
+
+    /**
+     * Streams the raw statistics matching the filters, the archived ones first. Archived statistics have no id.
+     * Must be called in a transaction, see {@link StatisticExportRepository#streamStatistics}.
+     *
+     * @param from     the inclusive start, or {@code null} for no lower bound
+     * @param to       the exclusive end, or {@code null} for no upper bound
+     * @param app      the app to match, or {@code null} for all of them
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives every matching statistic
+     */
+    public void streamStatistics(LocalDateTime from, LocalDateTime to, String app, List<String> uris,
+                                 Consumer<Statistic> consumer) {
+        LocalDateTime start = Objects.isNull(from) ? LocalDateTime.MIN : from;
+        LocalDateTime split = splitAtArchive(start, Objects.isNull(to) ? LocalDateTime.MAX : to);
+        if (!start.isBefore(split)) {
+            statisticExportRepository.streamStatistics(from, to, app, uris, consumer);
+            return;
+        }
+        statisticArchive.statistics(start, split, app, uris).forEachRemaining(consumer);
+        if (Objects.isNull(to) || split.isBefore(to)) {
+            statisticExportRepository.streamStatistics(split, to, app, uris, consumer);
+        }
+    }
+
+    /**
+     * Returns where the archived part of {@code [from, to)} ends, which is {@code from} if none is archived.
+     */
+    public LocalDateTime splitAtArchive(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime archivedBefore = statisticArchive.getArchivedBefore();
+        if (!from.isBefore(archivedBefore)) {
+            return from;
+        }
+        return to.isBefore(archivedBefore) ? to : archivedBefore;
+    }
+
+    private Map<AppUri, Long> mergeHits(LocalDateTime from, LocalDateTime split, LocalDateTime to,
+                                        List<String> uris) {
+        Map<AppUri, Long> hits = new HashMap<>();
+        statisticArchive.countHits(from, split, uris, (appId, routeId, resourceId, count) ->
+                hits.merge(appUri(appId, routeId, resourceId), count, Long::sum));
+        if (split.isBefore(to)) {
+            for (ViewStatsDto viewStatsDto : statisticJdbcRepository.countHits(split, to, uris)) {
+                hits.merge(new AppUri(viewStatsDto.getApp(), viewStatsDto.getUri()), viewStatsDto.getHits(),
+                        Long::sum);
+            }
+        }
+        return hits;
+    }
+
+    private AppUri appUri(int appId, int routeId, long resourceId) {
+        return new AppUri(statisticDictionary.appName(appId), statisticDictionary.uri(routeId, resourceId));
+    }
+
+    private List<ViewStatsDto> toViewStatsDtos(Map<AppUri, Long> hits, Integer limit) {
+        List<ViewStatsDto> viewStatsDtos = new ArrayList<>(hits.size());
+        hits.forEach((appUri, count) -> viewStatsDtos.add(ViewStatsDto.builder()
+                .app(appUri.getApp())
+                .uri(appUri.getUri())
+                .hits(count)
+                .build()));
+        return viewStatsDtos.stream()
+                .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,183 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.practicum.exception.PayloadTooLargeException;
+import ru.practicum.exception.ServiceUnavailableException;
+import ru.practicum.exception.TooManyRequestsException;
+import ru.practicum.model.Statistic;
+import ru.practicum.queue.HitRing;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Acknowledges hits as soon as they are published to an in-memory {@link HitRing}. A single writer thread
+ * drains the ring and stores whatever has accumulated with one {@link StatisticWriter#write} call, so under
+ * load the batches grow with the backlog and request threads never wait for a database connection.
+ * <p>
+ * When the ring is full the hits are rejected with 429 and a {@code Retry-After} header, and while the
+ * instance shuts down with 503. A batch larger than the whole ring could never be published, so it is
+ * rejected with 413 rather than asking the client to retry it. Acknowledged hits that have not been written
+ * yet are lost if the process crashes; use {@link WalStatisticIngestion} where that matters.
+ * <p>
+ * Failed batches are retried with a growing backoff, except for hits the database rejects for good, which
+ * are found with {@link StatisticWriter#findRejected} and dropped, so that a single one cannot stall the
+ * writer and fill the ring.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "ring")
+public class RingStatisticIngestion implements StatisticIngestion {
+    private final StatisticWriter statisticWriter;
+    private final HitRing<Statistic> ring;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final long retryAfterSeconds;
+    private final Thread writer;
+
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile boolean accepting = true;
+    private volatile boolean running = true;
+    private volatile boolean parked;
+
+    public RingStatisticIngestion(StatisticWriter statisticWriter,
+                                  @Value("${stats.ring.capacity:65536}") int capacity,
+                                  @Value("${stats.ring.batch-size:5000}") int batchSize,
+                                  @Value("${stats.ring.max-wait-ms:50}") long maxWaitMs,
+                                  @Value("${stats.ring.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.statisticWriter = statisticWriter;
+        this.ring = new HitRing<>(capacity);
+        this.batchSize = batchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.writer = new Thread(this::write, "stats-ring-writer");
+    }
+
+    @PostConstruct
+    public void start() {
+        log.info("Starting ring ingestion with {} slots", ring.getCapacity());
+        writer.start();
+    }
+
+    @Override
+    public void ingest(List<Statistic> statistics) {
+        inFlight.increment();
+        try {
+            if (!accepting) {
+                throw new ServiceUnavailableException("The statistics service is shutting down");
+            }
+            if (statistics.size() > ring.getCapacity()) {
+                rejected.add(statistics.size());
+                throw new PayloadTooLargeException("A batch may hold at most " + ring.getCapacity() + " hits");
+            }
+            if (!ring.offerAll(statistics)) {
+                rejected.add(statistics.size());
+                throw new TooManyRequestsException("The hit queue is full", retryAfterSeconds);
+            }
+        } finally {
+            inFlight.decrement();
+        }
+        published.add(statistics.size());
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        accepting = false;
+        // Producers that saw accepting before it changed finish publishing before the writer is told to stop.
+        while (inFlight.sum() > 0) {
+            Thread.sleep(1);
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+        log.info("Stopped ring ingestion, {} hits published, {} rejected", getPublished(), getRejected());
+    }
+
+    private void write() {
+        List<Statistic> batch = new ArrayList<>(batchSize);
+        long backoffMs = 100;
+        while (true) {
+            if (batch.isEmpty() && ring.drainTo(batch, batchSize) == 0) {
+                if (!running) {
+                    return;
+                }
+                parked = true;
+                // Rechecked after announcing the park, so a publication in between is not missed.
+                if (ring.size() == 0) {
+                    LockSupport.parkNanos(this, maxWaitNanos);
+                }
+                parked = false;
+                continue;
+            }
+            try {
+                statisticWriter.write(batch);
+                log.debug("Wrote {} hits, {} queued", batch.size(), ring.size());
+                batch.clear();
+                backoffMs = 100;
+            } catch (RuntimeException e) {
+                if (e instanceof DataIntegrityViolationException && dropRejected(batch, e)) {
+                    continue;
+                }
+                if (!running) {
+                    log.error("Failed to write {} hits while shutting down, dropping them: {}", batch.size(),
+                            e.getMessage());
+                    batch.clear();
+                    continue;
+                }
+                log.warn("Failed to write {} hits, will retry in {} ms: {}", batch.size(), backoffMs, e.getMessage());
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(backoffMs));
+                backoffMs = Math.min(backoffMs * 2, 5000);
+            }
+        }
+    }
+
+    /**
+     * Removes the hits that can never be written from a batch that failed with a data integrity violation.
+     *
+     * @return whether any hits were removed
+     */
+    private boolean dropRejected(List<Statistic> batch, RuntimeException failure) {
+        List<Statistic> rejected;
+        try {
+            rejected = statisticWriter.findRejected(batch);
+        } catch (RuntimeException e) {
+            log.warn("Failed to look for hits that cannot be written: {}", e.getMessage());
+            return false;
+        }
+        if (rejected.isEmpty()) {
+            return false;
+        }
+        log.error("Dropping {} of {} hits that cannot be written, the first is {}: {}", rejected.size(),
+                batch.size(), rejected.get(0), failure.getMessage());
+        batch.removeAll(rejected);
+        return true;
+    }
+}
@@ -0,0 +1,382 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.aggregation.HitConsumer;
+import ru.practicum.archive.ColumnarSegment;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.RouteUri;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeRange;
+import ru.practicum.model.TimeSeriesInterval;
+import ru.practicum.repository.StatisticDictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Answers raw statistics queries over history that {@link StatisticArchiveJob} has moved out of the database
+ * into one columnar segment per day under {@code stats.archive.directory}, see {@link ColumnarSegment}.
+ * <p>
+ * Only the part of a range before the archive watermark is read here; the directory must therefore be shared
+ * by all instances that read the watermark. The most recently used segments are kept mapped, up to
+ * {@code stats.archive.max-open-segments} of them.
+ * <p>
+ * Segments name apps and route templates, since the dictionary tables may be recreated while the archive
+ * persists. When a segment is opened, its names are translated into the current dictionary keys, creating
+ * missing ones in a transaction of their own, so that archived hits can be aggregated by key like stored ones.
+ */
+@Slf4j
+@Component
+public class StatisticArchive {
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final StatisticDictionary statisticDictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final int maxOpenSegments;
+    private final LinkedHashMap<LocalDate, OpenSegment> segments = new LinkedHashMap<>(16, 0.75f, true);
+
+    private volatile TimeRange archived = new TimeRange(LocalDateTime.MIN, LocalDateTime.MIN);
+
+    public StatisticArchive(StatisticDictionary statisticDictionary,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${stats.archive.directory:stats-archive}") String directory,
+                            @Value("${stats.archive.max-open-segments:64}") int maxOpenSegments) {
+        this.statisticDictionary = statisticDictionary;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.directory = Paths.get(directory);
+        this.maxOpenSegments = maxOpenSegments;
+    }
+
+    public LocalDateTime getArchivedBefore() {
+        return archived.getTo();
+    }
+
+    /**
+     * Publishes a new archive watermark. Must only be called once the segments of the range are in place.
+     *
+     * @param archived the archived history, from the start of its first day to the watermark
+     */
+    public void setArchived(TimeRange archived) {
+        this.archived = archived;
+    }
+
+    /**
+     * Returns the file of the segment holding the hits of a day, creating the archive directory if necessary.
+     */
+    public Path segmentFile(LocalDate day) throws IOException {
+        Files.createDirectories(directory);
+        return directory.resolve("statistics-" + DAY_FORMAT.format(day) + ".seg");
+    }
+
+    /**
+     * Forgets a mapped segment, so that the next read picks up the rewritten file.
+     */
+    public synchronized void evict(LocalDate day) {
+        segments.remove(day);
+    }
+
+    /**
+     * Counts the archived hits per app and URI within {@code [from, to)}.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end, no later than the archive watermark
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives the hit count of every app and URI per archived day
+     */
+    public void countHits(LocalDateTime from, LocalDateTime to, List<String> uris, HitConsumer consumer) {
+        UriFilter filter = new UriFilter(uris);
+        forEachDay(from, to, (segment, range) -> segment.segment.countHits(range[0], range[1],
+                filter.codes(segment.segment), (appCode, uriCode, hits) -> consumer.accept(segment.appIds[appCode],
+                        segment.routeIds[uriCode], segment.segment.getResourceId(uriCode), hits)));
+    }
+
+    /**
+     * Streams the IP addresses of the archived hits per app and URI within {@code [from, to)}. Unlike the
+     * database, the archive does not deduplicate them, so the consumer must tolerate repeated addresses.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end, no later than the archive watermark
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param consumer receives the app, URI and IP address of every hit
+     */
+    public void findIps(LocalDateTime from, LocalDateTime to, List<String> uris, BiConsumer<AppUri, String> consumer) {
+        UriFilter filter = new UriFilter(uris);
+        forEachDay(from, to, (segment, range) -> {
+            Map<Long, AppUri> appUris = new HashMap<>();
+            ColumnarSegment.Cursor cursor = segment.segment.scan(range[0], range[1], filter.codes(segment.segment));
+            while (cursor.next()) {
+                consumer.accept(segment.appUri(appUris, cursor), cursor.getIp());
+            }
+        });
+    }
+
+    /**
+     * Counts the archived hits per app, URI and time bucket within {@code [from, to)}.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end, no later than the archive watermark
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param interval the width of the buckets
+     * @return hit counts by app, URI and bucket start
+     */
+    public Map<BucketKey, Long> countBucketHits(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                                TimeSeriesInterval interval) {
+        Map<BucketKey, Long> hits = new HashMap<>();
+        scanBuckets(from, to, uris, interval, false, (key, ip) -> hits.merge(key, 1L, Long::sum));
+        return hits;
+    }
+
+    /**
+     * Streams the IP addresses of the archived hits per app, URI and time bucket within {@code [from, to)}. As
+     * with {@link #findIps}, the consumer must tolerate repeated addresses.
+     *
+     * @param from     the inclusive start
+     * @param to       the exclusive end, no later than the archive watermark
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param interval the width of the buckets
+     * @param consumer receives the bucket and IP address of every hit
+     */
+    public void findBucketIps(LocalDateTime from, LocalDateTime to, List<String> uris, TimeSeriesInterval interval,
+                              BiConsumer<BucketKey, String> consumer) {
+        scanBuckets(from, to, uris, interval, true, consumer);
+    }
+
+    /**
+     * Returns the archived hits within {@code [from, to)} in timestamp order. Segments are only opened as the
+     * iteration reaches their day, so the hits are never held in memory at once. Archived hits have no id.
+     *
+     * @param from the inclusive start
+     * @param to   the exclusive end, no later than the archive watermark
+     * @param app  the app to match, or {@code null} for all of them
+     * @param uris the URIs to match, or {@code null} for all of them
+     * @return an iterator over the matching hits
+     */
+    public Iterator<Statistic> statistics(LocalDateTime from, LocalDateTime to, String app, List<String> uris) {
+        LocalDateTime start = clamp(from);
+        if (!start.isBefore(to)) {
+            return Collections.emptyIterator();
+        }
+        return new StatisticIterator(start, to, app, new UriFilter(uris));
+    }
+
+    private void scanBuckets(LocalDateTime from, LocalDateTime to, List<String> uris, TimeSeriesInterval interval,
+                             boolean ips, BiConsumer<BucketKey, String> consumer) {
+        UriFilter filter = new UriFilter(uris);
+        long width = interval.getUnit().getDuration().getSeconds();
+        forEachDay(from, to, (segment, range) -> {
+            Map<Long, AppUri> appUris = new HashMap<>();
+            ColumnarSegment.Cursor cursor = segment.segment.scan(range[0], range[1], filter.codes(segment.segment));
+            long bucketSecond = Long.MIN_VALUE;
+            LocalDateTime bucketStart = null;
+            while (cursor.next()) {
+                long second = cursor.getSecond() - Math.floorMod(cursor.getSecond(), width);
+                if (second != bucketSecond) {
+                    bucketSecond = second;
+                    bucketStart = LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+                }
+                AppUri appUri = segment.appUri(appUris, cursor);
+                consumer.accept(new BucketKey(appUri.getApp(), appUri.getUri(), bucketStart),
+                        ips ? cursor.getIp() : null);
+            }
+        });
+    }
+
+    private void forEachDay(LocalDateTime from, LocalDateTime to, BiConsumer<OpenSegment, long[]> scan) {
+        LocalDateTime start = clamp(from);
+        if (!start.isBefore(to)) {
+            return;
+        }
+        LocalDate last = to.minusNanos(1).toLocalDate();
+        for (LocalDate day = start.toLocalDate(); !day.isAfter(last); day = day.plusDays(1)) {
+            log.debug("Scanning archived segment of {}", day);
+            scan.accept(segment(day), new long[]{ceilSecond(start), ceilSecond(to)});
+        }
+    }
+
+    private synchronized OpenSegment segment(LocalDate day) {
+        OpenSegment segment = segments.get(day);
+        if (Objects.isNull(segment)) {
+            try {
+                segment = resolve(ColumnarSegment.open(segmentFile(day)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open the archived statistics of " + day, e);
+            }
+            segments.put(day, segment);
+            if (segments.size() > maxOpenSegments) {
+                segments.remove(segments.keySet().iterator().next());
+            }
+        }
+        return segment;
+    }
+
+    private OpenSegment resolve(ColumnarSegment segment) {
+        String[] appNames = new String[segment.getAppCount()];
+        for (int i = 0; i < appNames.length; i++) {
+            appNames[i] = segment.getAppName(i);
+        }
+        String[] templates = new String[segment.getUriCount()];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = segment.getTemplate(i);
+        }
+        return transactionTemplate.execute(status -> {
+            Map<String, Integer> appIds = statisticDictionary.appIds(Arrays.asList(appNames));
+            Map<String, Integer> routeIds = statisticDictionary.routeIds(Arrays.asList(templates));
+            return new OpenSegment(segment, Arrays.stream(appNames).mapToInt(appIds::get).toArray(),
+                    Arrays.stream(templates).mapToInt(routeIds::get).toArray());
+        });
+    }
+
+    /**
+     * Moves the start of a range up to the first archived day: there is a segment for every day since, and none
+     * before.
+     */
+    private LocalDateTime clamp(LocalDateTime from) {
+        LocalDateTime archivedFrom = archived.getFrom();
+        return from.isBefore(archivedFrom) ? archivedFrom : from;
+    }
+
+    private static long ceilSecond(LocalDateTime dateTime) {
+        long second = dateTime.toEpochSecond(ZoneOffset.UTC);
+        return dateTime.getNano() > 0 ? second + 1 : second;
+    }
+
+    /**
+     * A mapped segment along with the current dictionary keys of its app and URI codes.
+     */
+    private static class OpenSegment {
+        private final ColumnarSegment segment;
+        private final int[] appIds;
+        private final int[] routeIds;
+
+        OpenSegment(ColumnarSegment segment, int[] appIds, int[] routeIds) {
+            this.segment = segment;
+            this.appIds = appIds;
+            this.routeIds = routeIds;
+        }
+
+        /**
+         * Returns the app and URI of the current hit of a cursor, caching them per scan.
+         */
+        AppUri appUri(Map<Long, AppUri> appUris, ColumnarSegment.Cursor cursor) {
+            int appCode = cursor.getAppCode();
+            int uriCode = cursor.getUriCode();
+            return appUris.computeIfAbsent((long) appCode * segment.getUriCount() + uriCode,
+                    k -> new AppUri(segment.getAppName(appCode),
+                            new RouteUri(segment.getTemplate(uriCode), segment.getResourceId(uriCode)).toUri()));
+        }
+    }
+
+    /**
+     * Walks the segments of a range day by day, opening each one only once the previous one is exhausted.
+     */
+    private class StatisticIterator implements Iterator<Statistic> {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final LocalDate last;
+        private final String app;
+        private final UriFilter filter;
+        private LocalDate day;
+        private OpenSegment segment;
+        private ColumnarSegment.Cursor cursor;
+        private int appCode;
+        private Map<Long, AppUri> appUris;
+        private Statistic next;
+
+        StatisticIterator(LocalDateTime from, LocalDateTime to, String app, UriFilter filter) {
+            this.from = from;
+            this.to = to;
+            this.app = app;
+            this.filter = filter;
+            this.day = from.toLocalDate();
+            this.last = to.minusNanos(1).toLocalDate();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (Objects.isNull(next)) {
+                if (Objects.nonNull(cursor) && cursor.next()) {
+                    if (Objects.isNull(app) || cursor.getAppCode() == appCode) {
+                        AppUri appUri = segment.appUri(appUris, cursor);
+                        next = new Statistic(null, appUri.getApp(), appUri.getUri(), cursor.getIp(),
+                                LocalDateTime.ofEpochSecond(cursor.getSecond(), 0, ZoneOffset.UTC));
+                    }
+                } else if (day.isAfter(last)) {
+                    return false;
+                } else {
+                    log.debug("Exporting archived segment of {}", day);
+                    segment = segment(day);
+                    appCode = Objects.isNull(app) ? -1 : segment.segment.findAppCode(app);
+                    cursor = Objects.nonNull(app) && appCode < 0 ? null : segment.segment.scan(ceilSecond(from),
+                            ceilSecond(to), filter.codes(segment.segment));
+                    appUris = new HashMap<>();
+                    day = day.plusDays(1);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Statistic next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Statistic statistic = next;
+            next = null;
+            return statistic;
+        }
+    }
+
+    /**
+     * The URIs a query is restricted to, translated into the codes of every segment.
+     */
+    private static class UriFilter {
+        private final List<RouteUri> routeUris;
+
+        UriFilter(List<String> uris) {
+            this.routeUris = Objects.isNull(uris) ? null : uris.stream()
+                    .map(RouteUri::parse)
+                    .collect(Collectors.toList());
+        }
+
+        BitSet codes(ColumnarSegment segment) {
+            if (Objects.isNull(routeUris)) {
+                return null;
+            }
+            BitSet codes = new BitSet(segment.getUriCount());
+            for (RouteUri routeUri : routeUris) {
+                int code = segment.findUriCode(routeUri.getTemplate(), routeUri.getResourceId());
+                if (code >= 0) {
+                    codes.set(code);
+                }
+            }
+            return codes;
+        }
+    }
+}
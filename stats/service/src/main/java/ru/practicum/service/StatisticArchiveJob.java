@@ -0,0 +1,146 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.archive.ColumnarSegmentWriter;
+import ru.practicum.model.TimeRange;
+import ru.practicum.repository.StatisticArchiveRepository;
+import ru.practicum.repository.StatisticJdbcRepository;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Moves raw statistics older than {@code stats.archive.after-days} days out of the database into columnar
+ * segments, one per day, that {@link StatisticArchive} scans on demand. A segment takes a fraction of the
+ * space of the table rows and their indexes, so the history stays available at the raw resolution.
+ * <p>
+ * Day by day, the raw rows are streamed into a new segment, which is moved into place before the archive
+ * watermark is advanced past it. As with {@link StatisticCompactionJob}, the archived rows are deleted in
+ * chunks of {@code stats.archive.chunk-size} rows one run after the watermark was published, and hits that
+ * arrive later with timestamps below the watermark are only counted through the rollups. Days below the
+ * compaction watermark hold no raw rows: the first archived day is not earlier than the compaction watermark,
+ * and days that compaction overtakes later get an empty segment, so that every day from the first archived
+ * one up to the watermark has its segment.
+ * <p>
+ * Archiving deletes data and is disabled by default. Instances that do not archive still pick up the
+ * watermark on every run.
+ */
+@Slf4j
+@Component
+public class StatisticArchiveJob {
+    private final StatisticArchiveRepository statisticArchiveRepository;
+    private final StatisticJdbcRepository statisticJdbcRepository;
+    private final StatisticArchive statisticArchive;
+    private final StatisticQueryPlanner statisticQueryPlanner;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int afterDays;
+    private final int chunkSize;
+
+    public StatisticArchiveJob(StatisticArchiveRepository statisticArchiveRepository,
+                               StatisticJdbcRepository statisticJdbcRepository,
+                               StatisticArchive statisticArchive,
+                               StatisticQueryPlanner statisticQueryPlanner,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${stats.archive.enabled:false}") boolean enabled,
+                               @Value("${stats.archive.after-days:30}") int afterDays,
+                               @Value("${stats.archive.chunk-size:10000}") int chunkSize) {
+        this.statisticArchiveRepository = statisticArchiveRepository;
+        this.statisticJdbcRepository = statisticJdbcRepository;
+        this.statisticArchive = statisticArchive;
+        this.statisticQueryPlanner = statisticQueryPlanner;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.enabled = enabled;
+        this.afterDays = afterDays;
+        this.chunkSize = chunkSize;
+    }
+
+    @PostConstruct
+    public void loadWatermark() {
+        try {
+            refreshWatermark();
+        } catch (DataAccessException e) {
+            log.warn("Failed to load the archive watermark, will retry: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.archive.interval-ms:3600000}")
+    public void archive() {
+        TimeRange published = refreshWatermark();
+        if (!enabled) {
+            return;
+        }
+        boolean started = published.getTo().isAfter(LocalDateTime.MIN);
+        if (started) {
+            deleteBefore(published.getTo());
+        }
+        LocalDateTime target = LocalDate.now().minusDays(afterDays).atStartOfDay();
+        LocalDateTime compactedBefore = statisticQueryPlanner.getCompactedBefore();
+        LocalDateTime day = started
+                ? published.getTo()
+                : statisticJdbcRepository.findOldestTimestamp()
+                .map(oldest -> oldest.truncatedTo(ChronoUnit.DAYS))
+                .orElse(target);
+        if (!started && day.isBefore(compactedBefore)) {
+            day = compactedBefore.truncatedTo(ChronoUnit.DAYS);
+        }
+        LocalDateTime archivedFrom = started ? published.getFrom() : day;
+        while (day.isBefore(target)) {
+            LocalDateTime from = day;
+            LocalDateTime to = day.plusDays(1);
+            long rows = writeSegment(from, to, from.isBefore(compactedBefore));
+            // The segment is on disk by now, so the next run may delete its raw rows.
+            statisticArchiveRepository.saveWatermark(archivedFrom, to);
+            statisticArchive.setArchived(new TimeRange(archivedFrom, to));
+            log.info("Archived {} statistics from {} to {}", rows, from, to);
+            day = to;
+        }
+    }
+
+    private TimeRange refreshWatermark() {
+        TimeRange watermark = statisticArchiveRepository.findWatermark()
+                .orElse(new TimeRange(LocalDateTime.MIN, LocalDateTime.MIN));
+        statisticArchive.setArchived(watermark);
+        return watermark;
+    }
+
+    private long writeSegment(LocalDateTime from, LocalDateTime to, boolean compacted) {
+        LocalDate date = from.toLocalDate();
+        try (ColumnarSegmentWriter writer = new ColumnarSegmentWriter(statisticArchive.segmentFile(date))) {
+            if (!compacted) {
+                transactionTemplate.executeWithoutResult(status ->
+                        statisticArchiveRepository.streamHits(from, to, writer::add));
+            }
+            writer.finish();
+            statisticArchive.evict(date);
+            return writer.getRows();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to archive the statistics of " + date, e);
+        }
+    }
+
+    private void deleteBefore(LocalDateTime before) {
+        long deleted = 0;
+        int chunk;
+        do {
+            chunk = statisticJdbcRepository.deleteBefore(before, chunkSize);
+            deleted += chunk;
+        } while (chunk == chunkSize);
+        if (deleted > 0) {
+            log.info("Deleted {} archived raw statistics before {}", deleted, before);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.TimeSeriesInterval;
+import ru.practicum.repository.StatisticCompactionRepository;
+import ru.practicum.repository.StatisticJdbcRepository;
+import ru.practicum.repository.StatisticRollupRepository;
+import ru.practicum.repository.StatisticSketchRepository;
+import ru.practicum.sketch.UniqueSketch;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Downsamples raw statistics older than {@code stats.compaction.after-days} days. Day by day, the minute and
+ * hour rollups are recomputed from the raw rows and the distinct IP addresses are merged into the hour
+ * sketches; the same transaction advances the compaction watermark, which {@link StatisticQueryPlanner} uses
+ * to read that history from the aggregates only.
+ * <p>
+ * Raw rows below the watermark are deleted in chunks of {@code stats.compaction.chunk-size} rows, each in its
+ * own short transaction, one run after the watermark was published, so that no query planned against the old
+ * watermark is still reading them. Hits that arrive later with timestamps below the watermark are only counted
+ * through the rollups and sketches written along with them.
+ * <p>
+ * Compaction deletes data and is disabled by default. Instances that do not compact still pick up the
+ * watermark on every run.
+ * <p>
+ * Days that {@link StatisticArchiveJob} has already moved into the archive have no raw rows left to rebuild the
+ * rollups from; their rollups keep the counts written at ingestion, and their distinct IP addresses are read from
+ * the archive through {@link RawStatisticSource}.
+ */
+@Slf4j
+@Component
+public class StatisticCompactionJob {
+    private final StatisticCompactionRepository statisticCompactionRepository;
+    private final StatisticJdbcRepository statisticJdbcRepository;
+    private final RawStatisticSource rawStatisticSource;
+    private final StatisticRollupRepository statisticRollupRepository;
+    private final StatisticSketchRepository statisticSketchRepository;
+    private final UniqueSketchStore uniqueSketchStore;
+    private final StatisticQueryPlanner statisticQueryPlanner;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int afterDays;
+    private final int chunkSize;
+
+    public StatisticCompactionJob(StatisticCompactionRepository statisticCompactionRepository,
+                                  StatisticJdbcRepository statisticJdbcRepository,
+                                  RawStatisticSource rawStatisticSource,
+                                  StatisticRollupRepository statisticRollupRepository,
+                                  StatisticSketchRepository statisticSketchRepository,
+                                  UniqueSketchStore uniqueSketchStore,
+                                  StatisticQueryPlanner statisticQueryPlanner,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${stats.compaction.enabled:false}") boolean enabled,
+                                  @Value("${stats.compaction.after-days:90}") int afterDays,
+                                  @Value("${stats.compaction.chunk-size:10000}") int chunkSize) {
+        this.statisticCompactionRepository = statisticCompactionRepository;
+        this.statisticJdbcRepository = statisticJdbcRepository;
+        this.rawStatisticSource = rawStatisticSource;
+        this.statisticRollupRepository = statisticRollupRepository;
+        this.statisticSketchRepository = statisticSketchRepository;
+        this.uniqueSketchStore = uniqueSketchStore;
+        this.statisticQueryPlanner = statisticQueryPlanner;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.afterDays = afterDays;
+        this.chunkSize = chunkSize;
+    }
+
+    @PostConstruct
+    public void loadWatermark() {
+        try {
+            refreshWatermark();
+        } catch (DataAccessException e) {
+            log.warn("Failed to load the compaction watermark, will retry: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.compaction.interval-ms:3600000}")
+    public void compact() {
+        LocalDateTime published = refreshWatermark();
+        if (!enabled) {
+            return;
+        }
+        if (published.isAfter(LocalDateTime.MIN)) {
+            deleteBefore(published);
+        }
+        LocalDateTime target = LocalDate.now().minusDays(afterDays).atStartOfDay();
+        LocalDateTime day = published.isAfter(LocalDateTime.MIN)
+                ? published
+                : statisticJdbcRepository.findOldestTimestamp()
+                .map(oldest -> oldest.truncatedTo(ChronoUnit.DAYS))
+                .orElse(target);
+        while (day.isBefore(target)) {
+            LocalDateTime from = day;
+            LocalDateTime to = day.plusDays(1);
+            transactionTemplate.executeWithoutResult(status -> fold(from, to));
+            statisticQueryPlanner.setCompactedBefore(to);
+            log.info("Compacted statistics from {} to {}", from, to);
+            day = to;
+        }
+    }
+
+    private LocalDateTime refreshWatermark() {
+        LocalDateTime watermark = statisticCompactionRepository.findWatermark().orElse(LocalDateTime.MIN);
+        statisticQueryPlanner.setCompactedBefore(watermark);
+        return watermark;
+    }
+
+    private void fold(LocalDateTime from, LocalDateTime to) {
+        // The archive watermark is at the start of a day, so a day is either archived or still in the table.
+        if (!rawStatisticSource.splitAtArchive(from, to).isAfter(from)) {
+            statisticRollupRepository.rebuild(Granularity.MINUTE, from, to);
+            statisticRollupRepository.rebuild(Granularity.HOUR, from, to);
+        }
+        // One hour at a time keeps the distinct IP sets small.
+        for (LocalDateTime hour = from; hour.isBefore(to); hour = hour.plusHours(1)) {
+            Map<BucketKey, UniqueSketch> sketches = new TreeMap<>(BucketKey.ORDER);
+            rawStatisticSource.findDistinctBucketIps(hour, hour.plusHours(1), null, TimeSeriesInterval.HOUR,
+                    (key, ip) -> sketches.computeIfAbsent(key, k -> uniqueSketchStore.newSketch()).add(ip));
+            if (!sketches.isEmpty()) {
+                statisticSketchRepository.mergeAll(sketches);
+            }
+        }
+        statisticCompactionRepository.saveWatermark(to);
+    }
+
+    private void deleteBefore(LocalDateTime before) {
+        long deleted = 0;
+        int chunk;
+        do {
+            chunk = statisticJdbcRepository.deleteBefore(before, chunkSize);
+            deleted += chunk;
+        } while (chunk == chunkSize);
+        if (deleted > 0) {
+            log.info("Deleted {} compacted raw statistics before {}", deleted, before);
+        }
+    }
+}
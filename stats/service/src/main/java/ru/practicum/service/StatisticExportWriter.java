@@ -0,0 +1,103 @@
+package ru.practicum.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.Statistic;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+
+import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
+
+/**
+ * Writes exported statistics as NDJSON or CSV lines into a fixed-size buffer, which is passed on to the output
+ * stream whenever it fills up, so memory use does not depend on the number of rows. Archived statistics have no
+ * id, which is written as {@code null} in NDJSON and left empty in CSV.
+ */
+class StatisticExportWriter implements Flushable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExportFormat format;
+    private final Writer writer;
+    private final JsonGenerator generator;
+    private long rows;
+
+    StatisticExportWriter(ExportFormat format, OutputStream out) throws IOException {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == ExportFormat.NDJSON) {
+            generator = JSON_FACTORY.createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+        } else {
+            generator = null;
+            writer.write("id,app,uri,ip,timestamp\n");
+        }
+    }
+
+    void write(Statistic statistic) throws IOException {
+        String timestamp = statistic.getTimestamp().format(DATE_TIME_FORMAT);
+        if (format == ExportFormat.NDJSON) {
+            generator.writeStartObject();
+            if (statistic.getId() != null) {
+                generator.writeNumberField("id", statistic.getId());
+            } else {
+                generator.writeNullField("id");
+            }
+            generator.writeStringField("app", statistic.getApp());
+            generator.writeStringField("uri", statistic.getUri());
+            generator.writeStringField("ip", statistic.getIp());
+            generator.writeStringField("timestamp", timestamp);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } else {
+            if (statistic.getId() != null) {
+                writer.write(String.valueOf(statistic.getId()));
+            }
+            writer.write(',');
+            writeCsvField(statistic.getApp());
+            writer.write(',');
+            writeCsvField(statistic.getUri());
+            writer.write(',');
+            writeCsvField(statistic.getIp());
+            writer.write(',');
+            writer.write(timestamp);
+            writer.write('\n');
+        }
+        rows++;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (generator != null) {
+            generator.flush();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Quotes a field as described in RFC 4180 if it contains a separator, a quote or a line break.
+     */
+    private void writeCsvField(String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,28 @@
+package ru.practicum.service;
+
+import ru.practicum.model.Statistic;
+
+import java.util.List;
+
+/**
+ * Entry point through which accepted hits reach storage. The implementation is selected with
+ * {@code stats.ingest.mode}.
+ */
+public interface StatisticIngestion {
+    /**
+     * Accepts statistics for storage. When this method returns the statistics must not be lost,
+     * although they may not be visible to queries yet. {@link RingStatisticIngestion} relaxes this to
+     * surviving an orderly shutdown.
+     *
+     * @param statistics the statistics to store
+     */
+    void ingest(List<Statistic> statistics);
+
+    /**
+     * Returns whether {@link #ingest} may block on I/O, so that non-blocking callers must not call it on an
+     * event loop thread.
+     */
+    default boolean isBlocking() {
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.RetentionAction;
+import ru.practicum.repository.StatisticPartitionRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+/**
+ * Keeps the range partitions of {@code statistics} in shape: partitions for the upcoming days or months are
+ * created ahead of time, and partitions that fall out of the retention period are detached or dropped as a
+ * whole instead of being emptied with {@code DELETE}.
+ * <p>
+ * Hits of days or months without a partition, such as the history from before partitioning or hits far in
+ * the future, land in {@code statistics_default}. They are moved into partitions of their own before new
+ * partitions are created, since a partition cannot be created while the default one holds rows of its range.
+ * Rows of ranges that are already out of the retention period are dropped right away, or moved into a
+ * detached table, following the retention action.
+ * <p>
+ * Retention only applies to raw hits; the rollups and unique visitor sketches are kept.
+ */
+@Slf4j
+@Component
+public class StatisticPartitionManager {
+    private static final String PREFIX = "statistics_p";
+
+    private final StatisticPartitionRepository statisticPartitionRepository;
+    private final ChronoUnit interval;
+    private final DateTimeFormatter nameFormatter;
+    private final int precreate;
+    private final int retentionDays;
+    private final RetentionAction retentionAction;
+
+    public StatisticPartitionManager(StatisticPartitionRepository statisticPartitionRepository,
+                                     @Value("${stats.partition.interval:DAYS}") ChronoUnit interval,
+                                     @Value("${stats.partition.precreate:7}") int precreate,
+                                     @Value("${stats.partition.retention-days:0}") int retentionDays,
+                                     @Value("${stats.partition.retention-action:DETACH}") RetentionAction retentionAction) {
+        if (interval != ChronoUnit.DAYS && interval != ChronoUnit.MONTHS) {
+            throw new IllegalArgumentException("Statistics can only be partitioned by DAYS or MONTHS, got " + interval);
+        }
+        this.statisticPartitionRepository = statisticPartitionRepository;
+        this.interval = interval;
+        this.nameFormatter = DateTimeFormatter.ofPattern(interval == ChronoUnit.DAYS ? "yyyyMMdd" : "yyyyMM");
+        this.precreate = precreate;
+        this.retentionDays = retentionDays;
+        this.retentionAction = retentionAction;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${stats.partition.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        moveDefaultRows();
+        createPartitions();
+        if (retentionDays > 0) {
+            expirePartitions();
+        }
+    }
+
+    private void moveDefaultRows() {
+        LocalDateTime cutoff = retentionCutoff();
+        for (LocalDateTime start : statisticPartitionRepository.findDefaultStarts(
+                interval == ChronoUnit.DAYS ? "day" : "month")) {
+            LocalDate from = start.toLocalDate();
+            LocalDateTime to = from.plus(1, interval).atStartOfDay();
+            String name = PREFIX + nameFormatter.format(from);
+            try {
+                boolean expired = !to.isAfter(cutoff);
+                int rows = expired && retentionAction == RetentionAction.DROP
+                        ? statisticPartitionRepository.deleteFromDefault(from.atStartOfDay(), to)
+                        : statisticPartitionRepository.moveFromDefault(name, from.atStartOfDay(), to, !expired);
+                log.info("Moved {} statistics of {} out of the default partition{}", rows, name,
+                        expired ? " (" + retentionAction + ")" : "");
+            } catch (DataAccessException e) {
+                log.warn("Failed to move statistics of {} out of the default partition: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private void createPartitions() {
+        LocalDate start = partitionStart(LocalDate.now());
+        for (int i = 0; i <= precreate; i++) {
+            LocalDate from = start.plus(i, interval);
+            String name = PREFIX + nameFormatter.format(from);
+            try {
+                statisticPartitionRepository.createPartition(name, from.atStartOfDay(),
+                        from.plus(1, interval).atStartOfDay());
+            } catch (DataAccessException e) {
+                // Happens when the default partition already holds rows of this range.
+                log.warn("Failed to create statistics partition {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private void expirePartitions() {
+        LocalDateTime cutoff = retentionCutoff();
+        for (String name : statisticPartitionRepository.findPartitions()) {
+            Optional<LocalDate> from = parseStart(name);
+            if (from.isEmpty() || from.get().plus(1, interval).atStartOfDay().isAfter(cutoff)) {
+                continue;
+            }
+            statisticPartitionRepository.detachPartition(name);
+            if (retentionAction == RetentionAction.DROP) {
+                statisticPartitionRepository.dropTable(name);
+            }
+            log.info("Expired statistics partition {} ({})", name, retentionAction);
+        }
+    }
+
+    /**
+     * Returns the start of the retention period, before which partitions expire, or the earliest time if
+     * retention is disabled.
+     */
+    private LocalDateTime retentionCutoff() {
+        return retentionDays > 0 ? LocalDate.now().minusDays(retentionDays).atStartOfDay() : LocalDateTime.MIN;
+    }
+
+    private LocalDate partitionStart(LocalDate date) {
+        return interval == ChronoUnit.DAYS ? date : date.withDayOfMonth(1);
+    }
+
+    private Optional<LocalDate> parseStart(String name) {
+        if (!name.startsWith(PREFIX)) {
+            return Optional.empty();
+        }
+        String suffix = name.substring(PREFIX.length());
+        try {
+            return Optional.of(interval == ChronoUnit.DAYS
+                    ? LocalDate.parse(suffix, nameFormatter)
+                    : LocalDate.parse(suffix + "01", DateTimeFormatter.BASIC_ISO_DATE));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ru.practicum.service;
+
+import lombok.experimental.UtilityClass;
+import ru.practicum.exception.BadRequestException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Checks and normalizes the parameters of view statistics queries the same way for the blocking and the
+ * reactive services and for background jobs.
+ */
+@UtilityClass
+public class StatisticQueries {
+    /**
+     * Strips the brackets that some clients put around the URIs, and treats no URIs as all of them.
+     *
+     * @return the URIs, or {@code null} for all of them
+     */
+    public List<String> normalizeUris(List<String> uri) {
+        if (Objects.isNull(uri) || uri.isEmpty()) {
+            return null;
+        }
+        return uri.stream()
+                .map(s -> s.replace("[", "").replace("]", ""))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the exclusive end of a range whose inclusive end is given to the second.
+     */
+    public LocalDateTime toExclusive(LocalDateTime end) {
+        return end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+    }
+
+    public void checkTime(LocalDateTime start, LocalDateTime end) {
+        if (end.isBefore(start)) {
+            throw new BadRequestException("End cannot early start");
+        }
+    }
+
+    public void checkLimit(Integer limit) {
+        if (Objects.nonNull(limit) && limit <= 0) {
+            throw new BadRequestException("Limit must be positive");
+        }
+    }
+}
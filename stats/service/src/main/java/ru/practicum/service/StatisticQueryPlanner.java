@@ -0,0 +1,149 @@
+package ru.practicum.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.TimeSegment;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Splits a time range into segments answered from the coarsest rollup buckets that fit entirely inside it.
+ * Only the ragged edges that do not cover a whole bucket are left to the raw statistics table.
+ * <p>
+ * Raw hits older than the compaction watermark have been folded into the rollups and hour sketches and
+ * deleted, see {@link StatisticCompactionJob}. That part of a range is always planned over buckets, with its
+ * edges rounded to the buckets that start within the range.
+ */
+@Component
+public class StatisticQueryPlanner {
+    private static final Granularity[] ROLLUPS = {Granularity.HOUR, Granularity.MINUTE};
+    private static final Granularity[] NONE = {};
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupEnabled;
+
+    private volatile LocalDateTime compactedBefore = LocalDateTime.MIN;
+
+    /**
+     * Plans the half-open range {@code [from, to)} over the hit count rollups.
+     *
+     * @param from the inclusive start of the range
+     * @param to   the exclusive end of the range
+     * @return non-overlapping segments ordered by time
+     */
+    public List<TimeSegment> plan(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, ROLLUPS, rollupEnabled ? ROLLUPS : NONE);
+    }
+
+    /**
+     * Plans the half-open range {@code [from, to)} over the hit count rollups that are no coarser than the given
+     * unit, so that every rollup bucket falls into exactly one bucket of that unit.
+     *
+     * @param from       the inclusive start of the range
+     * @param to         the exclusive end of the range
+     * @param bucketUnit the unit of the buckets the hits are grouped into
+     * @return non-overlapping segments ordered by time
+     */
+    public List<TimeSegment> planBuckets(LocalDateTime from, LocalDateTime to, ChronoUnit bucketUnit) {
+        Granularity[] rollups = Stream.of(ROLLUPS)
+                .filter(granularity -> granularity.getUnit().getDuration().compareTo(bucketUnit.getDuration()) <= 0)
+                .toArray(Granularity[]::new);
+        return plan(from, to, rollups, rollupEnabled ? rollups : NONE);
+    }
+
+    /**
+     * Plans the half-open range {@code [from, to)} over the given bucket granularities.
+     *
+     * @param from          the inclusive start of the range
+     * @param to            the exclusive end of the range
+     * @param granularities the available bucket granularities, coarsest first
+     * @return non-overlapping segments ordered by time
+     */
+    public List<TimeSegment> plan(LocalDateTime from, LocalDateTime to, Granularity... granularities) {
+        return plan(from, to, granularities.length > 0 ? granularities : new Granularity[]{Granularity.HOUR},
+                granularities);
+    }
+
+    /**
+     * Plans the half-open range {@code [from, to)} over the raw statistics table, except for compacted history,
+     * which is planned over hour buckets.
+     *
+     * @param from the inclusive start of the range
+     * @param to   the exclusive end of the range
+     * @return non-overlapping segments ordered by time
+     */
+    public List<TimeSegment> planRaw(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, NONE);
+    }
+
+    /**
+     * Returns whether part of a range starting at the given time has been compacted.
+     */
+    public boolean isCompacted(LocalDateTime from) {
+        return from.isBefore(compactedBefore);
+    }
+
+    public LocalDateTime getCompactedBefore() {
+        return compactedBefore;
+    }
+
+    /**
+     * Publishes a new compaction watermark. Must only be called once the aggregates below it are committed.
+     *
+     * @param compactedBefore the exclusive end of the compacted history
+     */
+    public void setCompactedBefore(LocalDateTime compactedBefore) {
+        this.compactedBefore = compactedBefore;
+    }
+
+    private List<TimeSegment> plan(LocalDateTime from, LocalDateTime to, Granularity[] compacted,
+                                   Granularity[] granularities) {
+        List<TimeSegment> segments = new ArrayList<>();
+        LocalDateTime watermark = compactedBefore;
+        if (from.isBefore(watermark)) {
+            // Raw hits are gone here, so the edges are rounded to whole buckets of the finest granularity.
+            Granularity finest = compacted[compacted.length - 1];
+            LocalDateTime split = to.isBefore(watermark) ? to : watermark;
+            plan(ceil(from, finest), ceil(split, finest), compacted, 0, segments);
+            from = split;
+        }
+        if (from.isBefore(to)) {
+            plan(from, to, granularities, 0, segments);
+        }
+        return segments;
+    }
+
+    private void plan(LocalDateTime from, LocalDateTime to, Granularity[] granularities, int level,
+                      List<TimeSegment> segments) {
+        if (level == granularities.length) {
+            addSegment(segments, Granularity.RAW, from, to);
+            return;
+        }
+        Granularity granularity = granularities[level];
+        LocalDateTime alignedFrom = ceil(from, granularity);
+        LocalDateTime alignedTo = to.truncatedTo(granularity.getUnit());
+        if (!alignedFrom.isBefore(alignedTo)) {
+            plan(from, to, granularities, level + 1, segments);
+            return;
+        }
+        plan(from, alignedFrom, granularities, level + 1, segments);
+        addSegment(segments, granularity, alignedFrom, alignedTo);
+        plan(alignedTo, to, granularities, level + 1, segments);
+    }
+
+    private void addSegment(List<TimeSegment> segments, Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            segments.add(new TimeSegment(granularity, from, to));
+        }
+    }
+
+    private LocalDateTime ceil(LocalDateTime dateTime, Granularity granularity) {
+        LocalDateTime floor = dateTime.truncatedTo(granularity.getUnit());
+        return floor.equals(dateTime) ? floor : floor.plus(1, granularity.getUnit());
+    }
+}
@@ -0,0 +1,143 @@
+package ru.practicum.service;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.ViewStatsDto;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches the view statistics of time ranges that lie entirely in the settled past, which is everything older
+ * than {@code stats.cache.settle-seconds} seconds rounded down to a whole minute. The rounding keeps the
+ * settled part of a range ending now the same for a whole minute, so dashboard refreshes keep hitting one
+ * entry.
+ * <p>
+ * Entries are evicted in least recently used order once the cached results hold more than
+ * {@code stats.cache.max-rows} rows, and expire after {@code stats.cache.ttl-ms} milliseconds, which bounds
+ * how long hits that arrive late with old timestamps stay invisible. Concurrent misses of the same range are
+ * computed independently.
+ * <p>
+ * Only queries restricted to URIs are cached. Unfiltered results are bounded by their limit alone, and
+ * caching them in full would load every URI of the range into memory.
+ */
+@Slf4j
+@Component
+public class StatisticResultCache {
+    private final boolean enabled;
+    private final long settleSeconds;
+    private final long ttlNanos;
+    private final long maxRows;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long rows;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public StatisticResultCache(@Value("${stats.cache.enabled:true}") boolean enabled,
+                                @Value("${stats.cache.settle-seconds:60}") long settleSeconds,
+                                @Value("${stats.cache.ttl-ms:300000}") long ttlMs,
+                                @Value("${stats.cache.max-rows:100000}") long maxRows) {
+        this.enabled = enabled;
+        this.settleSeconds = settleSeconds;
+        this.ttlNanos = ttlMs * 1_000_000;
+        this.maxRows = maxRows;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the exclusive end of the settled past, aligned to a minute.
+     */
+    public LocalDateTime settledBefore() {
+        return LocalDateTime.now().minusSeconds(settleSeconds).truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    /**
+     * Returns the cached statistics of a settled range, or loads and caches them.
+     *
+     * @param from   the inclusive start of the range
+     * @param to     the exclusive end of the range, no later than {@link #settledBefore()}
+     * @param uris   the URIs of the request, or {@code null} for all of them
+     * @param unique whether unique hits are requested
+     * @param loader computes the statistics of the range, without a limit
+     * @return the statistics, which must not be modified
+     */
+    public List<ViewStatsDto> get(LocalDateTime from, LocalDateTime to, List<String> uris, boolean unique,
+                                  Supplier<List<ViewStatsDto>> loader) {
+        List<String> sortedUris = null;
+        if (Objects.nonNull(uris)) {
+            sortedUris = new ArrayList<>(uris);
+            Collections.sort(sortedUris);
+        }
+        Key key = new Key(from, to, sortedUris, unique);
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (Objects.nonNull(entry) && now - entry.loadedAt <= ttlNanos) {
+                hits.increment();
+                return entry.results;
+            }
+        }
+        misses.increment();
+        List<ViewStatsDto> results = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        if (results.size() <= maxRows) {
+            put(key, new Entry(results, now));
+        }
+        return results;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        rows += entry.results.size() - (Objects.isNull(previous) ? 0 : previous.results.size());
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (rows > maxRows && eldest.hasNext()) {
+            rows -= eldest.next().getValue().results.size();
+            eldest.remove();
+        }
+        log.debug("Cached view statistics of {}, {} entries with {} rows, {} hits, {} misses", key, entries.size(),
+                rows, getHits(), getMisses());
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class Key {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final List<String> uris;
+        private final boolean unique;
+
+        @Override
+        public String toString() {
+            return "[" + from + ", " + to + ")" + (unique ? " unique" : "");
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final List<ViewStatsDto> results;
+        private final long loadedAt;
+    }
+}
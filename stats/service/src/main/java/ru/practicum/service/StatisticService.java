@@ -1,8 +1,14 @@
 package ru.practicum.service;
 
+import ru.practicum.aggregation.HitConsumer;
 import ru.practicum.dto.EndpointDto;
+import ru.practicum.dto.HitBatchAckDto;
+import ru.practicum.dto.TimeSeriesDto;
 import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.Statistic;
 
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -11,9 +17,27 @@ public interface StatisticService {
      * Creates a statistic record for the specified endpoint.
      *
      * @param endpointDto the DTO object representing the endpoint information
+     * @throws ru.practicum.exception.BadRequestException if the hit is invalid
      */
     void createStatistic(EndpointDto endpointDto);
 
+    /**
+     * Creates statistic records for a batch of endpoint hits in a single transaction.
+     *
+     * @param endpointDtos the hits to store
+     * @return an acknowledgement with the number of received and stored hits
+     * @throws ru.practicum.exception.BadRequestException if any of the hits is invalid, in which case none is stored
+     */
+    HitBatchAckDto createStatistics(List<EndpointDto> endpointDtos);
+
+    /**
+     * Stores already decoded statistics in a single transaction.
+     *
+     * @param statistics the statistics to store
+     * @return an acknowledgement with the number of received and stored hits
+     */
+    HitBatchAckDto storeStatistics(List<Statistic> statistics);
+
     /**
      * Retrieves a list of ViewStatsDto objects based on the specified start and end dates, uniqueness flag, and URI filter.
      *
@@ -21,7 +45,88 @@ public interface StatisticService {
      * @param end    The end date of the statistics range.
      * @param unique A boolean flag indicating whether to return unique statistics.
      * @param uri    A list of URIs to filter the statistics by. Only the statistics for the specified URIs will be included in the result.
-     * @return A list of ViewStatsDto objects representing the view statistics for the specified period, uniqueness flag, and URI filter.
+     * @param limit  The maximum number of returned entries, or {@code null} for all of them.
+     * @return A list of ViewStatsDto objects representing the view statistics for the specified period, uniqueness flag, and URI filter,
+     * ordered by hits in descending order.
+     */
+    List<ViewStatsDto> getAllViewStatsDto(LocalDateTime start, LocalDateTime end, boolean unique, List<String> uri,
+                                          Integer limit);
+
+    /**
+     * Retrieves unique view statistics like {@link #getAllViewStatsDto} together with the serialized sketch of the
+     * visitors of every app and URI, so that a client can merge the unique hits of several stats servers.
+     *
+     * @param start The start date of the statistics range.
+     * @param end   The end date of the statistics range.
+     * @param uri   A list of URIs to filter the statistics by.
+     * @return A list of ViewStatsDto objects with unique hits and their sketches, ordered by hits in descending order.
+     */
+    List<ViewStatsDto> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uri);
+
+    /**
+     * Streams the hit counts of all apps and URIs within the given time range, keyed by their dictionary keys,
+     * for callers that sum them up further, e.g. in a {@link ru.practicum.aggregation.HitAggregator}. The same
+     * app and URI may be reported more than once.
+     *
+     * @param start    the start of the time range
+     * @param end      the end of the time range
+     * @param consumer receives the hit counts
+     */
+    void streamViews(LocalDateTime start, LocalDateTime end, HitConsumer consumer);
+
+    /**
+     * Estimates view statistics like {@link #getAllViewStatsDto} from a sample of the raw hits. Parts of the
+     * range answered by rollups or sketches stay exact; only raw table scans are replaced by samples, whose
+     * counts are scaled up and reported with a 95% confidence interval.
+     *
+     * @param start  The start date of the statistics range.
+     * @param end    The end date of the statistics range.
+     * @param unique A boolean flag indicating whether to return unique statistics.
+     * @param uri    A list of URIs to filter the statistics by.
+     * @param limit  The maximum number of returned entries, or {@code null} for all of them.
+     * @param sample The sampled fraction of raw hits, greater than 0 and at most 1.
+     * @return A list of ViewStatsDto objects with estimated hits and their confidence bounds, ordered by hits in
+     * descending order.
+     */
+    List<ViewStatsDto> getSampledViewStatsDto(LocalDateTime start, LocalDateTime end, boolean unique, List<String> uri,
+                                              Integer limit, double sample);
+
+    /**
+     * Retrieves the most visited apps and URIs of a recent sliding window. Hit counts are estimates that may
+     * exceed the exact count slightly, but never fall below it.
+     *
+     * @param window the window code: {@code 5m}, {@code 1h} or {@code 1d}
+     * @param limit  the maximum number of returned entries
+     * @return the trending apps and URIs, ordered by hits in descending order
+     */
+    List<ViewStatsDto> getTrending(String window, int limit);
+
+    /**
+     * Retrieves hits and unique hits per time bucket for each app and URI within the given range. Buckets are
+     * aligned to the interval, so the first and last bucket may only partly lie within the range.
+     *
+     * @param start    the start of the range
+     * @param end      the end of the range
+     * @param uris     the URIs to retrieve the series for
+     * @param interval the bucket width: {@code minute}, {@code hour} or {@code day}
+     * @param unique   whether to count hits from distinct IP addresses as well
+     * @return one series per app and URI with hits, each with a point for every bucket of the range
+     */
+    List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String interval,
+                                      boolean unique);
+
+    /**
+     * Writes the raw statistics matching the filters to the output stream, reading them through a database
+     * cursor so that memory use does not depend on the size of the export.
+     *
+     * @param start  the start of the range, or {@code null} for no lower bound
+     * @param end    the end of the range, or {@code null} for no upper bound
+     * @param app    the app to export, or {@code null} for all of them
+     * @param uris   the URIs to export, or {@code null} for all of them
+     * @param format the output format
+     * @param out    the stream to write to
+     * @return the number of exported statistics
      */
-    List<ViewStatsDto> getAllViewStatsDto(LocalDateTime start, LocalDateTime end, boolean unique, List<String> uri);
+    long exportStatistics(LocalDateTime start, LocalDateTime end, String app, List<String> uris, ExportFormat format,
+                          OutputStream out);
 }
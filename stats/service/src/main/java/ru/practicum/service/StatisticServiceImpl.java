@@ -2,87 +2,591 @@ package ru.practicum.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.aggregation.HitAggregator;
+import ru.practicum.aggregation.HitConsumer;
 import ru.practicum.dto.EndpointDto;
+import ru.practicum.dto.HitBatchAckDto;
+import ru.practicum.dto.TimeSeriesDto;
+import ru.practicum.dto.TimeSeriesPointDto;
 import ru.practicum.dto.ViewStatsDto;
 import ru.practicum.exception.BadRequestException;
 import ru.practicum.mapper.StatisticMapper;
-import ru.practicum.model.StatisticProjection;
-import ru.practicum.repository.StatisticRepository;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketHits;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeRange;
+import ru.practicum.model.TimeSeriesInterval;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.model.TrendingPeriod;
+import ru.practicum.repository.StatisticAggregateRepository;
+import ru.practicum.repository.StatisticDictionary;
+import ru.practicum.repository.StatisticJdbcRepository;
+import ru.practicum.repository.StatisticRollupRepository;
+import ru.practicum.sketch.UniqueSketch;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRED)
 public class StatisticServiceImpl implements StatisticService {
-    private final StatisticRepository statisticRepository;
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER);
+    /**
+     * Standard normal quantile of a two-sided 95% confidence interval.
+     */
+    private static final double CONFIDENCE_Z = 1.96;
+
+    private final StatisticJdbcRepository statisticJdbcRepository;
+    private final StatisticRollupRepository statisticRollupRepository;
+    private final StatisticAggregateRepository statisticAggregateRepository;
+    private final RawStatisticSource rawStatisticSource;
+    private final StatisticDictionary statisticDictionary;
+    private final StatisticQueryPlanner statisticQueryPlanner;
+    private final StatisticIngestion statisticIngestion;
+    private final HitDeduplicator hitDeduplicator;
+    private final HitValidator hitValidator;
+    private final UniqueSketchStore uniqueSketchStore;
+    private final HotCounterStore hotCounterStore;
+    private final TrendingStore trendingStore;
+    private final StatisticResultCache statisticResultCache;
     private final StatisticMapper statisticMapper;
 
-    @Transactional
+    @Value("${stats.timeseries.max-buckets:10000}")
+    private int maxTimeSeriesBuckets;
+
+    @Value("${stats.aggregation.enabled:true}")
+    private boolean aggregationEnabled;
+
+    @Value("${stats.aggregation.memory-budget-mb:64}")
+    private long aggregationBudgetMb;
+
+    @Value("${stats.aggregation.spill-directory:${java.io.tmpdir}}")
+    private String spillDirectory;
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
     public void createStatistic(EndpointDto endpointDto) {
         log.debug("Creating statistic for endpoint: {}", endpointDto);
-        statisticRepository.save(statisticMapper.toEndpointDto(endpointDto));
+        hitValidator.validate(List.of(endpointDto));
+        List<Statistic> statistics = hitDeduplicator.filter(List.of(statisticMapper.toEndpointDto(endpointDto)));
+        if (statistics.isEmpty()) {
+            log.debug("Dropped repeated statistic for endpoint: {}", endpointDto);
+            return;
+        }
+        store(statistics);
         log.info("Statistic created successfully for endpoint: {}", endpointDto);
     }
 
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public HitBatchAckDto createStatistics(List<EndpointDto> endpointDtos) {
+        log.debug("Creating {} statistics", endpointDtos.size());
+        hitValidator.validate(endpointDtos);
+        HitBatchAckDto ack = ingest(statisticMapper.toStatistics(endpointDtos));
+        log.info("Statistics created successfully: {} of {}", ack.getStored(), ack.getReceived());
+        return ack;
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public HitBatchAckDto storeStatistics(List<Statistic> statistics) {
+        log.debug("Storing {} decoded statistics", statistics.size());
+        return ingest(statistics);
+    }
+
+    @Override
+    public List<ViewStatsDto> getAllViewStatsDto(LocalDateTime start, LocalDateTime end, boolean unique, List<String> uri,
+                                                 Integer limit) {
+        log.debug("Requesting view statistics from {} to {}, unique: {}, for URIs: {}, limit: {}",
+                start, end, unique, uri, limit);
+        StatisticQueries.checkTime(start, end);
+        StatisticQueries.checkLimit(limit);
+        List<String> uris = StatisticQueries.normalizeUris(uri);
+
+        LocalDateTime to = StatisticQueries.toExclusive(end);
+        List<ViewStatsDto> results;
+        // Unfiltered results may hold millions of URIs: they are aggregated within a memory budget down to the
+        // limit instead, which a cached full result would defeat.
+        LocalDateTime settled = statisticResultCache.isEnabled() && Objects.nonNull(uris)
+                ? statisticResultCache.settledBefore()
+                : start;
+        if (!to.isAfter(settled)) {
+            results = statisticResultCache.get(start, to, uris, unique, () -> countViews(start, to, unique, uris, null))
+                    .stream()
+                    .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
+                    .collect(Collectors.toList());
+        } else if (!unique && start.isBefore(settled)) {
+            // Hits add up across ranges, so only the live tail after the settled past is computed on every call.
+            List<ViewStatsDto> history = statisticResultCache.get(start, settled, uris, false,
+                    () -> countViews(start, settled, false, uris, null));
+            results = mergeHits(history, countViews(settled, to, false, uris, null), limit);
+        } else {
+            results = countViews(start, to, unique, uris, limit);
+        }
+        log.info("Retrieved statistics from {} to {}: {}", start, end, results.size());
+        return results;
+    }
+
     @Override
-    public List<ViewStatsDto> getAllViewStatsDto(LocalDateTime start, LocalDateTime end, boolean unique, List<String> uri) {
-        log.debug("Requesting view statistics from {} to {}, unique: {}, for URIs: {}", start, end, unique, uri);
-        checkTime(start, end);
-        List<String> stringList = uri.parallelStream()
-                .map(s -> s.replace("[", "").replace("]", ""))
+    public List<ViewStatsDto> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uri) {
+        log.debug("Requesting visitor sketches from {} to {} for URIs: {}", start, end, uri);
+        StatisticQueries.checkTime(start, end);
+        List<String> uris = StatisticQueries.normalizeUris(uri);
+        LocalDateTime to = StatisticQueries.toExclusive(end);
+        List<TimeSegment> segments = uniqueSketchStore.isEnabled()
+                ? statisticQueryPlanner.plan(start, to, Granularity.HOUR)
+                : statisticQueryPlanner.planRaw(start, to);
+        Base64.Encoder encoder = Base64.getEncoder();
+        List<ViewStatsDto> results = collectUniqueSketches(segments, uris).entrySet().stream()
+                .map(entry -> ViewStatsDto.builder()
+                        .app(entry.getKey().getApp())
+                        .uri(entry.getKey().getUri())
+                        .hits(entry.getValue().cardinality())
+                        .sketch(encoder.encodeToString(entry.getValue().toBytes()))
+                        .build())
+                .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
                 .collect(Collectors.toList());
+        log.info("Retrieved visitor sketches from {} to {}: {}", start, end, results.size());
+        return results;
+    }
+
+    @Override
+    public void streamViews(LocalDateTime start, LocalDateTime end, HitConsumer consumer) {
+        log.debug("Streaming view statistics from {} to {}", start, end);
+        StatisticQueries.checkTime(start, end);
+        streamPlannedHits(statisticQueryPlanner.plan(start, StatisticQueries.toExclusive(end)), consumer);
+    }
+
+    @Override
+    public List<ViewStatsDto> getSampledViewStatsDto(LocalDateTime start, LocalDateTime end, boolean unique,
+                                                     List<String> uri, Integer limit, double sample) {
+        log.debug("Requesting view statistics sampled at {} from {} to {}, unique: {}, for URIs: {}, limit: {}",
+                sample, start, end, unique, uri, limit);
+        StatisticQueries.checkTime(start, end);
+        StatisticQueries.checkLimit(limit);
+        if (!(sample > 0 && sample <= 1)) {
+            throw new BadRequestException("Sample must be greater than 0 and at most 1");
+        }
+        List<String> uris = StatisticQueries.normalizeUris(uri);
 
-        List<StatisticProjection> allByTimestampBetween;
-        if (uri.isEmpty() || uri == null) {
-            allByTimestampBetween = unique ? statisticRepository.findAllByTimestampBetween(start, end)
-                    : statisticRepository.findAllStatisticProjectionByTimestampBetween(start, end);
+        LocalDateTime to = StatisticQueries.toExclusive(end);
+        Map<AppUri, Long> exact = new HashMap<>();
+        Map<AppUri, Long> sampled = new HashMap<>();
+        if (unique) {
+            List<TimeSegment> segments = uniqueSketchStore.isEnabled()
+                    ? statisticQueryPlanner.plan(start, to, Granularity.HOUR)
+                    : statisticQueryPlanner.planRaw(start, to);
+            if (segments.size() == 1 && segments.get(0).getGranularity() == Granularity.RAW
+                    && !reachesArchive(segments.get(0))) {
+                mergeViews(sampled, statisticJdbcRepository.countSampledHits(segments.get(0).getFrom(),
+                        segments.get(0).getTo(), uris, true, sample));
+            } else {
+                // Sketches answer without a scan over distinct IPs, sampling would not save anything. Archived
+                // addresses are read in full as well, distinct counts do not add up across archive and database.
+                mergeViews(exact, countPlannedUniqueHits(segments, uris, null));
+            }
         } else {
-            allByTimestampBetween = unique ?
-                    statisticRepository.findAllStatisticProjectionByTimestampBetweenAndUri(start, end, stringList)
-                    : statisticRepository.findAllStatisticProjectionByTimestampBetweenAndUriIn(start, end, stringList);
+            for (TimeSegment segment : statisticQueryPlanner.plan(start, to)) {
+                log.debug("Reading segment {}", segment);
+                if (segment.getGranularity() == Granularity.RAW) {
+                    // The archive is read in full: a scan of the segments costs little, and sampling it would not.
+                    LocalDateTime split = rawStatisticSource.splitAtArchive(segment.getFrom(), segment.getTo());
+                    if (split.isAfter(segment.getFrom())) {
+                        mergeViews(exact, rawStatisticSource.countHits(segment.getFrom(), split, uris));
+                    }
+                    if (split.isBefore(segment.getTo())) {
+                        mergeViews(sampled, statisticJdbcRepository.countSampledHits(split, segment.getTo(), uris,
+                                false, sample));
+                    }
+                } else {
+                    mergeViews(exact, statisticRollupRepository.countHits(segment.getGranularity(), segment.getFrom(),
+                            segment.getTo(), uris));
+                }
+            }
+        }
+        List<ViewStatsDto> results = estimateHits(exact, sampled, sample, limit);
+        log.info("Estimated statistics from {} to {}: {}", start, end, results.size());
+        return results;
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public List<ViewStatsDto> getTrending(String window, int limit) {
+        TrendingPeriod period = TrendingPeriod.fromCode(window)
+                .orElseThrow(() -> new BadRequestException("Unknown trending window: " + window));
+        if (!trendingStore.isEnabled()) {
+            throw new BadRequestException("Trending is disabled");
+        }
+        if (limit <= 0 || limit > trendingStore.getCapacity()) {
+            throw new BadRequestException("Limit must be between 1 and " + trendingStore.getCapacity());
         }
+        return trendingStore.top(period, limit);
+    }
 
-        List<ViewStatsDto> results = findUnique(allByTimestampBetween);
-        log.info("Retrieved statistics from {} to {}: {}", start, end, results.size());
+    @Override
+    public List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uri, String interval,
+                                             boolean unique) {
+        log.debug("Requesting {} time series from {} to {}, unique: {}, for URIs: {}", interval, start, end, unique, uri);
+        StatisticQueries.checkTime(start, end);
+        TimeSeriesInterval bucketInterval = TimeSeriesInterval.fromCode(interval)
+                .orElseThrow(() -> new BadRequestException("Unknown interval: " + interval));
+        List<String> uris = StatisticQueries.normalizeUris(uri);
+        if (Objects.isNull(uris)) {
+            throw new BadRequestException("URIs must not be empty");
+        }
+        LocalDateTime to = StatisticQueries.toExclusive(end);
+        List<LocalDateTime> buckets = bucketStarts(start, to, bucketInterval.getUnit());
+
+        Map<BucketKey, Long> hits = new HashMap<>();
+        Map<BucketKey, Long> uniqueHits = new HashMap<>();
+        boolean compacted = statisticQueryPlanner.isCompacted(start);
+        boolean sketched = unique && bucketInterval != TimeSeriesInterval.MINUTE
+                && (uniqueSketchStore.isEnabled() || compacted);
+        if (unique && !sketched && !compacted) {
+            // Distinct IPs per bucket need the raw rows, and the same grouped scan yields the hits as well.
+            for (BucketHits row : rawStatisticSource.countBucketHits(start, to, uris, bucketInterval, true)) {
+                hits.put(row.getKey(), row.getHits());
+                uniqueHits.put(row.getKey(), row.getUniqueHits());
+            }
+        } else {
+            if (sketched) {
+                uniqueHits.putAll(countBucketUniqueHits(start, to, uris, bucketInterval));
+            } else if (unique) {
+                // Per-minute unique counts of compacted history are gone, only the raw tail has them.
+                LocalDateTime rawFrom = statisticQueryPlanner.getCompactedBefore();
+                if (rawFrom.isBefore(to)) {
+                    rawStatisticSource.countBucketHits(rawFrom, to, uris, bucketInterval, true)
+                            .forEach(row -> uniqueHits.put(row.getKey(), row.getUniqueHits()));
+                }
+            }
+            for (TimeSegment segment : statisticQueryPlanner.planBuckets(start, to, bucketInterval.getUnit())) {
+                log.debug("Reading segment {}", segment);
+                List<BucketHits> partial = segment.getGranularity() == Granularity.RAW
+                        ? rawStatisticSource.countBucketHits(segment.getFrom(), segment.getTo(), uris,
+                        bucketInterval, false)
+                        : statisticRollupRepository.countBucketHits(segment.getGranularity(), segment.getFrom(),
+                        segment.getTo(), uris, bucketInterval);
+                partial.forEach(row -> hits.merge(row.getKey(), row.getHits(), Long::sum));
+            }
+        }
+        List<TimeSeriesDto> results = toTimeSeries(buckets, uris, hits, unique ? uniqueHits : null);
+        log.info("Retrieved {} time series from {} to {}: {}", interval, start, end, results.size());
         return results;
     }
 
-    private List<ViewStatsDto> findUnique(List<StatisticProjection> statisticProjections) {
-        Map<String, ViewStatsDto> viewStatsDtoMap = new LinkedHashMap<>();
+    @Override
+    public long exportStatistics(LocalDateTime start, LocalDateTime end, String app, List<String> uri,
+                                 ExportFormat format, OutputStream out) {
+        log.debug("Exporting statistics from {} to {} as {}, app: {}, for URIs: {}", start, end, format, app, uri);
+        if (Objects.nonNull(start) && Objects.nonNull(end)) {
+            StatisticQueries.checkTime(start, end);
+        }
+        try {
+            StatisticExportWriter writer = new StatisticExportWriter(format, out);
+            rawStatisticSource.streamStatistics(start, Objects.isNull(end) ? null : StatisticQueries.toExclusive(end), app,
+                    StatisticQueries.normalizeUris(uri), statistic -> {
+                        try {
+                            writer.write(statistic);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            writer.flush();
+            log.info("Exported {} statistics from {} to {}", writer.getRows(), start, end);
+            return writer.getRows();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<ViewStatsDto> countViews(LocalDateTime start, LocalDateTime to, boolean unique, List<String> uris,
+                                          Integer limit) {
+        Optional<TimeRange> hot = Optional.empty();
+        List<TimeSegment> segments;
+        if (unique) {
+            segments = uniqueSketchStore.isEnabled()
+                    ? statisticQueryPlanner.plan(start, to, Granularity.HOUR)
+                    : statisticQueryPlanner.planRaw(start, to);
+        } else {
+            // Unfiltered ranges may hold millions of URIs, so they are read from the database only and aggregated
+            // by dictionary keys within a memory budget.
+            hot = Objects.isNull(uris) && aggregationEnabled ? Optional.empty() : hotCounterStore.cover(start, to);
+            segments = hot.isPresent() ? planAround(start, to, hot.get()) : statisticQueryPlanner.plan(start, to);
+        }
+        if (hot.isEmpty() && segments.size() == 1 && segments.get(0).getGranularity() == Granularity.RAW) {
+            return countRawHits(segments.get(0), unique, uris, limit);
+        } else if (unique) {
+            return countPlannedUniqueHits(segments, uris, limit);
+        } else if (Objects.isNull(uris) && aggregationEnabled) {
+            return aggregatePlannedHits(segments, limit);
+        } else {
+            return countPlannedHits(segments, hot, uris, limit);
+        }
+    }
 
-        for (StatisticProjection statisticProjection : statisticProjections) {
-            String key = statisticProjection.getApp() + "-" + statisticProjection.getUri();
+    private List<ViewStatsDto> aggregatePlannedHits(List<TimeSegment> segments, Integer limit) {
+        try (HitAggregator aggregator = new HitAggregator(aggregationBudgetMb << 20, Paths.get(spillDirectory))) {
+            streamPlannedHits(segments, aggregator::add);
+            List<ViewStatsDto> results = new ArrayList<>();
+            aggregator.top(limit, (appId, routeId, resourceId, hits) -> results.add(ViewStatsDto.builder()
+                    .app(statisticDictionary.appName(appId))
+                    .uri(statisticDictionary.uri(routeId, resourceId))
+                    .hits(hits)
+                    .build()));
+            if (aggregator.getSpills() > 0) {
+                log.info("Aggregated {} segments with {} spills to disk", segments.size(), aggregator.getSpills());
+            }
+            return results;
+        }
+    }
 
-            if (!viewStatsDtoMap.containsKey(key)) {
-                viewStatsDtoMap.put(key, ViewStatsDto.builder()
-                        .app(statisticProjection.getApp())
-                        .uri(statisticProjection.getUri())
-                        .hits(1)
-                        .build());
+    private void streamPlannedHits(List<TimeSegment> segments, HitConsumer consumer) {
+        for (TimeSegment segment : segments) {
+            log.debug("Aggregating segment {}", segment);
+            if (segment.getGranularity() == Granularity.RAW) {
+                rawStatisticSource.streamHits(segment.getFrom(), segment.getTo(), null, consumer);
             } else {
-                viewStatsDtoMap.get(key).setHits(viewStatsDtoMap.get(key).getHits() + 1);
+                statisticAggregateRepository.streamHits(segment.getGranularity(), segment.getFrom(),
+                        segment.getTo(), null, consumer);
+            }
+        }
+    }
+
+    private List<ViewStatsDto> mergeHits(List<ViewStatsDto> history, List<ViewStatsDto> tail, Integer limit) {
+        Map<AppUri, Long> hits = new HashMap<>();
+        mergeViews(hits, history);
+        mergeViews(hits, tail);
+        return hits.entrySet().stream()
+                .map(entry -> ViewStatsDto.builder()
+                        .app(entry.getKey().getApp())
+                        .uri(entry.getKey().getUri())
+                        .hits(entry.getValue())
+                        .build())
+                .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
+                .collect(Collectors.toList());
+    }
+
+    private void mergeViews(Map<AppUri, Long> hits, List<ViewStatsDto> viewStatsDtos) {
+        for (ViewStatsDto viewStatsDto : viewStatsDtos) {
+            hits.merge(new AppUri(viewStatsDto.getApp(), viewStatsDto.getUri()), viewStatsDto.getHits(), Long::sum);
+        }
+    }
+
+    /**
+     * Scales sampled counts up by the sampled fraction and adds the exact counts. Sampling every hit with
+     * probability {@code p} makes a sampled count binomial, so the interval is the scaled count plus or minus
+     * {@code z * sqrt(count * (1 - p)) / p}; it never drops below what the sample has actually seen.
+     */
+    private List<ViewStatsDto> estimateHits(Map<AppUri, Long> exact, Map<AppUri, Long> sampled, double sample,
+                                            Integer limit) {
+        Map<AppUri, Long> keys = new HashMap<>(exact);
+        sampled.keySet().forEach(key -> keys.putIfAbsent(key, 0L));
+        return keys.entrySet().stream()
+                .map(entry -> {
+                    long count = sampled.getOrDefault(entry.getKey(), 0L);
+                    double scaled = count / sample;
+                    double margin = CONFIDENCE_Z * Math.sqrt(count * (1 - sample)) / sample;
+                    return ViewStatsDto.builder()
+                            .app(entry.getKey().getApp())
+                            .uri(entry.getKey().getUri())
+                            .hits(entry.getValue() + Math.round(scaled))
+                            .hitsLower(entry.getValue() + Math.max(count, Math.round(scaled - margin)))
+                            .hitsUpper(entry.getValue() + Math.round(scaled + margin))
+                            .build();
+                })
+                .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
+                .collect(Collectors.toList());
+    }
+
+    private HitBatchAckDto ingest(List<Statistic> statistics) {
+        List<Statistic> unique = hitDeduplicator.filter(statistics);
+        if (!unique.isEmpty()) {
+            store(unique);
+        }
+        return HitBatchAckDto.builder()
+                .received(statistics.size())
+                .stored(unique.size())
+                .batches(1)
+                .build();
+    }
+
+    private void store(List<Statistic> statistics) {
+        try {
+            statisticIngestion.ingest(statistics);
+        } catch (RuntimeException e) {
+            hitDeduplicator.forget(statistics);
+            throw e;
+        }
+    }
+
+    private List<ViewStatsDto> countRawHits(TimeSegment segment, boolean unique, List<String> uris, Integer limit) {
+        return rawStatisticSource.countTopHits(segment.getFrom(), segment.getTo(), uris, unique, limit);
+    }
+
+    private boolean reachesArchive(TimeSegment segment) {
+        return rawStatisticSource.splitAtArchive(segment.getFrom(), segment.getTo()).isAfter(segment.getFrom());
+    }
+
+    private List<TimeSegment> planAround(LocalDateTime from, LocalDateTime to, TimeRange hot) {
+        List<TimeSegment> segments = new ArrayList<>(statisticQueryPlanner.plan(from, hot.getFrom()));
+        segments.addAll(statisticQueryPlanner.plan(hot.getTo(), to));
+        return segments;
+    }
+
+    private List<ViewStatsDto> countPlannedHits(List<TimeSegment> segments, Optional<TimeRange> hot, List<String> uris,
+                                                Integer limit) {
+        Map<String, ViewStatsDto> viewStatsDtoMap = new LinkedHashMap<>();
+        hot.ifPresent(range -> {
+            log.debug("Reading hot counters {}", range);
+            hotCounterStore.countHits(range, uris).forEach((appUri, hits) ->
+                    viewStatsDtoMap.put(appUri.getApp() + "-" + appUri.getUri(), ViewStatsDto.builder()
+                            .app(appUri.getApp())
+                            .uri(appUri.getUri())
+                            .hits(hits)
+                            .build()));
+        });
+        for (TimeSegment segment : segments) {
+            log.debug("Reading segment {}", segment);
+            List<ViewStatsDto> partial = segment.getGranularity() == Granularity.RAW
+                    ? rawStatisticSource.countHits(segment.getFrom(), segment.getTo(), uris)
+                    : statisticRollupRepository.countHits(segment.getGranularity(), segment.getFrom(), segment.getTo(), uris);
+            for (ViewStatsDto viewStatsDto : partial) {
+                viewStatsDtoMap.merge(viewStatsDto.getApp() + "-" + viewStatsDto.getUri(), viewStatsDto, (left, right) -> {
+                    left.setHits(left.getHits() + right.getHits());
+                    return left;
+                });
             }
         }
         return viewStatsDtoMap.values().stream()
                 .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
                 .collect(Collectors.toList());
     }
 
-    private void checkTime(LocalDateTime start, LocalDateTime end) {
-        if (end.isBefore(start)) {
-            throw new BadRequestException("End cannot early start");
+    private List<ViewStatsDto> countPlannedUniqueHits(List<TimeSegment> segments, List<String> uris, Integer limit) {
+        return collectUniqueSketches(segments, uris).entrySet().stream()
+                .map(entry -> ViewStatsDto.builder()
+                        .app(entry.getKey().getApp())
+                        .uri(entry.getKey().getUri())
+                        .hits(entry.getValue().cardinality())
+                        .build())
+                .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
+                .collect(Collectors.toList());
+    }
+
+    private Map<AppUri, UniqueSketch> collectUniqueSketches(List<TimeSegment> segments, List<String> uris) {
+        Map<AppUri, UniqueSketch> sketches = new HashMap<>();
+        // Stored sketches are read first: they must be taken before this transaction's database snapshot.
+        for (TimeSegment segment : segments) {
+            if (segment.getGranularity() != Granularity.RAW) {
+                log.debug("Reading sketch segment {}", segment);
+                uniqueSketchStore.read(segment.getFrom(), segment.getTo(), uris).forEach((appUri, sketch) ->
+                        sketches.computeIfAbsent(appUri, k -> uniqueSketchStore.newSketch()).merge(sketch));
+            }
+        }
+        for (TimeSegment segment : segments) {
+            if (segment.getGranularity() == Granularity.RAW) {
+                log.debug("Reading segment {}", segment);
+                rawStatisticSource.findDistinctIps(segment.getFrom(), segment.getTo(), uris, (appUri, ip) ->
+                        sketches.computeIfAbsent(appUri, k -> uniqueSketchStore.newSketch()).add(ip));
+            }
+        }
+        return sketches;
+    }
+
+    private Map<BucketKey, Long> countBucketUniqueHits(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                                       TimeSeriesInterval interval) {
+        List<TimeSegment> segments = uniqueSketchStore.isEnabled()
+                ? statisticQueryPlanner.plan(from, to, Granularity.HOUR)
+                : statisticQueryPlanner.planRaw(from, to);
+        Map<BucketKey, UniqueSketch> sketches = new HashMap<>();
+        // Stored sketches are read first: they must be taken before this transaction's database snapshot.
+        for (TimeSegment segment : segments) {
+            if (segment.getGranularity() != Granularity.RAW) {
+                log.debug("Reading sketch segment {}", segment);
+                uniqueSketchStore.readBuckets(segment.getFrom(), segment.getTo(), uris, interval.getUnit())
+                        .forEach((key, sketch) ->
+                                sketches.computeIfAbsent(key, k -> uniqueSketchStore.newSketch()).merge(sketch));
+            }
+        }
+        for (TimeSegment segment : segments) {
+            if (segment.getGranularity() == Granularity.RAW) {
+                log.debug("Reading segment {}", segment);
+                rawStatisticSource.findDistinctBucketIps(segment.getFrom(), segment.getTo(), uris, interval,
+                        (key, ip) -> sketches.computeIfAbsent(key, k -> uniqueSketchStore.newSketch()).add(ip));
+            }
+        }
+        Map<BucketKey, Long> uniqueHits = new HashMap<>();
+        sketches.forEach((key, sketch) -> uniqueHits.put(key, sketch.cardinality()));
+        return uniqueHits;
+    }
+
+    private List<LocalDateTime> bucketStarts(LocalDateTime from, LocalDateTime to, ChronoUnit unit) {
+        List<LocalDateTime> buckets = new ArrayList<>();
+        for (LocalDateTime bucket = from.truncatedTo(unit); bucket.isBefore(to); bucket = bucket.plus(1, unit)) {
+            if (buckets.size() == maxTimeSeriesBuckets) {
+                throw new BadRequestException("Time series cannot have more than " + maxTimeSeriesBuckets + " buckets");
+            }
+            buckets.add(bucket);
         }
+        return buckets;
+    }
+
+    private List<TimeSeriesDto> toTimeSeries(List<LocalDateTime> buckets, List<String> uris, Map<BucketKey, Long> hits,
+                                             Map<BucketKey, Long> uniqueHits) {
+        Map<String, Integer> uriOrder = new HashMap<>();
+        for (int i = 0; i < uris.size(); i++) {
+            uriOrder.putIfAbsent(uris.get(i), i);
+        }
+        return hits.keySet().stream()
+                .map(BucketKey::getAppUri)
+                .distinct()
+                .sorted(Comparator.comparing((AppUri appUri) -> uriOrder.getOrDefault(appUri.getUri(), Integer.MAX_VALUE))
+                        .thenComparing(AppUri::getApp))
+                .map(appUri -> TimeSeriesDto.builder()
+                        .app(appUri.getApp())
+                        .uri(appUri.getUri())
+                        .points(buckets.stream()
+                                .map(bucket -> {
+                                    BucketKey key = new BucketKey(appUri.getApp(), appUri.getUri(), bucket);
+                                    return TimeSeriesPointDto.builder()
+                                            .start(bucket.format(DATE_TIME_FORMAT))
+                                            .hits(hits.getOrDefault(key, 0L))
+                                            .uniqueHits(Objects.isNull(uniqueHits) ? null : uniqueHits.getOrDefault(key, 0L))
+                                            .build();
+                                })
+                                .collect(Collectors.toList()))
+                        .build())
+                .collect(Collectors.toList());
     }
 }
\ No newline at end of file
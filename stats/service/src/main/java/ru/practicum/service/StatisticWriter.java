@@ -0,0 +1,104 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Statistic;
+import ru.practicum.repository.StatisticJdbcRepository;
+import ru.practicum.repository.StatisticRollupRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores raw statistics together with everything derived from them, in one transaction.
+ */
+@Component
+@RequiredArgsConstructor
+public class StatisticWriter {
+    private final StatisticJdbcRepository statisticJdbcRepository;
+    private final StatisticRollupRepository statisticRollupRepository;
+    private final UniqueSketchStore uniqueSketchStore;
+    private final HotCounterStore hotCounterStore;
+    private final TrendingStore trendingStore;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${stats.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupEnabled;
+
+    @Transactional
+    public void write(List<Statistic> statistics) {
+        statisticJdbcRepository.insertAll(statistics, batchSize);
+        if (rollupEnabled) {
+            statisticRollupRepository.increment(Granularity.MINUTE, statistics);
+            statisticRollupRepository.increment(Granularity.HOUR, statistics);
+        }
+        if (uniqueSketchStore.isEnabled()) {
+            uniqueSketchStore.merge(statistics);
+        }
+        if (hotCounterStore.isEnabled() || trendingStore.isEnabled()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    if (hotCounterStore.isEnabled()) {
+                        hotCounterStore.add(statistics);
+                    }
+                    if (trendingStore.isEnabled()) {
+                        trendingStore.add(statistics);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Finds the statistics of a batch that can never be written, such as values longer than their columns. The
+     * batch is bisected, and every part is written in a transaction that is rolled back, so nothing is stored.
+     * Background writers call this after {@link #write} failed with a {@link DataIntegrityViolationException},
+     * to drop the offending hits rather than retry them forever.
+     *
+     * @param statistics the batch that failed to be written
+     * @return the statistics that fail on their own, empty if the failure does not reproduce
+     */
+    public List<Statistic> findRejected(List<Statistic> statistics) {
+        List<Statistic> rejected = new ArrayList<>();
+        if (!tryWrite(statistics)) {
+            bisect(statistics, rejected);
+        }
+        return rejected;
+    }
+
+    private void bisect(List<Statistic> failed, List<Statistic> rejected) {
+        if (failed.size() == 1) {
+            rejected.add(failed.get(0));
+            return;
+        }
+        int middle = failed.size() / 2;
+        for (List<Statistic> half : List.of(failed.subList(0, middle), failed.subList(middle, failed.size()))) {
+            if (!tryWrite(half)) {
+                bisect(half, rejected);
+            }
+        }
+    }
+
+    private boolean tryWrite(List<Statistic> statistics) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                write(statistics);
+                status.setRollbackOnly();
+            });
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+}
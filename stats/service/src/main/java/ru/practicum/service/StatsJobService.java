@@ -0,0 +1,324 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.practicum.aggregation.HitAggregator;
+import ru.practicum.dto.StatsJobDto;
+import ru.practicum.dto.StatsJobRequestDto;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.exception.NotFoundException;
+import ru.practicum.exception.TooManyRequestsException;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.StatsJobStatus;
+import ru.practicum.repository.StatisticDictionary;
+import ru.practicum.sketch.UniqueSketch;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
+
+/**
+ * Runs long view statistics queries in the background on a small bounded executor, so that they do not hold
+ * request threads or compete with the latency-sensitive {@code /stats} calls for them.
+ * <p>
+ * A job counts its range in chunks of {@code stats.jobs.chunk-hours} hours, each answered by
+ * {@link StatisticService} in its own transaction. Hits of the chunks are summed and unique hits are merged
+ * from the visitor sketches of the chunks. Hits of jobs that are not restricted to URIs may cover millions of
+ * them, so they are summed by dictionary key in a {@link HitAggregator} within the
+ * {@code stats.aggregation.memory-budget-mb} budget, spilling to disk beyond it. Visitor sketches cannot be
+ * spilled that way, so unique jobs must be restricted to URIs, which bounds their sketches by the request.
+ * Progress is the share of chunks done, and cancellation and the {@code stats.jobs.timeout-ms} timeout take
+ * effect at the next chunk boundary. Finished jobs are kept for {@code stats.jobs.ttl-ms} milliseconds. Jobs
+ * live in memory and are only visible on the instance that runs them.
+ */
+@Slf4j
+@Service
+public class StatsJobService {
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER);
+
+    private final StatisticService statisticService;
+    private final StatisticDictionary statisticDictionary;
+    private final ThreadPoolExecutor executor;
+    private final long aggregationBudget;
+    private final Path spillDirectory;
+    private final long chunkHours;
+    private final long ttlNanos;
+    private final long timeoutNanos;
+    private final int maxJobs;
+    private final ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public StatsJobService(StatisticService statisticService,
+                           StatisticDictionary statisticDictionary,
+                           @Value("${stats.jobs.threads:2}") int threads,
+                           @Value("${stats.jobs.queue-capacity:16}") int queueCapacity,
+                           @Value("${stats.jobs.chunk-hours:24}") long chunkHours,
+                           @Value("${stats.jobs.ttl-ms:3600000}") long ttlMs,
+                           @Value("${stats.jobs.timeout-ms:600000}") long timeoutMs,
+                           @Value("${stats.jobs.max-jobs:1000}") int maxJobs,
+                           @Value("${stats.aggregation.memory-budget-mb:64}") long aggregationBudgetMb,
+                           @Value("${stats.aggregation.spill-directory:${java.io.tmpdir}}") String spillDirectory) {
+        this.statisticService = statisticService;
+        this.statisticDictionary = statisticDictionary;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "stats-job-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.chunkHours = chunkHours;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.maxJobs = maxJobs;
+        this.aggregationBudget = aggregationBudgetMb << 20;
+        this.spillDirectory = Paths.get(spillDirectory);
+    }
+
+    /**
+     * Queues a view statistics query.
+     *
+     * @param request the range, the URIs, the uniqueness flag and the limit
+     * @return the pending job
+     * @throws BadRequestException      if the range is invalid, or the job is unique but not restricted to URIs
+     * @throws TooManyRequestsException if the queue or the job table is full
+     */
+    public StatsJobDto submit(StatsJobRequestDto request) {
+        LocalDateTime start = parseTime(request.getStart());
+        LocalDateTime end = parseTime(request.getEnd());
+        StatisticQueries.checkTime(start, end);
+        if (request.isUnique() && Objects.isNull(StatisticQueries.normalizeUris(request.getUris()))) {
+            throw new BadRequestException("Unique stats jobs must be restricted to URIs");
+        }
+        if (jobs.size() >= maxJobs) {
+            throw new TooManyRequestsException("Too many stats jobs", 60);
+        }
+        Job job = new Job(UUID.randomUUID().toString(), request, start, end);
+        jobs.put(job.id, job);
+        try {
+            job.future = executor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new TooManyRequestsException("The stats job queue is full", 10);
+        }
+        log.info("Queued stats job {} from {} to {}, unique: {}, for URIs: {}", job.id, start, end,
+                request.isUnique(), request.getUris());
+        return job.toDto();
+    }
+
+    public StatsJobDto get(String id) {
+        return find(id).toDto();
+    }
+
+    /**
+     * Cancels a job. A pending job never starts and a running one stops at its next chunk boundary; finished
+     * jobs are left as they are.
+     *
+     * @param id the job id
+     * @return the job
+     */
+    public StatsJobDto cancel(String id) {
+        Job job = find(id);
+        synchronized (job) {
+            if (!job.status.isFinished()) {
+                job.cancelled = true;
+                if (job.status == StatsJobStatus.PENDING) {
+                    job.future.cancel(false);
+                    job.finish(StatsJobStatus.CANCELLED, null);
+                }
+                log.info("Cancelled stats job {}", id);
+            }
+        }
+        return job.toDto();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.jobs.evict-interval-ms:60000}")
+    public void evict() {
+        long now = System.nanoTime();
+        jobs.values().removeIf(job -> job.status.isFinished() && now - job.finishedAt > ttlNanos);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.status != StatsJobStatus.PENDING) {
+                return;
+            }
+            job.status = StatsJobStatus.RUNNING;
+        }
+        long startedAt = System.nanoTime();
+        StatsJobRequestDto request = job.request;
+        boolean unfiltered = Objects.isNull(request.getUris()) || request.getUris().isEmpty();
+        try (HitAggregator aggregator = new HitAggregator(aggregationBudget, spillDirectory)) {
+            Map<AppUri, Long> hits = new HashMap<>();
+            Map<AppUri, UniqueSketch> sketches = new HashMap<>();
+            List<LocalDateTime> bounds = chunkBounds(job.start,
+                    job.end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1));
+            for (int i = 0; i + 1 < bounds.size(); i++) {
+                if (job.cancelled) {
+                    job.finish(StatsJobStatus.CANCELLED, null);
+                    return;
+                }
+                if (System.nanoTime() - startedAt > timeoutNanos) {
+                    job.finish(StatsJobStatus.FAILED, "The job timed out");
+                    return;
+                }
+                LocalDateTime from = bounds.get(i);
+                LocalDateTime last = bounds.get(i + 1).minusSeconds(1);
+                if (request.isUnique()) {
+                    Base64.Decoder decoder = Base64.getDecoder();
+                    for (ViewStatsDto view : statisticService.getUniqueSketches(from, last, request.getUris())) {
+                        UniqueSketch sketch = UniqueSketch.fromBytes(decoder.decode(view.getSketch()));
+                        UniqueSketch existing = sketches.putIfAbsent(new AppUri(view.getApp(), view.getUri()),
+                                sketch);
+                        if (Objects.nonNull(existing)) {
+                            existing.merge(sketch);
+                        }
+                    }
+                } else if (unfiltered) {
+                    statisticService.streamViews(from, last, aggregator::add);
+                } else {
+                    for (ViewStatsDto view : statisticService.getAllViewStatsDto(from, last, false, request.getUris(),
+                            null)) {
+                        hits.merge(new AppUri(view.getApp(), view.getUri()), view.getHits(), Long::sum);
+                    }
+                }
+                job.progress = (double) (i + 1) / (bounds.size() - 1);
+            }
+            if (!request.isUnique() && unfiltered) {
+                List<ViewStatsDto> results = new ArrayList<>();
+                aggregator.top(request.getLimit(), (appId, routeId, resourceId, count) -> results.add(
+                        ViewStatsDto.builder()
+                                .app(statisticDictionary.appName(appId))
+                                .uri(statisticDictionary.uri(routeId, resourceId))
+                                .hits(count)
+                                .build()));
+                job.result = results;
+            } else {
+                sketches.forEach((appUri, sketch) -> hits.put(appUri, sketch.cardinality()));
+                job.result = hits.entrySet().stream()
+                        .map(entry -> ViewStatsDto.builder()
+                                .app(entry.getKey().getApp())
+                                .uri(entry.getKey().getUri())
+                                .hits(entry.getValue())
+                                .build())
+                        .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                        .limit(Objects.isNull(request.getLimit()) ? Long.MAX_VALUE : request.getLimit())
+                        .collect(Collectors.toList());
+            }
+            job.finish(StatsJobStatus.DONE, null);
+            log.info("Finished stats job {} with {} rows in {} ms", job.id, job.result.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } catch (RuntimeException e) {
+            log.warn("Stats job {} failed: {}", job.id, e.getMessage());
+            job.finish(StatsJobStatus.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * Splits {@code [from, to)} at multiples of the chunk length, so that the chunks of different jobs line up.
+     */
+    private List<LocalDateTime> chunkBounds(LocalDateTime from, LocalDateTime to) {
+        List<LocalDateTime> bounds = new ArrayList<>();
+        bounds.add(from);
+        LocalDateTime epoch = LocalDateTime.of(1970, 1, 1, 0, 0);
+        long hours = ChronoUnit.HOURS.between(epoch, from);
+        LocalDateTime next = epoch.plusHours(Math.floorDiv(hours, chunkHours) * chunkHours + chunkHours);
+        while (next.isBefore(to)) {
+            bounds.add(next);
+            next = next.plusHours(chunkHours);
+        }
+        bounds.add(to);
+        return bounds;
+    }
+
+    private Job find(String id) {
+        Job job = jobs.get(id);
+        if (Objects.isNull(job)) {
+            throw new NotFoundException("Stats job " + id + " was not found");
+        }
+        return job;
+    }
+
+    private LocalDateTime parseTime(String value) {
+        try {
+            return LocalDateTime.parse(value, DATE_TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid date: " + value);
+        }
+    }
+
+    private static class Job {
+        private final String id;
+        private final StatsJobRequestDto request;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final LocalDateTime createdOn = LocalDateTime.now();
+        private volatile Future<?> future;
+        private volatile StatsJobStatus status = StatsJobStatus.PENDING;
+        private volatile boolean cancelled;
+        private volatile double progress;
+        private volatile List<ViewStatsDto> result;
+        private volatile String error;
+        private volatile LocalDateTime finishedOn;
+        private volatile long finishedAt;
+
+        Job(String id, StatsJobRequestDto request, LocalDateTime start, LocalDateTime end) {
+            this.id = id;
+            this.request = request;
+            this.start = start;
+            this.end = end;
+        }
+
+        synchronized void finish(StatsJobStatus status, String error) {
+            if (this.status.isFinished()) {
+                return;
+            }
+            this.error = error;
+            this.finishedOn = LocalDateTime.now();
+            this.finishedAt = System.nanoTime();
+            this.status = status;
+        }
+
+        synchronized StatsJobDto toDto() {
+            return StatsJobDto.builder()
+                    .id(id)
+                    .status(status.name())
+                    .progress(progress)
+                    .createdOn(createdOn.format(DATE_TIME_FORMAT))
+                    .finishedOn(Objects.isNull(finishedOn) ? null : finishedOn.format(DATE_TIME_FORMAT))
+                    .error(error)
+                    .result(status == StatsJobStatus.DONE ? result : null)
+                    .build();
+        }
+    }
+}
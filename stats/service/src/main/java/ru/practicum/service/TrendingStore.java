@@ -0,0 +1,86 @@
+package ru.practicum.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.counter.TrendingWindow;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TrendingPeriod;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a {@link TrendingWindow} per {@link TrendingPeriod}, fed with committed hits by {@link StatisticWriter}.
+ * Like the hot counters, it only sees the hits written by this instance.
+ */
+@Component
+public class TrendingStore {
+    private final boolean enabled;
+    private final int capacity;
+    private final Map<TrendingPeriod, TrendingWindow> windows = new EnumMap<>(TrendingPeriod.class);
+
+    public TrendingStore(@Value("${stats.trending.enabled:true}") boolean enabled,
+                         @Value("${stats.trending.width:2048}") int width,
+                         @Value("${stats.trending.depth:4}") int depth,
+                         @Value("${stats.trending.capacity:100}") int capacity) {
+        this.enabled = enabled;
+        this.capacity = capacity;
+        for (TrendingPeriod period : TrendingPeriod.values()) {
+            windows.put(period, new TrendingWindow(period.getSeconds(), period.getSlots(), width, depth, capacity));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds committed statistics to all windows, pre-aggregated per app, URI and second.
+     *
+     * @param statistics the statistics to add
+     */
+    public void add(List<Statistic> statistics) {
+        Map<AppUri, Map<Long, Long>> counts = new HashMap<>();
+        for (Statistic statistic : statistics) {
+            counts.computeIfAbsent(new AppUri(statistic.getApp(), statistic.getUri()), k -> new HashMap<>())
+                    .merge(statistic.getTimestamp().toEpochSecond(ZoneOffset.UTC), 1L, Long::sum);
+        }
+        long now = nowSecond();
+        for (TrendingWindow window : windows.values()) {
+            counts.forEach((appUri, seconds) -> seconds.forEach((second, count) ->
+                    window.add(appUri, second, count, now)));
+        }
+    }
+
+    /**
+     * Returns the most visited apps and URIs of a window with their estimated hits, most visited first.
+     *
+     * @param period the window
+     * @param limit  the maximum number of returned entries
+     * @return the trending apps and URIs
+     */
+    public List<ViewStatsDto> top(TrendingPeriod period, int limit) {
+        return windows.get(period).top(limit, nowSecond()).stream()
+                .map(entry -> ViewStatsDto.builder()
+                        .app(entry.getKey().getApp())
+                        .uri(entry.getKey().getUri())
+                        .hits(entry.getValue())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private static long nowSecond() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    }
+}
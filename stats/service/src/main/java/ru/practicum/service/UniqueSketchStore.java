@@ -0,0 +1,108 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.AppUri;
+import ru.practicum.model.BucketKey;
+import ru.practicum.model.Statistic;
+import ru.practicum.repository.StatisticSketchRepository;
+import ru.practicum.sketch.HyperLogLogSketch;
+import ru.practicum.sketch.IpSetSketch;
+import ru.practicum.sketch.UniqueMode;
+import ru.practicum.sketch.UniqueSketch;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps per-(app, uri, hour) unique visitor sketches in {@code statistics_sketch_hour}. Ingested hits are merged
+ * into the stored sketches in the transaction that stores them, so the sketches are exactly as durable as the
+ * raw hits; the buckets of a batch are locked in a fixed order, so concurrent writers cannot deadlock.
+ */
+@Slf4j
+@Component
+public class UniqueSketchStore {
+    private final StatisticSketchRepository statisticSketchRepository;
+    private final UniqueMode mode;
+    private final int precision;
+
+    public UniqueSketchStore(StatisticSketchRepository statisticSketchRepository,
+                             @Value("${stats.unique.mode:EXACT}") UniqueMode mode,
+                             @Value("${stats.unique.error:0.01}") double error) {
+        this.statisticSketchRepository = statisticSketchRepository;
+        this.mode = mode;
+        this.precision = HyperLogLogSketch.precisionFor(error);
+        log.info("Unique visitors are counted in {} mode", mode);
+    }
+
+    public boolean isEnabled() {
+        return mode != UniqueMode.RAW;
+    }
+
+    public UniqueSketch newSketch() {
+        return mode == UniqueMode.APPROXIMATE ? new HyperLogLogSketch(precision) : new IpSetSketch();
+    }
+
+    /**
+     * Merges statistics into the stored hour sketches. Must be called in the transaction that stores them.
+     *
+     * @param statistics the statistics to merge
+     */
+    public void merge(List<Statistic> statistics) {
+        Map<BucketKey, UniqueSketch> sketches = new TreeMap<>(BucketKey.ORDER);
+        for (Statistic statistic : statistics) {
+            BucketKey key = new BucketKey(statistic.getApp(), statistic.getUri(),
+                    statistic.getTimestamp().truncatedTo(ChronoUnit.HOURS));
+            sketches.computeIfAbsent(key, k -> newSketch()).add(statistic.getIp());
+        }
+        if (!sketches.isEmpty()) {
+            statisticSketchRepository.mergeAll(sketches);
+        }
+    }
+
+    /**
+     * Merges all hour sketches starting within {@code [from, to)} per app and URI.
+     *
+     * @param from the inclusive start, aligned to an hour
+     * @param to   the exclusive end, aligned to an hour
+     * @param uris the URIs to match, or {@code null} for all of them
+     * @return the merged sketches
+     */
+    public Map<AppUri, UniqueSketch> read(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        Map<AppUri, UniqueSketch> sketches = new HashMap<>();
+        read(from, to, uris, (key, sketch) -> merge(sketches, key.getAppUri(), sketch));
+        return sketches;
+    }
+
+    /**
+     * Merges all hour sketches starting within {@code [from, to)} per app, URI and bucket of the given unit.
+     *
+     * @param from the inclusive start, aligned to an hour
+     * @param to   the exclusive end, aligned to an hour
+     * @param uris the URIs to match, or {@code null} for all of them
+     * @param unit the unit of the buckets, no finer than an hour
+     * @return the merged sketches keyed by bucket
+     */
+    public Map<BucketKey, UniqueSketch> readBuckets(LocalDateTime from, LocalDateTime to, List<String> uris,
+                                                    ChronoUnit unit) {
+        Map<BucketKey, UniqueSketch> sketches = new HashMap<>();
+        read(from, to, uris, (key, sketch) -> merge(sketches,
+                new BucketKey(key.getApp(), key.getUri(), key.getBucketStart().truncatedTo(unit)), sketch));
+        return sketches;
+    }
+
+    private void read(LocalDateTime from, LocalDateTime to, List<String> uris,
+                      BiConsumer<BucketKey, UniqueSketch> consumer) {
+        statisticSketchRepository.findBucketSketches(from, to, uris, consumer);
+    }
+
+    private <K> void merge(Map<K, UniqueSketch> sketches, K key, UniqueSketch sketch) {
+        sketches.computeIfAbsent(key, k -> newSketch()).merge(sketch);
+    }
+}
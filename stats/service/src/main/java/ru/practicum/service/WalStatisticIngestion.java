@@ -0,0 +1,171 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.Statistic;
+import ru.practicum.repository.WalCheckpointRepository;
+import ru.practicum.wal.HitLog;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acknowledges hits as soon as they are appended to the local {@link HitLog}. A background thread drains
+ * the log into the database in large batches and stores the drained log position in the same transaction,
+ * so after a restart exactly the hits that were not committed yet are replayed.
+ * <p>
+ * The drainer never gives up: failed batches are retried, except for hits the database rejects for good,
+ * which are found with {@link StatisticWriter#findRejected} and dropped. A corrupted record cannot be
+ * delimited, so the rest of its segment is skipped, and both are logged as errors.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "wal")
+public class WalStatisticIngestion implements StatisticIngestion {
+    private final HitLog hitLog;
+    private final StatisticWriter statisticWriter;
+    private final WalCheckpointRepository walCheckpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int drainBatchSize;
+    private final long drainIntervalMs;
+    private final Thread drainer;
+
+    private volatile boolean running = true;
+
+    public WalStatisticIngestion(StatisticWriter statisticWriter,
+                                 WalCheckpointRepository walCheckpointRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${stats.wal.directory:./wal}") String directory,
+                                 @Value("${stats.wal.segment-size:67108864}") int segmentSize,
+                                 @Value("${stats.wal.fsync:false}") boolean fsync,
+                                 @Value("${stats.wal.drain-batch-size:5000}") int drainBatchSize,
+                                 @Value("${stats.wal.drain-interval-ms:200}") long drainIntervalMs) {
+        this.hitLog = new HitLog(Paths.get(directory), segmentSize, fsync);
+        this.statisticWriter = statisticWriter;
+        this.walCheckpointRepository = walCheckpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.drainBatchSize = drainBatchSize;
+        this.drainIntervalMs = drainIntervalMs;
+        this.drainer = new Thread(this::drain, "stats-wal-drainer");
+    }
+
+    @PostConstruct
+    public void start() {
+        drainer.start();
+    }
+
+    @Override
+    public void ingest(List<Statistic> statistics) {
+        hitLog.append(statistics);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        drainer.join();
+        hitLog.close();
+    }
+
+    private void drain() {
+        long position = -1;
+        while (running && position < 0) {
+            try {
+                position = startPosition();
+            } catch (RuntimeException e) {
+                log.warn("Failed to read hit log checkpoint, will retry: {}", e.getMessage());
+                pause(drainIntervalMs * 10);
+            }
+        }
+        log.info("Draining hit log from position {}", position);
+        while (running) {
+            HitLog.ReadResult result;
+            try {
+                result = hitLog.read(position, drainBatchSize);
+            } catch (IllegalStateException e) {
+                position = skipSegment(position, e);
+                continue;
+            } catch (UncheckedIOException e) {
+                if (e.getCause() instanceof NoSuchFileException) {
+                    position = skipSegment(position, e);
+                    continue;
+                }
+                log.warn("Failed to read hit log at position {}, will retry: {}", position, e.getMessage());
+                pause(drainIntervalMs * 10);
+                continue;
+            }
+            if (result.getStatistics().isEmpty()) {
+                pause(drainIntervalMs);
+                continue;
+            }
+            long next = result.getNextPosition();
+            try {
+                store(result.getStatistics(), next);
+                position = next;
+                hitLog.truncateBefore(position);
+                log.debug("Drained {} hits, hit log position {}", result.getStatistics().size(), position);
+            } catch (RuntimeException e) {
+                log.warn("Failed to drain {} hits, will retry: {}", result.getStatistics().size(), e.getMessage());
+                pause(drainIntervalMs * 10);
+            }
+        }
+    }
+
+    /**
+     * Stores the hits and the log position after them. If the database rejects some of the hits for good, they
+     * are dropped and the rest is stored.
+     */
+    private void store(List<Statistic> statistics, long next) {
+        try {
+            write(statistics, next);
+        } catch (DataIntegrityViolationException e) {
+            List<Statistic> rejected = statisticWriter.findRejected(statistics);
+            if (rejected.isEmpty()) {
+                throw e;
+            }
+            log.error("Dropping {} of {} hits that cannot be written, the first is {}: {}", rejected.size(),
+                    statistics.size(), rejected.get(0), e.getMessage());
+            List<Statistic> remaining = new ArrayList<>(statistics);
+            remaining.removeAll(rejected);
+            write(remaining, next);
+        }
+    }
+
+    private void write(List<Statistic> statistics, long next) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!statistics.isEmpty()) {
+                statisticWriter.write(statistics);
+            }
+            walCheckpointRepository.savePosition(next);
+        });
+    }
+
+    private long skipSegment(long position, RuntimeException failure) {
+        long next = hitLog.skipSegment(position);
+        log.error("Skipping hit log from position {} to {}: {}", position, next, failure.getMessage());
+        return next;
+    }
+
+    private long startPosition() {
+        long start = hitLog.getStartPosition();
+        long checkpoint = walCheckpointRepository.findPosition().orElse(start);
+        return checkpoint < start || checkpoint > hitLog.getWritePosition() ? start : checkpoint;
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.sketch;
+
+/**
+ * How unique visitors are counted by {@code /stats?unique=true}.
+ */
+public enum UniqueMode {
+    /**
+     * {@code COUNT(DISTINCT ip)} over the raw statistics table.
+     */
+    RAW,
+    /**
+     * Merged HyperLogLog sketches with a configurable relative error.
+     */
+    APPROXIMATE,
+    /**
+     * Merged compressed bitmaps of IPv4 addresses; other addresses are kept verbatim.
+     */
+    EXACT
+}
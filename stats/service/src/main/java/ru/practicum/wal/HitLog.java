@@ -0,0 +1,310 @@
+package ru.practicum.wal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.model.Statistic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of hits stored in fixed-size memory-mapped segment files.
+ * <p>
+ * Every record is laid out as {@code [length][crc32][payload]} and never spans two segments; the unused tail
+ * of a full segment is marked with a length of {@code -1}. Positions are global byte offsets, so the segment
+ * of a position is {@code position / segmentSize}. Appends are serialized, while a single reader thread may
+ * read everything below {@link #getWritePosition()} concurrently.
+ */
+@Slf4j
+public class HitLog implements Closeable {
+    private static final int HEADER_SIZE = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private volatile long writePosition;
+
+    private long readSegment = -1;
+    private MappedByteBuffer readBuffer;
+
+    public HitLog(Path directory, int segmentSize, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+            TreeSet<Long> segments = listSegments();
+            writeSegment = segments.isEmpty() ? 0 : segments.last();
+            writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the statistics and makes them visible to the reader once all of them are written.
+     *
+     * @param statistics the statistics to append
+     * @return the position right after the last appended record
+     */
+    public synchronized long append(List<Statistic> statistics) {
+        List<byte[]> payloads = new ArrayList<>(statistics.size());
+        for (Statistic statistic : statistics) {
+            byte[] payload = encode(statistic);
+            if (HEADER_SIZE + payload.length > segmentSize - Integer.BYTES) {
+                throw new IllegalArgumentException("Hit does not fit into a log segment: " + statistic);
+            }
+            payloads.add(payload);
+        }
+        for (byte[] payload : payloads) {
+            if (writeBuffer.remaining() < HEADER_SIZE + payload.length) {
+                roll();
+            }
+            writeBuffer.putInt(payload.length);
+            writeBuffer.putInt(crc(payload));
+            writeBuffer.put(payload);
+        }
+        if (fsync) {
+            writeBuffer.force();
+        }
+        writePosition = writeSegment * segmentSize + writeBuffer.position();
+        return writePosition;
+    }
+
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Returns the position of the first record still retained in the log.
+     */
+    public long getStartPosition() {
+        TreeSet<Long> segments = listSegments();
+        return segments.isEmpty() ? writePosition : segments.first() * segmentSize;
+    }
+
+    /**
+     * Reads records starting at the given position. Must only be called by a single reader thread.
+     *
+     * @param position   the position of the first record to read
+     * @param maxRecords the maximum number of records to read
+     * @return the records read and the position right after them
+     * @throws IllegalStateException if the record at the given position is corrupted, see {@link #skipSegment}
+     */
+    public ReadResult read(long position, int maxRecords) {
+        long limit = writePosition;
+        List<Statistic> statistics = new ArrayList<>();
+        while (statistics.size() < maxRecords && position < limit) {
+            long segment = position / segmentSize;
+            int offset = (int) (position % segmentSize);
+            MappedByteBuffer buffer = readBuffer(segment);
+            int length = segmentSize - offset < Integer.BYTES ? END_OF_SEGMENT : buffer.getInt(offset);
+            if (length == END_OF_SEGMENT) {
+                position = (segment + 1) * segmentSize;
+                continue;
+            }
+            byte[] payload = length <= 0 || length > segmentSize - offset - HEADER_SIZE
+                    ? null : payload(buffer, offset, length);
+            if (payload == null || buffer.getInt(offset + Integer.BYTES) != crc(payload)) {
+                if (!statistics.isEmpty()) {
+                    // The records before the corrupted one are returned first.
+                    break;
+                }
+                throw new IllegalStateException("Corrupted hit log record at position " + position);
+            }
+            statistics.add(decode(payload));
+            position += HEADER_SIZE + length;
+        }
+        return new ReadResult(statistics, position);
+    }
+
+    /**
+     * Returns the start of the segment after the one holding the given position. The length of a corrupted
+     * record cannot be trusted, so reading continues there, giving up the rest of its segment.
+     *
+     * @param position a position within the segment to skip
+     */
+    public long skipSegment(long position) {
+        return (position / segmentSize + 1) * segmentSize;
+    }
+
+    /**
+     * Deletes the segments that lie entirely before the given position.
+     *
+     * @param position a position whose records are no longer needed
+     */
+    public void truncateBefore(long position) {
+        long keepFrom = Math.min(position / segmentSize, writeSegment);
+        for (Long segment : listSegments().headSet(keepFrom)) {
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+                log.debug("Deleted hit log segment {}", segment);
+            } catch (IOException e) {
+                log.warn("Failed to delete hit log segment {}: {}", segment, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        writeBuffer.force();
+    }
+
+    private void roll() {
+        if (writeBuffer.remaining() >= Integer.BYTES) {
+            writeBuffer.putInt(END_OF_SEGMENT);
+        }
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+        log.debug("Rolled hit log to segment {}", writeSegment);
+    }
+
+    /**
+     * Finds the end of the valid records in the last segment. A torn record left by a crash is discarded
+     * together with everything after it.
+     */
+    private void recover() {
+        int offset = 0;
+        while (segmentSize - offset >= HEADER_SIZE) {
+            int length = writeBuffer.getInt(offset);
+            if (length == END_OF_SEGMENT) {
+                writeBuffer.position(segmentSize);
+                roll();
+                offset = 0;
+                continue;
+            }
+            if (length <= 0 || length > segmentSize - offset - HEADER_SIZE) {
+                break;
+            }
+            byte[] payload = payload(writeBuffer, offset, length);
+            if (writeBuffer.getInt(offset + Integer.BYTES) != crc(payload)) {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        for (int i = offset; i < segmentSize; i++) {
+            writeBuffer.put(i, (byte) 0);
+        }
+        writeBuffer.position(offset);
+        writePosition = writeSegment * segmentSize + offset;
+        log.info("Hit log recovered at position {}", writePosition);
+    }
+
+    private MappedByteBuffer readBuffer(long segment) {
+        if (segment != readSegment) {
+            readBuffer = map(segment, FileChannel.MapMode.READ_ONLY);
+            readSegment = segment;
+        }
+        return readBuffer;
+    }
+
+    private MappedByteBuffer map(long segment, FileChannel.MapMode mode) {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), options)) {
+            return channel.map(mode, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private TreeSet<Long> listSegments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SUFFIX));
+    }
+
+    private static byte[] payload(ByteBuffer buffer, int offset, int length) {
+        byte[] payload = new byte[length];
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + HEADER_SIZE);
+        record.get(payload);
+        return payload;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(Statistic statistic) {
+        byte[] app = statistic.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = statistic.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = statistic.getIp().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Long.BYTES + 3 * Short.BYTES + app.length + uri.length + ip.length)
+                .putLong(statistic.getTimestamp().toEpochSecond(ZoneOffset.UTC))
+                .putShort((short) app.length).put(app)
+                .putShort((short) uri.length).put(uri)
+                .putShort((short) ip.length).put(ip)
+                .array();
+    }
+
+    private static Statistic decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC);
+        String app = readString(buffer);
+        String uri = readString(buffer);
+        String ip = readString(buffer);
+        return new Statistic(null, app, uri, ip, timestamp);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort() & 0xffff];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records read from the log together with the position where the next read continues.
+     */
+    public static class ReadResult {
+        private final List<Statistic> statistics;
+        private final long nextPosition;
+
+        ReadResult(List<Statistic> statistics, long nextPosition) {
+            this.statistics = statistics;
+            this.nextPosition = nextPosition;
+        }
+
+        public List<Statistic> getStatistics() {
+            return statistics;
+        }
+
+        public long getNextPosition() {
+            return nextPosition;
+        }
+    }
+}
@@ -1,10 +1,103 @@
 drop table if exists statistics cascade;
+drop sequence if exists statistics_id_seq;
+drop table if exists statistics_app cascade;
+drop table if exists statistics_route cascade;
+drop table if exists statistics_compaction cascade;
+
+CREATE TABLE IF NOT EXISTS statistics_app
+(
+    id   SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(64) NOT NULL UNIQUE
+);
+
+-- Route templates such as /events/{id}, the numeric id is stored in resource_id, -1 when there is none.
+CREATE TABLE IF NOT EXISTS statistics_route
+(
+    id       INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    template VARCHAR(64) NOT NULL UNIQUE
+);
+
+CREATE SEQUENCE IF NOT EXISTS statistics_id_seq;
 
 CREATE TABLE IF NOT EXISTS statistics
 (
-    id        INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    app       VARCHAR(64) NOT NULL,
-    uri       VARCHAR(64) NOT NULL,
-    ip        VARCHAR(64) NOT NULL,
-    timestamp TIMESTAMP   NOT NULL
+    id          BIGINT      NOT NULL DEFAULT nextval('statistics_id_seq'),
+    app_id      SMALLINT    NOT NULL,
+    route_id    INT         NOT NULL,
+    resource_id BIGINT      NOT NULL,
+    ip          VARCHAR(64) NOT NULL,
+    timestamp   TIMESTAMP   NOT NULL,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+-- Catches hits outside the partitions created by StatisticPartitionManager.
+CREATE TABLE IF NOT EXISTS statistics_default PARTITION OF statistics DEFAULT;
+
+CREATE INDEX IF NOT EXISTS statistics_timestamp_brin_idx ON statistics USING BRIN (timestamp);
+CREATE INDEX IF NOT EXISTS statistics_route_timestamp_idx ON statistics (route_id, resource_id, timestamp)
+    INCLUDE (app_id, ip);
+
+
+drop table if exists statistics_rollup_minute cascade;
+
+CREATE TABLE IF NOT EXISTS statistics_rollup_minute
+(
+    app_id       SMALLINT  NOT NULL,
+    route_id     INT       NOT NULL,
+    resource_id  BIGINT    NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    hits         BIGINT    NOT NULL,
+    PRIMARY KEY (route_id, resource_id, app_id, bucket_start)
+);
+
+CREATE INDEX IF NOT EXISTS statistics_rollup_minute_bucket_idx ON statistics_rollup_minute (bucket_start);
+
+drop table if exists statistics_rollup_hour cascade;
+
+CREATE TABLE IF NOT EXISTS statistics_rollup_hour
+(
+    app_id       SMALLINT  NOT NULL,
+    route_id     INT       NOT NULL,
+    resource_id  BIGINT    NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    hits         BIGINT    NOT NULL,
+    PRIMARY KEY (route_id, resource_id, app_id, bucket_start)
+);
+
+CREATE INDEX IF NOT EXISTS statistics_rollup_hour_bucket_idx ON statistics_rollup_hour (bucket_start);
+
+drop table if exists statistics_sketch_hour cascade;
+
+CREATE TABLE IF NOT EXISTS statistics_sketch_hour
+(
+    app_id       SMALLINT  NOT NULL,
+    route_id     INT       NOT NULL,
+    resource_id  BIGINT    NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    sketch       BYTEA     NOT NULL,
+    PRIMARY KEY (route_id, resource_id, app_id, bucket_start)
+);
+
+CREATE INDEX IF NOT EXISTS statistics_sketch_hour_bucket_idx ON statistics_sketch_hour (bucket_start);
+
+-- Raw hits before compacted_before have been folded into the hour rollup and sketches and deleted.
+CREATE TABLE IF NOT EXISTS statistics_compaction
+(
+    id               INT PRIMARY KEY,
+    compacted_before TIMESTAMP NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS statistics_wal_checkpoint
+(
+    id       INT PRIMARY KEY,
+    position BIGINT NOT NULL
+);
+
+-- Raw hits within [archived_from, archived_before) have been moved into the columnar segments of StatisticArchive,
+-- one per day.
+CREATE TABLE IF NOT EXISTS statistics_archive
+(
+    id              INT PRIMARY KEY,
+    archived_from   TIMESTAMP NOT NULL,
+    archived_before TIMESTAMP NOT NULL
 );
@@ -0,0 +1,200 @@
+package ru.practicum.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.practicum.codec.HitCodec;
+import ru.practicum.dto.EndpointDto;
+import ru.practicum.dto.HitBatchAckDto;
+import ru.practicum.dto.StatsJobDto;
+import ru.practicum.dto.StatsJobRequestDto;
+import ru.practicum.dto.TimeSeriesDto;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.dto.ViewStatsRequestDto;
+import ru.practicum.exception.BadRequestException;
+import ru.practicum.mapper.StatisticMapper;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.Statistic;
+import ru.practicum.service.HitValidator;
+import ru.practicum.service.ReactiveStatisticService;
+import ru.practicum.service.StatsJobService;
+
+import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ru.practicum.constant.StatisticConstant.DATE_TIME_FORMATTER;
+
+/**
+ * Serves the contract of {@link StatisticController} on the non-blocking stack of the {@code reactive}
+ * profile. View statistics are streamed as they are read, one JSON object per line when
+ * {@code application/x-ndjson} is accepted.
+ */
+@RestController
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveStatisticController {
+    private final ReactiveStatisticService reactiveStatisticService;
+    private final StatsJobService statsJobService;
+    private final StatisticMapper statisticMapper;
+    private final HitValidator hitValidator;
+
+    @Value("${stats.ingest.max-binary-bytes:16777216}")
+    private int maxBinaryBytes;
+
+    @PostMapping("/hit")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Void> createEndpointDto(@Valid @RequestBody EndpointDto endpointDto) {
+        return reactiveStatisticService.createStatistic(endpointDto);
+    }
+
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<HitBatchAckDto> createEndpointDtos(@RequestBody Flux<EndpointDto> endpointDtos) {
+        return reactiveStatisticService.createStatistics(endpointDtos);
+    }
+
+    /**
+     * Creates statistics for a newline-delimited JSON stream of endpoint hits, storing every
+     * {@code stats.ingest.batch-size} hits as soon as they have arrived.
+     */
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<HitBatchAckDto> createEndpointDtosStream(@RequestBody Flux<EndpointDto> endpointDtos) {
+        return reactiveStatisticService.createStatistics(endpointDtos);
+    }
+
+    @PostMapping(value = "/hits", consumes = HitCodec.MEDIA_TYPE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<HitBatchAckDto> createEndpointDtosBinary(@RequestBody Flux<DataBuffer> body) {
+        return DataBufferUtils.join(body, maxBinaryBytes)
+                .onErrorMap(DataBufferLimitException.class,
+                        e -> new BadRequestException("Hit batch exceeds " + maxBinaryBytes + " bytes"))
+                .map(this::decode)
+                .flatMap(reactiveStatisticService::storeStatistics);
+    }
+
+    @GetMapping(value = "/stats", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ViewStatsDto> getViewStatsDto(@RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime start,
+                                              @RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime end,
+                                              @RequestParam(required = false) List<String> uris,
+                                              @RequestParam(defaultValue = "false") boolean unique,
+                                              @RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) Double sample,
+                                              @RequestParam(defaultValue = "false") boolean sketch) {
+        if (sketch) {
+            return getUniqueSketches(start, end, uris, unique);
+        }
+        if (sample != null) {
+            return reactiveStatisticService.getSampledViewStats(start, end, unique, uris, limit, sample);
+        }
+        return reactiveStatisticService.getViewStats(start, end, unique, uris, limit);
+    }
+
+    @GetMapping("/stats/trending")
+    public Flux<ViewStatsDto> getTrending(@RequestParam(defaultValue = "1h") String window,
+                                          @RequestParam(defaultValue = "10") int limit) {
+        return reactiveStatisticService.getTrending(window, limit);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public Flux<TimeSeriesDto> getTimeSeries(@RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime start,
+                                             @RequestParam @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime end,
+                                             @RequestParam List<String> uris,
+                                             @RequestParam(defaultValue = "hour") String interval,
+                                             @RequestParam(defaultValue = "true") boolean unique) {
+        return reactiveStatisticService.getTimeSeries(start, end, uris, interval, unique);
+    }
+
+    @GetMapping("/stats/export")
+    public ResponseEntity<Flux<byte[]>> exportStatistics(@RequestParam(required = false) @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime start,
+                                                         @RequestParam(required = false) @DateTimeFormat(pattern = DATE_TIME_FORMATTER) LocalDateTime end,
+                                                         @RequestParam(required = false) String app,
+                                                         @RequestParam(required = false) List<String> uris,
+                                                         @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.fromCode(format)
+                .orElseThrow(() -> new BadRequestException("Unknown export format: " + format));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getMediaType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"statistics." + exportFormat.getCode() + "\"")
+                .body(reactiveStatisticService.exportStatistics(start, end, app, uris, exportFormat));
+    }
+
+    @PostMapping(value = "/stats", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<ViewStatsDto> getViewStatsDto(@Valid @RequestBody ViewStatsRequestDto request) {
+        if (request.isSketch()) {
+            return getUniqueSketches(parseTime(request.getStart()), parseTime(request.getEnd()), request.getUris(),
+                    request.isUnique());
+        }
+        return reactiveStatisticService.getViewStats(parseTime(request.getStart()), parseTime(request.getEnd()),
+                request.isUnique(), request.getUris(), null);
+    }
+
+    @PostMapping(value = "/stats/jobs", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<StatsJobDto> createJob(@Valid @RequestBody StatsJobRequestDto request) {
+        return Mono.fromCallable(() -> statsJobService.submit(request));
+    }
+
+    @GetMapping("/stats/jobs/{id}")
+    public Mono<StatsJobDto> getJob(@PathVariable String id) {
+        return Mono.fromCallable(() -> statsJobService.get(id));
+    }
+
+    @DeleteMapping("/stats/jobs/{id}")
+    public Mono<StatsJobDto> cancelJob(@PathVariable String id) {
+        return Mono.fromCallable(() -> statsJobService.cancel(id));
+    }
+
+    private Flux<ViewStatsDto> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                 boolean unique) {
+        if (!unique) {
+            throw new BadRequestException("Sketches are only available for unique hits");
+        }
+        return reactiveStatisticService.getUniqueSketches(start, end, uris);
+    }
+
+    private List<Statistic> decode(DataBuffer buffer) {
+        List<Statistic> statistics = new ArrayList<>();
+        try (InputStream in = buffer.asInputStream(true)) {
+            HitCodec.decode(in, maxBinaryBytes, (app, uri, ip, epochMillis) ->
+                    statistics.add(statisticMapper.toStatistic(app, uri, ip, epochMillis)));
+        } catch (IOException e) {
+            throw new BadRequestException("Malformed hit batch: " + e.getMessage());
+        }
+        hitValidator.validateStatistics(statistics);
+        return statistics;
+    }
+
+    private LocalDateTime parseTime(String value) {
+        try {
+            return LocalDateTime.parse(value, DateTimeFormatter.ofPattern(DATE_TIME_FORMATTER));
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid date: " + value);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.RouteUri;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeSegment;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Reads statistics over R2DBC. Unlike {@link StatisticJdbcRepository}, app names and URIs are joined in SQL
+ * instead of being resolved through {@link StatisticDictionary}, whose cache misses would block.
+ */
+@Repository
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveStatisticRepository {
+    private static final String URI_KEYS = "WITH uri_key AS (SELECT r.id AS route_id, k.resource_id " +
+            "FROM statistics_route r JOIN (VALUES %s) AS k (template, resource_id) ON r.template = k.template) ";
+    private static final String URI_CONDITION = "AND (route_id, resource_id) IN " +
+            "(SELECT route_id, resource_id FROM uri_key) ";
+    private static final String COUNT_RAW_HITS = "SELECT app_id, route_id, resource_id, %s AS hits " +
+            "FROM statistics " +
+            "WHERE timestamp >= :from%d AND timestamp < :to%d %s" +
+            "GROUP BY app_id, route_id, resource_id";
+    private static final String COUNT_ROLLUP_HITS = "SELECT app_id, route_id, resource_id, SUM(hits) AS hits " +
+            "FROM %s " +
+            "WHERE bucket_start >= :from%d AND bucket_start < :to%d %s" +
+            "GROUP BY app_id, route_id, resource_id";
+    private static final String SUM_HITS = "SELECT a.name AS app, r.template, h.resource_id, " +
+            "CAST(SUM(h.hits) AS BIGINT) AS hits " +
+            "FROM (%s) h " +
+            "JOIN statistics_app a ON a.id = h.app_id " +
+            "JOIN statistics_route r ON r.id = h.route_id " +
+            "GROUP BY a.name, r.template, h.resource_id " +
+            "ORDER BY hits DESC";
+    private static final String SELECT_STATISTICS = "SELECT s.id, a.name AS app, r.template, s.resource_id, s.ip, " +
+            "s.timestamp " +
+            "FROM statistics s " +
+            "JOIN statistics_app a ON a.id = s.app_id " +
+            "JOIN statistics_route r ON r.id = s.route_id " +
+            "WHERE TRUE %s";
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Sums the hits of the given segments per app and URI in a single query, most visited first. Rows are
+     * emitted as the database returns them.
+     *
+     * @param segments the segments to read, each either from the raw statistics table or from a rollup
+     * @param uris     the URIs to match, or {@code null} for all of them
+     * @param unique   whether to count distinct IP addresses only, which requires a single raw segment
+     * @param limit    the maximum number of returned rows, or {@code null} for all of them
+     * @return hit counts grouped by app and URI, ordered by hits in descending order
+     */
+    public Flux<ViewStatsDto> countHits(List<TimeSegment> segments, List<String> uris, boolean unique,
+                                        Integer limit) {
+        if (segments.isEmpty()) {
+            return Flux.empty();
+        }
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String uriKeys = uriKeys(uris, parameters);
+        String uriCondition = Objects.isNull(uris) ? "" : URI_CONDITION;
+        StringJoiner union = new StringJoiner(" UNION ALL ");
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSegment segment = segments.get(i);
+            union.add(segment.getGranularity() == Granularity.RAW
+                    ? String.format(COUNT_RAW_HITS, unique ? "COUNT(DISTINCT ip)" : "COUNT(*)", i, i, uriCondition)
+                    : String.format(COUNT_ROLLUP_HITS, segment.getGranularity().getTable(), i, i, uriCondition));
+            parameters.put("from" + i, segment.getFrom());
+            parameters.put("to" + i, segment.getTo());
+        }
+        String sql = uriKeys + String.format(SUM_HITS, union);
+        if (Objects.nonNull(limit)) {
+            sql += " LIMIT :limit";
+            parameters.put("limit", limit);
+        }
+        return bind(databaseClient.sql(sql), parameters)
+                .map((row, metadata) -> ViewStatsDto.builder()
+                        .app(row.get("app", String.class))
+                        .uri(new RouteUri(row.get("template", String.class), row.get("resource_id", Long.class))
+                                .toUri())
+                        .hits(row.get("hits", Long.class))
+                        .build())
+                .all();
+    }
+
+    /**
+     * Streams the statistics matching the filters in no particular order, with backpressure propagated to the
+     * database cursor.
+     *
+     * @param from the inclusive start, or {@code null} for no lower bound
+     * @param to   the exclusive end, or {@code null} for no upper bound
+     * @param app  the app to match, or {@code null} for all of them
+     * @param uris the URIs to match, or {@code null} for all of them
+     * @return the matching statistics
+     */
+    public Flux<Statistic> streamStatistics(LocalDateTime from, LocalDateTime to, String app, List<String> uris) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String uriKeys = uriKeys(uris, parameters);
+        StringBuilder conditions = new StringBuilder();
+        if (Objects.nonNull(from)) {
+            conditions.append("AND s.timestamp >= :from ");
+            parameters.put("from", from);
+        }
+        if (Objects.nonNull(to)) {
+            conditions.append("AND s.timestamp < :to ");
+            parameters.put("to", to);
+        }
+        if (Objects.nonNull(app)) {
+            conditions.append("AND a.name = :app ");
+            parameters.put("app", app);
+        }
+        if (Objects.nonNull(uris)) {
+            conditions.append("AND (s.route_id, s.resource_id) IN (SELECT route_id, resource_id FROM uri_key) ");
+        }
+        return bind(databaseClient.sql(uriKeys + String.format(SELECT_STATISTICS, conditions)), parameters)
+                .map((row, metadata) -> new Statistic(row.get("id", Long.class),
+                        row.get("app", String.class),
+                        new RouteUri(row.get("template", String.class), row.get("resource_id", Long.class)).toUri(),
+                        row.get("ip", String.class),
+                        row.get("timestamp", LocalDateTime.class)))
+                .all();
+    }
+
+    /**
+     * Builds the {@code uri_key} common table expression holding the route and resource ids of the given URIs,
+     * adding its parameters.
+     */
+    private String uriKeys(List<String> uris, Map<String, Object> parameters) {
+        if (Objects.isNull(uris)) {
+            return "";
+        }
+        StringJoiner values = new StringJoiner(", ");
+        for (int i = 0; i < uris.size(); i++) {
+            RouteUri routeUri = RouteUri.parse(uris.get(i));
+            values.add("(:template" + i + ", CAST(:resource" + i + " AS BIGINT))");
+            parameters.put("template" + i, routeUri.getTemplate());
+            parameters.put("resource" + i, routeUri.getResourceId());
+        }
+        return String.format(URI_KEYS, values);
+    }
+
+    private DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec,
+                                                   Map<String, Object> parameters) {
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            spec = spec.bind(parameter.getKey(), parameter.getValue());
+        }
+        return spec;
+    }
+}
@@ -0,0 +1,238 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.practicum.dto.EndpointDto;
+import ru.practicum.dto.HitBatchAckDto;
+import ru.practicum.dto.TimeSeriesDto;
+import ru.practicum.dto.ViewStatsDto;
+import ru.practicum.exception.PartialIngestionException;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.Statistic;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.ReactiveStatisticRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Non-blocking facade over {@link StatisticService} for the {@code reactive} profile.
+ * <p>
+ * View statistics and exports are streamed from the database over R2DBC. Everything that needs state only
+ * available to the blocking service, such as unique hits of compacted history, view statistics of archived history,
+ * sampling, visitor sketches, trending and time series, is delegated to it on the bounded elastic scheduler; exports
+ * read archived history from {@link StatisticArchive} there as well. Hits are handed to {@link StatisticIngestion}
+ * on the calling thread if it does not block, which is the case in the {@code ring} ingestion mode.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveStatisticService {
+    private static final int EXPORT_CHUNK_ROWS = 1000;
+
+    private final StatisticService statisticService;
+    private final StatisticIngestion statisticIngestion;
+    private final StatisticQueryPlanner statisticQueryPlanner;
+    private final StatisticArchive statisticArchive;
+    private final ReactiveStatisticRepository reactiveStatisticRepository;
+
+    @Value("${stats.ingest.batch-size:500}")
+    private int batchSize;
+
+    public Mono<Void> createStatistic(EndpointDto endpointDto) {
+        return ingest(Mono.fromRunnable(() -> statisticService.createStatistic(endpointDto)));
+    }
+
+    /**
+     * Stores the hits in batches of {@code stats.ingest.batch-size}, one after another, each validated as a
+     * whole. A failure after some batches have been stored is reported with a
+     * {@link PartialIngestionException} that acknowledges them, as for the NDJSON stream of
+     * {@code StatisticController}.
+     *
+     * @param endpointDtos the hits to store
+     * @return an acknowledgement summing up all stored batches
+     */
+    public Mono<HitBatchAckDto> createStatistics(Flux<EndpointDto> endpointDtos) {
+        return storeBatches(endpointDtos.buffer(batchSize), statisticService::createStatistics);
+    }
+
+    /**
+     * Stores decoded hits in batches of {@code stats.ingest.batch-size}, one after another. Failures are
+     * reported as by {@link #createStatistics}.
+     *
+     * @param statistics the hits to store
+     * @return an acknowledgement summing up all stored batches
+     */
+    public Mono<HitBatchAckDto> storeStatistics(List<Statistic> statistics) {
+        return storeBatches(Flux.range(0, (statistics.size() + batchSize - 1) / batchSize)
+                .map(batch -> statistics.subList(batch * batchSize,
+                        Math.min((batch + 1) * batchSize, statistics.size()))), statisticService::storeStatistics);
+    }
+
+    /**
+     * Streams view statistics like {@link StatisticService#getAllViewStatsDto}, most visited first. The
+     * server-side result cache and the in-memory hot counters are not consulted: every call is answered by one
+     * query over the planned raw and rollup segments.
+     */
+    public Flux<ViewStatsDto> getViewStats(LocalDateTime start, LocalDateTime end, boolean unique, List<String> uri,
+                                           Integer limit) {
+        log.debug("Streaming view statistics from {} to {}, unique: {}, for URIs: {}, limit: {}",
+                start, end, unique, uri, limit);
+        StatisticQueries.checkTime(start, end);
+        StatisticQueries.checkLimit(limit);
+        List<String> uris = StatisticQueries.normalizeUris(uri);
+        LocalDateTime to = StatisticQueries.toExclusive(end);
+        List<TimeSegment> segments = unique
+                ? statisticQueryPlanner.planRaw(start, to)
+                : statisticQueryPlanner.plan(start, to);
+        LocalDateTime archivedBefore = statisticArchive.getArchivedBefore();
+        boolean compacted = unique
+                && segments.stream().anyMatch(segment -> segment.getGranularity() != Granularity.RAW);
+        boolean archived = segments.stream().anyMatch(segment -> segment.getGranularity() == Granularity.RAW
+                && segment.getFrom().isBefore(archivedBefore));
+        if (compacted || archived) {
+            // Distinct IP addresses of compacted history only survive in the hour sketches, and archived history
+            // is only in the segment files.
+            return blocking(() -> statisticService.getAllViewStatsDto(start, end, unique, uri, limit))
+                    .flatMapIterable(views -> views);
+        }
+        return reactiveStatisticRepository.countHits(segments, uris, unique, limit);
+    }
+
+    public Flux<ViewStatsDto> getSampledViewStats(LocalDateTime start, LocalDateTime end, boolean unique,
+                                                  List<String> uri, Integer limit, double sample) {
+        return blocking(() -> statisticService.getSampledViewStatsDto(start, end, unique, uri, limit, sample))
+                .flatMapIterable(views -> views);
+    }
+
+    public Flux<ViewStatsDto> getUniqueSketches(LocalDateTime start, LocalDateTime end, List<String> uri) {
+        return blocking(() -> statisticService.getUniqueSketches(start, end, uri)).flatMapIterable(views -> views);
+    }
+
+    public Flux<ViewStatsDto> getTrending(String window, int limit) {
+        return blocking(() -> statisticService.getTrending(window, limit)).flatMapIterable(views -> views);
+    }
+
+    public Flux<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             String interval, boolean unique) {
+        return blocking(() -> statisticService.getTimeSeries(start, end, uris, interval, unique))
+                .flatMapIterable(series -> series);
+    }
+
+    /**
+     * Streams raw hits like {@link StatisticService#exportStatistics}, encoded in chunks of
+     * {@value #EXPORT_CHUNK_ROWS} rows, so that a slow client slows down the database cursor instead of
+     * filling memory.
+     */
+    public Flux<byte[]> exportStatistics(LocalDateTime start, LocalDateTime end, String app, List<String> uri,
+                                         ExportFormat format) {
+        log.debug("Exporting statistics from {} to {} as {}, app: {}, for URIs: {}", start, end, format, app, uri);
+        if (Objects.nonNull(start) && Objects.nonNull(end)) {
+            StatisticQueries.checkTime(start, end);
+        }
+        LocalDateTime to = Objects.isNull(end) ? null : StatisticQueries.toExclusive(end);
+        List<String> uris = StatisticQueries.normalizeUris(uri);
+        return Flux.defer(() -> {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            StatisticExportWriter writer = newExportWriter(format, buffer);
+            return streamStatistics(start, to, app, uris)
+                    .buffer(EXPORT_CHUNK_ROWS)
+                    .map(chunk -> encode(writer, buffer, chunk))
+                    .concatWith(Mono.fromCallable(() -> encode(writer, buffer, List.of())))
+                    .filter(bytes -> bytes.length > 0)
+                    .doOnComplete(() -> log.info("Exported {} statistics from {} to {}", writer.getRows(),
+                            start, end));
+        });
+    }
+
+    /**
+     * Streams archived statistics first, then the ones in the database. The segments are read on the bounded
+     * elastic scheduler, pulled as the downstream requests more rows.
+     */
+    private Flux<Statistic> streamStatistics(LocalDateTime start, LocalDateTime to, String app, List<String> uris) {
+        LocalDateTime archivedBefore = statisticArchive.getArchivedBefore();
+        LocalDateTime from = Objects.isNull(start) ? LocalDateTime.MIN : start;
+        if (!from.isBefore(archivedBefore)) {
+            return reactiveStatisticRepository.streamStatistics(start, to, app, uris);
+        }
+        LocalDateTime split = Objects.nonNull(to) && to.isBefore(archivedBefore) ? to : archivedBefore;
+        Flux<Statistic> archived = Flux.fromIterable(() -> statisticArchive.statistics(from, split, app, uris))
+                .subscribeOn(Schedulers.boundedElastic());
+        return Objects.nonNull(to) && !split.isBefore(to)
+                ? archived
+                : archived.concatWith(reactiveStatisticRepository.streamStatistics(split, to, app, uris));
+    }
+
+    private <T> Mono<T> ingest(Mono<T> ingestion) {
+        return statisticIngestion.isBlocking() ? ingestion.subscribeOn(Schedulers.boundedElastic()) : ingestion;
+    }
+
+    private <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private <T> Mono<HitBatchAckDto> storeBatches(Flux<List<T>> batches, Function<List<T>, HitBatchAckDto> store) {
+        return Mono.defer(() -> {
+            AtomicReference<HitBatchAckDto> total = new AtomicReference<>(emptyAck());
+            return batches.concatMap(batch -> ingest(Mono.fromCallable(() -> store.apply(batch))))
+                    .doOnNext(ack -> total.set(mergeAcks(total.get(), ack)))
+                    .then(Mono.fromSupplier(total::get))
+                    .onErrorMap(RuntimeException.class, e -> total.get().getBatches() == 0
+                            ? e
+                            : new PartialIngestionException(total.get(), e));
+        });
+    }
+
+    private HitBatchAckDto mergeAcks(HitBatchAckDto left, HitBatchAckDto right) {
+        return HitBatchAckDto.builder()
+                .received(left.getReceived() + right.getReceived())
+                .stored(left.getStored() + right.getStored())
+                .batches(left.getBatches() + right.getBatches())
+                .build();
+    }
+
+    private HitBatchAckDto emptyAck() {
+        return HitBatchAckDto.builder()
+                .received(0)
+                .stored(0)
+                .batches(0)
+                .build();
+    }
+
+    private StatisticExportWriter newExportWriter(ExportFormat format, ByteArrayOutputStream buffer) {
+        try {
+            return new StatisticExportWriter(format, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] encode(StatisticExportWriter writer, ByteArrayOutputStream buffer, List<Statistic> chunk) {
+        try {
+            for (Statistic statistic : chunk) {
+                writer.write(statistic);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = buffer.toByteArray();
+        buffer.reset();
+        return bytes;
+    }
+}
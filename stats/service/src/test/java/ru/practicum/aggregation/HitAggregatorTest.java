@@ -0,0 +1,123 @@
+package ru.practicum.aggregation;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitAggregatorTest {
+    private static final long SMALL_BUDGET = 16 * 24;
+
+    @TempDir
+    private Path directory;
+
+    @DisplayName("Без сброса на диск суммы совпадают с точными")
+    @Test
+    void inMemoryTest() {
+        Map<List<Long>, Long> expected = new HashMap<>();
+        List<List<Long>> actual;
+        try (HitAggregator aggregator = new HitAggregator(1 << 20, directory)) {
+            fill(aggregator, expected, 500, 5_000);
+            actual = top(aggregator, null);
+
+            assertEquals(0, aggregator.getSpills());
+        }
+
+        assertSameTotals(expected, actual);
+    }
+
+    @DisplayName("Суммы сливаются из нескольких сброшенных на диск прогонов")
+    @Test
+    void spillAndMergeTest() {
+        Map<List<Long>, Long> expected = new HashMap<>();
+        List<List<Long>> actual;
+        try (HitAggregator aggregator = new HitAggregator(SMALL_BUDGET, directory)) {
+            fill(aggregator, expected, 500, 20_000);
+            actual = top(aggregator, null);
+
+            assertTrue(aggregator.getSpills() > 1);
+        }
+
+        assertSameTotals(expected, actual);
+    }
+
+    @DisplayName("Ограничение возвращает самые посещаемые URI в порядке убывания")
+    @Test
+    void limitTest() {
+        List<List<Long>> actual;
+        try (HitAggregator aggregator = new HitAggregator(SMALL_BUDGET, directory)) {
+            for (int round = 0; round < 3; round++) {
+                for (int resource = 1; resource <= 100; resource++) {
+                    aggregator.add(1, 2, resource, resource);
+                }
+            }
+            actual = top(aggregator, 3);
+        }
+
+        assertEquals(List.of(List.of(1L, 2L, 100L, 300L), List.of(1L, 2L, 99L, 297L), List.of(1L, 2L, 98L, 294L)),
+                actual);
+    }
+
+    @DisplayName("Закрытие удаляет файлы прогонов")
+    @Test
+    void closeDeletesRunsTest() throws IOException {
+        HitAggregator aggregator = new HitAggregator(SMALL_BUDGET, directory);
+        fill(aggregator, new HashMap<>(), 100, 1_000);
+        assertTrue(aggregator.getSpills() > 0);
+        assertTrue(countFiles() > 0);
+
+        aggregator.close();
+
+        assertEquals(0, countFiles());
+    }
+
+    private static void fill(HitAggregator aggregator, Map<List<Long>, Long> expected, int keys, int hits) {
+        Random random = new Random(7);
+        for (int i = 0; i < hits; i++) {
+            int appId = random.nextInt(3) + 1;
+            int routeId = random.nextInt(5) + 1;
+            long resourceId = random.nextInt(keys / 15 + 1);
+            long count = random.nextInt(10) + 1;
+            aggregator.add(appId, routeId, resourceId, count);
+            expected.merge(List.of((long) appId, (long) routeId, resourceId), count, Long::sum);
+        }
+    }
+
+    private static List<List<Long>> top(HitAggregator aggregator, Integer limit) {
+        List<List<Long>> entries = new ArrayList<>();
+        aggregator.top(limit, (appId, routeId, resourceId, hits) ->
+                entries.add(List.of((long) appId, (long) routeId, resourceId, hits)));
+        return entries;
+    }
+
+    private static void assertSameTotals(Map<List<Long>, Long> expected, List<List<Long>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (List<Long> entry : actual) {
+            assertEquals(expected.get(entry.subList(0, 3)), entry.get(3), entry.toString());
+        }
+        List<Long> hits = actual.stream().map(entry -> entry.get(3)).collect(Collectors.toList());
+        List<Long> sorted = new ArrayList<>(hits);
+        sorted.sort(Comparator.reverseOrder());
+        assertEquals(sorted, hits);
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
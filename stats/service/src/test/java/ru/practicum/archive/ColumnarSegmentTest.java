@@ -0,0 +1,240 @@
+package ru.practicum.archive;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarSegmentTest {
+    private static final long BASE = LocalDateTime.of(2026, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final String[] APPS = {"ewm-main-service", "ewm-admin", "ewm-bot"};
+    private static final String[] TEMPLATES = {"/events/{id}", "/events", "/compilations/{id}"};
+
+    @TempDir
+    private Path directory;
+
+    @DisplayName("Хиты на границах блоков читаются без потерь и повторов")
+    @Test
+    void blockBoundariesTest() throws IOException {
+        int rowCount = ColumnarSegmentWriter.BLOCK_ROWS * 3 + 10;
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < rowCount; i++) {
+            // One hit per second, so that block n starts exactly at BASE + n * BLOCK_ROWS.
+            rows.add(new Row(APPS[i % APPS.length], TEMPLATES[0], i % 7, "10.0.0." + i % 256, BASE + i));
+        }
+        ColumnarSegment segment = write(rows);
+
+        int block = ColumnarSegmentWriter.BLOCK_ROWS;
+        assertEquals(rowCount, segment.getRows());
+        assertRange(segment, rows, BASE, BASE + rowCount);
+        assertRange(segment, rows, BASE + block, BASE + 2 * block);
+        assertRange(segment, rows, BASE + block - 1, BASE + block + 1);
+        assertRange(segment, rows, BASE + 2 * block, BASE + 2 * block);
+        assertRange(segment, rows, BASE + 3 * block, BASE + rowCount + 100);
+        assertRange(segment, rows, BASE - 100, BASE + 1);
+    }
+
+    @DisplayName("Произвольные диапазоны совпадают с полным перебором")
+    @Test
+    void randomRangesTest() throws IOException {
+        Random random = new Random(1);
+        List<Row> rows = new ArrayList<>();
+        long second = BASE;
+        for (int i = 0; i < 20_000; i++) {
+            // Many hits share a second, so that seconds span block boundaries.
+            second += random.nextInt(10) == 0 ? 1 : 0;
+            String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+            long resourceId = template.endsWith("{id}") ? random.nextInt(50) : -1;
+            String ip = random.nextInt(10) == 0 ? "::" + random.nextInt(5) : "10.0." + random.nextInt(256) + "."
+                    + random.nextInt(256);
+            rows.add(new Row(APPS[random.nextInt(APPS.length)], template, resourceId, ip, second));
+        }
+        ColumnarSegment segment = write(rows);
+
+        for (int i = 0; i < 200; i++) {
+            long from = BASE + random.nextInt((int) (second - BASE + 2));
+            assertRange(segment, rows, from, from + random.nextInt(500));
+        }
+    }
+
+    @DisplayName("Адреса, отличные от IPv4, сохраняются строками")
+    @Test
+    void nonIpv4AddressesTest() throws IOException {
+        List<Row> rows = List.of(
+                new Row(APPS[0], TEMPLATES[1], -1, "::1", BASE),
+                new Row(APPS[0], TEMPLATES[1], -1, "192.168.0.1", BASE),
+                new Row(APPS[0], TEMPLATES[1], -1, "2001:db8::1", BASE + 1),
+                new Row(APPS[0], TEMPLATES[1], -1, "::1", BASE + 2),
+                new Row(APPS[0], TEMPLATES[1], -1, "unknown", BASE + 2),
+                new Row(APPS[0], TEMPLATES[1], -1, "255.255.255.255", BASE + 3));
+        ColumnarSegment segment = write(rows);
+
+        assertRange(segment, rows, BASE, BASE + 4);
+    }
+
+    @DisplayName("Поиск кодов приложений и URI")
+    @Test
+    void findCodesTest() throws IOException {
+        List<Row> rows = List.of(
+                new Row("ewm-main-service", "/events/{id}", 7, "10.0.0.1", BASE),
+                new Row("ewm-admin", "/events/{id}", 3, "10.0.0.1", BASE),
+                new Row("ewm-main-service", "/events", -1, "10.0.0.1", BASE + 1));
+        ColumnarSegment segment = write(rows);
+
+        assertEquals(2, segment.getAppCount());
+        assertEquals("ewm-admin", segment.getAppName(segment.findAppCode("ewm-admin")));
+        assertEquals(-1, segment.findAppCode("ewm-bot"));
+        assertEquals(3, segment.getUriCount());
+        int uriCode = segment.findUriCode("/events/{id}", 7);
+        assertEquals("/events/{id}", segment.getTemplate(uriCode));
+        assertEquals(7, segment.getResourceId(uriCode));
+        assertEquals(-1, segment.findUriCode("/events/{id}", 8));
+        assertEquals(-1, segment.findUriCode("/users", -1));
+    }
+
+    @DisplayName("Фильтр по кодам URI")
+    @Test
+    void uriFilterTest() throws IOException {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < ColumnarSegmentWriter.BLOCK_ROWS + 100; i++) {
+            rows.add(new Row(APPS[0], TEMPLATES[0], i % 10, "10.0.0.1", BASE + i / 3));
+        }
+        ColumnarSegment segment = write(rows);
+        BitSet uriCodes = new BitSet();
+        uriCodes.set(segment.findUriCode(TEMPLATES[0], 3));
+        uriCodes.set(segment.findUriCode(TEMPLATES[0], 9));
+
+        Map<String, Long> counted = new HashMap<>();
+        segment.countHits(BASE, BASE + rows.size(), uriCodes, (appCode, uriCode, hits) ->
+                counted.merge(segment.getTemplate(uriCode) + " " + segment.getResourceId(uriCode), hits, Long::sum));
+        List<Long> resourceIds = new ArrayList<>();
+        ColumnarSegment.Cursor cursor = segment.scan(BASE, BASE + rows.size(), uriCodes);
+        while (cursor.next()) {
+            resourceIds.add(segment.getResourceId(cursor.getUriCode()));
+        }
+
+        long threes = rows.stream().filter(row -> row.resourceId == 3).count();
+        long nines = rows.stream().filter(row -> row.resourceId == 9).count();
+        assertEquals(Map.of(TEMPLATES[0] + " 3", threes, TEMPLATES[0] + " 9", nines), counted);
+        assertEquals(threes + nines, resourceIds.size());
+        assertTrue(resourceIds.stream().allMatch(id -> id == 3 || id == 9));
+    }
+
+    @DisplayName("Пустой сегмент")
+    @Test
+    void emptySegmentTest() throws IOException {
+        ColumnarSegment segment = write(List.of());
+
+        assertEquals(0, segment.getRows());
+        assertEquals(-1, segment.findUriCode(TEMPLATES[0], 1));
+        segment.countHits(BASE, BASE + 10, null, (appCode, uriCode, hits) -> {
+            throw new AssertionError("Unexpected hits");
+        });
+        assertFalse(segment.scan(BASE, BASE + 10, null).next());
+    }
+
+    @DisplayName("Хиты должны добавляться в порядке времени")
+    @Test
+    void outOfOrderTest() throws IOException {
+        try (ColumnarSegmentWriter writer = new ColumnarSegmentWriter(directory.resolve("segment"))) {
+            writer.add(APPS[0], TEMPLATES[1], -1, "10.0.0.1", toDateTime(BASE + 1));
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> writer.add(APPS[0], TEMPLATES[1], -1, "10.0.0.1", toDateTime(BASE)));
+        }
+    }
+
+    private ColumnarSegment write(List<Row> rows) throws IOException {
+        Path file = directory.resolve("segment");
+        try (ColumnarSegmentWriter writer = new ColumnarSegmentWriter(file)) {
+            for (Row row : rows) {
+                writer.add(row.app, row.template, row.resourceId, row.ip, toDateTime(row.second));
+            }
+            writer.finish();
+        }
+        return ColumnarSegment.open(file);
+    }
+
+    private static void assertRange(ColumnarSegment segment, List<Row> rows, long from, long to) {
+        Map<String, Long> expectedCounts = new HashMap<>();
+        List<Row> expectedRows = new ArrayList<>();
+        for (Row row : rows) {
+            if (row.second >= from && row.second < to) {
+                expectedCounts.merge(row.app + " " + row.template + " " + row.resourceId, 1L, Long::sum);
+                expectedRows.add(row);
+            }
+        }
+
+        Map<String, Long> counts = new HashMap<>();
+        segment.countHits(from, to, null, (appCode, uriCode, hits) -> counts.merge(segment.getAppName(appCode)
+                + " " + segment.getTemplate(uriCode) + " " + segment.getResourceId(uriCode), hits, Long::sum));
+        List<Row> scanned = new ArrayList<>();
+        ColumnarSegment.Cursor cursor = segment.scan(from, to, null);
+        while (cursor.next()) {
+            scanned.add(new Row(segment.getAppName(cursor.getAppCode()), segment.getTemplate(cursor.getUriCode()),
+                    segment.getResourceId(cursor.getUriCode()), cursor.getIp(), cursor.getSecond()));
+        }
+
+        assertEquals(expectedCounts, counts, "[" + from + ", " + to + ")");
+        assertEquals(expectedRows, scanned, "[" + from + ", " + to + ")");
+    }
+
+    private static LocalDateTime toDateTime(long second) {
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+
+    private static final class Row {
+        private final String app;
+        private final String template;
+        private final long resourceId;
+        private final String ip;
+        private final long second;
+
+        private Row(String app, String template, long resourceId, String ip, long second) {
+            this.app = app;
+            this.template = template;
+            this.resourceId = resourceId;
+            this.ip = ip;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Row)) {
+                return false;
+            }
+            Row row = (Row) o;
+            return resourceId == row.resourceId && second == row.second && app.equals(row.app)
+                    && template.equals(row.template) && ip.equals(row.ip);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(app, template, resourceId, ip, second);
+        }
+
+        @Override
+        public String toString() {
+            return app + " " + template + " " + resourceId + " " + ip + " " + second;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.practicum.counter;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.AppUri;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrendingWindowTest {
+    private static final String APP = "ewm-main-service";
+    private static final long NOW = 1_700_000_000L;
+
+    @DisplayName("Самые посещаемые URI окна в порядке убывания")
+    @Test
+    void topTest() {
+        TrendingWindow window = new TrendingWindow(3600, 60, 1024, 4, 16);
+        for (int i = 1; i <= 30; i++) {
+            window.add(uri(i), NOW, i, NOW);
+        }
+
+        List<Map.Entry<AppUri, Long>> top = window.top(3, NOW);
+
+        assertEquals(3, top.size());
+        assertEquals(uri(30), top.get(0).getKey());
+        assertEquals(uri(29), top.get(1).getKey());
+        assertEquals(uri(28), top.get(2).getKey());
+        assertTrue(top.get(0).getValue() >= 30);
+    }
+
+    @DisplayName("Популярный URI вытесняет кандидата с наименьшей оценкой")
+    @Test
+    void heavyHitterReplacesCandidateTest() {
+        TrendingWindow window = new TrendingWindow(3600, 60, 1024, 4, 4);
+        for (int i = 1; i <= 4; i++) {
+            window.add(uri(i), NOW, 10, NOW);
+        }
+        for (int i = 0; i < 50; i++) {
+            window.add(uri(100), NOW, 1, NOW);
+        }
+
+        List<Map.Entry<AppUri, Long>> top = window.top(1, NOW);
+
+        assertEquals(uri(100), top.get(0).getKey());
+        assertEquals(4, window.top(10, NOW).size());
+    }
+
+    @DisplayName("Хиты, вышедшие из окна, больше не учитываются")
+    @Test
+    void slideTest() {
+        TrendingWindow window = new TrendingWindow(60, 6, 1024, 4, 16);
+        window.add(uri(1), NOW, 100, NOW);
+        window.add(uri(2), NOW + 30, 10, NOW + 30);
+
+        assertEquals(uri(1), window.top(1, NOW + 30).get(0).getKey());
+
+        List<Map.Entry<AppUri, Long>> top = window.top(10, NOW + 65);
+        assertEquals(1, top.size());
+        assertEquals(uri(2), top.get(0).getKey());
+        assertEquals(10L, (long) top.get(0).getValue());
+
+        assertTrue(window.top(10, NOW + 200).isEmpty());
+    }
+
+    @DisplayName("Хиты старше окна игнорируются")
+    @Test
+    void oldHitsIgnoredTest() {
+        TrendingWindow window = new TrendingWindow(60, 6, 1024, 4, 16);
+        window.add(uri(1), NOW - 120, 100, NOW);
+
+        assertTrue(window.top(10, NOW).isEmpty());
+    }
+
+    private static AppUri uri(int id) {
+        return new AppUri(APP, "/events/" + id);
+    }
+}
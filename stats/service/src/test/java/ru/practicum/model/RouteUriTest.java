@@ -0,0 +1,39 @@
+package ru.practicum.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RouteUriTest {
+
+    @DisplayName("Числовой сегмент заменяется на шаблон с идентификатором")
+    @Test
+    void parseNumericSegmentTest() {
+        assertEquals(new RouteUri("/events/{id}", 42), RouteUri.parse("/events/42"));
+        assertEquals(new RouteUri("/events/{id}/comments", 7), RouteUri.parse("/events/7/comments"));
+        assertEquals(new RouteUri("/{id}", 0), RouteUri.parse("/0"));
+        assertEquals(new RouteUri("/events/{id}", 999999999999999999L), RouteUri.parse("/events/999999999999999999"));
+    }
+
+    @DisplayName("URI без единственного числового сегмента сохраняется целиком")
+    @Test
+    void parseWithoutResourceTest() {
+        for (String uri : List.of("/events", "/", "", "/users/1/events/2", "/events/042", "/events/-1", "/events/4a",
+                "/events/1234567890123456789", "/events/{id}", "/events/{id}/1", "/events//")) {
+            assertEquals(new RouteUri(uri, RouteUri.NO_RESOURCE), RouteUri.parse(uri), uri);
+        }
+    }
+
+    @DisplayName("Разобранный URI восстанавливается без изменений")
+    @Test
+    void toUriTest() {
+        for (String uri : List.of("/events/42", "/events/7/comments", "/0", "/events", "/", "",
+                "/users/1/events/2", "/events/042", "/events/{id}", "/events/{id}/1", "/events/42?from=1",
+                "/events/1234567890123456789")) {
+            assertEquals(uri, RouteUri.parse(uri).toUri(), uri);
+        }
+    }
+}
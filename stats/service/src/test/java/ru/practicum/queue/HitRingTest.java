@@ -0,0 +1,122 @@
+package ru.practicum.queue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitRingTest {
+
+    @DisplayName("Ёмкость округляется вверх до степени двойки")
+    @Test
+    void capacityTest() {
+        assertEquals(1, new HitRing<>(1).getCapacity());
+        assertEquals(8, new HitRing<>(5).getCapacity());
+        assertEquals(1024, new HitRing<>(1024).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new HitRing<>(0));
+    }
+
+    @DisplayName("Пачка, не помещающаяся в заполненное кольцо, отклоняется целиком")
+    @Test
+    void fullRingTest() {
+        HitRing<Integer> ring = new HitRing<>(4);
+
+        assertTrue(ring.offerAll(List.of(1, 2, 3)));
+        assertFalse(ring.offerAll(List.of(4, 5)));
+        assertEquals(3, ring.size());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, ring.drainTo(drained, 2));
+        assertTrue(ring.offerAll(List.of(4, 5)));
+        ring.drainTo(drained, 10);
+
+        assertEquals(List.of(1, 2, 3, 4, 5), drained);
+        assertEquals(0, ring.size());
+    }
+
+    @DisplayName("Пачка больше кольца не может быть опубликована")
+    @Test
+    void oversizedBatchTest() {
+        HitRing<Integer> ring = new HitRing<>(4);
+
+        assertThrows(IllegalArgumentException.class, () -> ring.offerAll(List.of(1, 2, 3, 4, 5)));
+        assertEquals(0, ring.size());
+    }
+
+    @DisplayName("Элементы параллельных производителей вычитываются ровно один раз и в порядке публикации")
+    @Test
+    void concurrentProducersTest() throws InterruptedException {
+        int producers = 4;
+        int batches = 5_000;
+        int batchSize = 3;
+        HitRing<long[]> ring = new HitRing<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean stopped = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int b = 0; b < batches; b++) {
+                        List<long[]> batch = new ArrayList<>(batchSize);
+                        for (int i = 0; i < batchSize; i++) {
+                            batch.add(new long[]{producer, (long) b * batchSize + i});
+                        }
+                        while (!ring.offerAll(batch)) {
+                            if (stopped.get()) {
+                                return;
+                            }
+                            Thread.yield();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        long[] next = new long[producers];
+        long expected = (long) producers * batches * batchSize;
+        long received = 0;
+        List<long[]> drained = new ArrayList<>();
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (received < expected && System.nanoTime() < deadline) {
+            drained.clear();
+            if (ring.drainTo(drained, 32) == 0) {
+                Thread.yield();
+                continue;
+            }
+            for (long[] element : drained) {
+                int producer = (int) element[0];
+                if (element[1] != next[producer]) {
+                    failure.compareAndSet(null, new AssertionError("Out of order: " + element[1]));
+                }
+                next[producer]++;
+            }
+            received += drained.size();
+        }
+        stopped.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(expected, received);
+        assertEquals(0, ring.size());
+    }
+}
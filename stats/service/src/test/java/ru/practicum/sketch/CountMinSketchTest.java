@@ -0,0 +1,81 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+
+    @DisplayName("Оценка не меньше точного значения и превышает его не более чем на e / width от общего числа")
+    @Test
+    void estimateBoundsTest() {
+        int width = 2048;
+        CountMinSketch sketch = new CountMinSketch(width, 5);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(1);
+        long total = 0;
+        for (int i = 0; i < 100_000; i++) {
+            // Skewed keys, as URIs usually are.
+            String key = "/events/" + (int) Math.pow(random.nextInt(1000), 2) / 1000;
+            sketch.add(key, 1);
+            exact.merge(key, 1L, Long::sum);
+            total++;
+        }
+
+        double maxError = Math.E / width * total;
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            long estimate = sketch.estimate(entry.getKey());
+            assertTrue(estimate >= entry.getValue(), entry.getKey());
+            assertTrue(estimate - entry.getValue() <= maxError, entry.getKey());
+        }
+    }
+
+    @DisplayName("Добавление возвращает новую оценку ключа")
+    @Test
+    void addReturnsEstimateTest() {
+        CountMinSketch sketch = new CountMinSketch(64, 3);
+
+        assertEquals(5, sketch.add("/events/1", 5));
+        assertEquals(8, sketch.add("/events/1", 3));
+        assertEquals(8, sketch.estimate("/events/1"));
+    }
+
+    @DisplayName("Сложение и вычитание скетчей")
+    @Test
+    void addAndSubtractTest() {
+        CountMinSketch window = new CountMinSketch(64, 3);
+        CountMinSketch first = new CountMinSketch(64, 3);
+        CountMinSketch second = new CountMinSketch(64, 3);
+        first.add("/events/1", 4);
+        second.add("/events/1", 6);
+        second.add("/events/2", 1);
+
+        window.add(first);
+        window.add(second);
+        assertEquals(10, window.estimate("/events/1"));
+
+        window.subtract(first);
+        assertEquals(6, window.estimate("/events/1"));
+        assertEquals(1, window.estimate("/events/2"));
+
+        window.clear();
+        assertEquals(0, window.estimate("/events/1"));
+    }
+
+    @DisplayName("Скетчи разной формы не комбинируются")
+    @Test
+    void differentShapesTest() {
+        CountMinSketch sketch = new CountMinSketch(64, 3);
+
+        assertThrows(IllegalArgumentException.class, () -> sketch.add(new CountMinSketch(32, 3)));
+        assertThrows(IllegalArgumentException.class, () -> sketch.subtract(new CountMinSketch(64, 4)));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 3));
+    }
+}
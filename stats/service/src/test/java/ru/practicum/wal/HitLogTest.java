@@ -0,0 +1,161 @@
+package ru.practicum.wal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.model.Statistic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HitLogTest {
+    private static final int SEGMENT_SIZE = 256;
+    private static final String FIRST_SEGMENT = String.format("%020d.wal", 0);
+
+    @TempDir
+    private Path directory;
+
+    @DisplayName("Чтение записанных хитов после переоткрытия журнала")
+    @Test
+    void readAfterReopenTest() {
+        List<Statistic> statistics = statistics(0, 20);
+        long position;
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            position = hitLog.append(statistics);
+        }
+
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            assertEquals(position, hitLog.getWritePosition());
+            HitLog.ReadResult result = hitLog.read(0, 100);
+            assertEquals(uris(statistics), uris(result.getStatistics()));
+            assertEquals(position, result.getNextPosition());
+        }
+    }
+
+    @DisplayName("Оборванная запись отбрасывается при восстановлении")
+    @Test
+    void recoverTornRecordTest() throws IOException {
+        List<Statistic> statistics = statistics(0, 3);
+        long position;
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            position = hitLog.append(statistics);
+        }
+        // A crash in the middle of an append leaves a header whose payload was only partly written.
+        try (FileChannel channel = FileChannel.open(directory.resolve(FIRST_SEGMENT), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(12)
+                    .putInt(40)
+                    .putInt(12345)
+                    .putInt(0x7f7f7f7f);
+            torn.flip();
+            channel.write(torn, position);
+        }
+
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            assertEquals(position, hitLog.getWritePosition());
+            List<Statistic> appended = statistics(3, 2);
+            long end = hitLog.append(appended);
+
+            HitLog.ReadResult result = hitLog.read(0, 100);
+            List<Statistic> expected = new ArrayList<>(statistics);
+            expected.addAll(appended);
+            assertEquals(uris(expected), uris(result.getStatistics()));
+            assertEquals(end, result.getNextPosition());
+        }
+    }
+
+    @DisplayName("Запись с неверной контрольной суммой отбрасывается при восстановлении")
+    @Test
+    void recoverCorruptedRecordTest() throws IOException {
+        List<Statistic> statistics = statistics(0, 3);
+        long valid;
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            valid = hitLog.append(statistics.subList(0, 2));
+            hitLog.append(statistics.subList(2, 3));
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(FIRST_SEGMENT), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x55}), valid + 20);
+        }
+
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            assertEquals(valid, hitLog.getWritePosition());
+            assertEquals(uris(statistics.subList(0, 2)), uris(hitLog.read(0, 100).getStatistics()));
+        }
+    }
+
+    @DisplayName("Восстановление продолжает последний сегмент после перехода на новый")
+    @Test
+    void recoverAfterRollTest() {
+        List<Statistic> statistics = statistics(0, 40);
+        long position;
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            for (Statistic statistic : statistics) {
+                hitLog.append(List.of(statistic));
+            }
+            position = hitLog.getWritePosition();
+        }
+
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            assertEquals(position, hitLog.getWritePosition());
+            assertEquals(uris(statistics), uris(hitLog.read(0, 100).getStatistics()));
+        }
+    }
+
+    @DisplayName("Чтение останавливается перед повреждённой записью, остаток сегмента пропускается")
+    @Test
+    void skipCorruptedSegmentTest() throws IOException {
+        List<Statistic> statistics = statistics(0, 40);
+        long[] ends = new long[statistics.size()];
+        try (HitLog hitLog = new HitLog(directory, SEGMENT_SIZE, false)) {
+            for (int i = 0; i < statistics.size(); i++) {
+                ends[i] = hitLog.append(List.of(statistics.get(i)));
+            }
+            try (FileChannel channel = FileChannel.open(directory.resolve(FIRST_SEGMENT),
+                    StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{0x55}), ends[1] + 20);
+            }
+
+            HitLog.ReadResult result = hitLog.read(0, 100);
+            assertEquals(uris(statistics.subList(0, 2)), uris(result.getStatistics()));
+            assertEquals(ends[1], result.getNextPosition());
+
+            assertThrows(IllegalStateException.class, () -> hitLog.read(ends[1], 100));
+            long next = hitLog.skipSegment(ends[1]);
+            assertEquals(SEGMENT_SIZE, next);
+
+            List<Statistic> expected = new ArrayList<>();
+            for (int i = 0; i < statistics.size(); i++) {
+                if (ends[i] > SEGMENT_SIZE) {
+                    expected.add(statistics.get(i));
+                }
+            }
+            assertEquals(uris(expected), uris(hitLog.read(next, 100).getStatistics()));
+        }
+    }
+
+    private static List<Statistic> statistics(int from, int count) {
+        List<Statistic> statistics = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            statistics.add(new Statistic(null, "ewm-main-service", "/events/" + i, "192.168.0." + i,
+                    LocalDateTime.of(2024, 1, 1, 0, 0, i)));
+        }
+        return statistics;
+    }
+
+    private static List<String> uris(List<Statistic> statistics) {
+        List<String> uris = new ArrayList<>();
+        for (Statistic statistic : statistics) {
+            uris.add(statistic.getApp() + " " + statistic.getUri() + " " + statistic.getIp() + " "
+                    + statistic.getTimestamp());
+        }
+        return uris;
+    }
+}